@@ -24,9 +24,8 @@
 <%@page import="com.progdan.edmis.model.document.Document"%> 
 <%@page import="com.progdan.edmis.model.user.User"%> 
 <%@page import="com.progdan.edmis.control.documents.DocumentGroupsByUserController"%> 
-<%@page import="com.progdan.searchengine.search.*"%> 
-<%@page import="com.progdan.searchengine.queryParser.*"%>
-<%@page import="com.progdan.searchengine.analysis.*"%>
+<%@page import="com.progdan.edmis.control.index.SearchService"%> 
+<%@page import="com.progdan.edmis.model.document.SearchResult"%> 
 <%@page import="com.progdan.edmis.model.documents.DocumentGroup"%> 
 <%@page import="com.progdan.edmis.control.document.*"%> 
  
@@ -122,7 +121,6 @@
 							    <%
 								    DocumentReader read = new DocumentReader(user);
 									Document doc;
-									String id;
 									Vector docs = read.searchDocuments(queryString);
 									for(int i=0; i<docs.size(); i++){
 									  doc = (Document)docs.get(i);
@@ -137,18 +135,24 @@
                               </FONT></FONT>
                               <h2><%= labels.getString("ftrsearch") %></h2>
                               <p><FONT size=2>							        <%
-                                      Properties props = new Properties();
-                                      String reppath = null;
-                                      try {
-                                        props.load(getClass().getResourceAsStream("/" + "db.properties"));
-                                        reppath = props.getProperty("reppath", "C:\\EDMIS");
-                                      } catch (IOException e) {}
-									  indexPath = reppath + System.getProperty("file.separator") + "index" + System.getProperty("file.separator") + indexPath;
-									  Searcher searcher = new IndexSearcher(indexPath);
-									  Query query = QueryParser.parse(queryString, "body", new SimpleAnalyzer());
-									  Hits hits = searcher.search(query);
+									  int offset = 0;
+									  try {
+									    offset = Integer.parseInt(request.getParameter("offset"));
+									  } catch (NumberFormatException e) {}
+									  int limit = SearchService.getPageSize();
+									  if (indexPath == null) {
+									    indexPath = SearchService.ALL;
+									  }
+									  SearchResult result = null;
+									  try {
+									    result = new SearchService(user).search(indexPath, queryString, offset, limit);
+									  } catch (com.progdan.searchengine.queryParser.ParseException e) {}
+									  String pageURL = "docsearch.jsp?group=" + java.net.URLEncoder.encode(indexPath, "ISO-8859-1") + "&search=" + java.net.URLEncoder.encode(queryString, "ISO-8859-1") + "&offset=";
 								  %>
                                 </FONT></p>
+							  <%if(result == null){%>
+                              <FONT size=2><%= labels.getString("badquery") %></FONT>
+							  <%} else {%>
                               <FONT size=2>
                               <table width="100%" border="0" align="center" cellpadding="0">
                                 <tr align="center" valign="middle">
@@ -158,21 +162,29 @@
                                   <th><%= labels.getString("hits") %></th>
                                 </tr>
 							    <%
-									for(int i=0; i<hits.length(); i++){
-									  id = hits.doc(i).get("path");
-									  doc = read.readDocument(id);
-									  
+									for(int i=0; i<result.size(); i++){
+									  doc = result.getDocument(i);
 								  %>
                                 <tr valign="middle" bgcolor="#f7f6f1">
                                   <td><%=doc.getName()%></td>
                                   <td><div align="center"><a href="docedit.jsp?doc=<%=doc.getId()%>"><img src="icons/<%=doc.getFormat()%>.gif" width="16" height="16" alt="[ <%=doc.getFormat()%> ]"></a></div></td>
                                   <td><div align="center"><%=doc.getLanguage()%></div></td>
-                                  <td><div align="center"><%=hits.score(i)%></div></td>
+                                  <td><div align="center"><%=result.getScore(i)%></div></td>
                                 </tr>
 							    <%}%>
                               </table>
+                              <div align="center">
+							    <%if(result.hasPrevious()){%>
+                                <a href="<%=pageURL + Math.max(offset - limit, 0)%>"><%= labels.getString("previous") %></a>
+							    <%}%>
+                                <%=Math.min(offset + 1, result.getTotal())%> - <%=Math.min(offset + limit, result.getTotal())%> / <%=result.getTotal()%>
+							    <%if(result.hasNext()){%>
+                                <a href="<%=pageURL + (offset + limit)%>"><%= labels.getString("next") %></a>
+							    <%}%>
+                              </div>
                               </FONT>
 							  <%}%>
+							  <%}%>
 </P>                            </TD>
                           </tr>
                         </tbody>
@@ -6,6 +6,7 @@
 <%@page import="javax.naming.NamingException"%>
 <%@page import="javax.sql.DataSource"%>
 <%@page import="java.lang.reflect.Field"%>
+<%@page import="com.progdan.edmis.control.database.DatabaseController"%>
 <%!
   static Map map;
   // This method returns the name of a JDBC type.
@@ -79,12 +80,20 @@ document.write("<p>User Language: " + navigator.userLanguage + "</p>");
       String jdbcTypeName = getJdbcTypeName(dataType);
       out.println(typeName + ", " + jdbcTypeName + "<br>");
     }
+    connection.close();
   }
   catch (SQLException ex) {
   }
   catch (NamingException ex) {
   }
 %>
+<h1>Connection Pool</h1>
+<p>
+Connections borrowed: <%=DatabaseController.getBorrowed()%>  <br>
+Borrow failures: <%=DatabaseController.getBorrowFailures()%>  <br>
+Mean borrow time (ms): <%=DatabaseController.getMeanBorrowTime()%>  <br>
+Max borrow time (ms): <%=DatabaseController.getMaxBorrowTime()%>  <br>
+</p>
 <h1>System Properties</h1>
 <p>
 <%
@@ -0,0 +1,28 @@
+package com.progdan.edmis.control.database;
+
+import java.sql.*;
+
+/**
+ * Maps the first column of a row, for queries returning a single value.
+ */
+public class ColumnMapper implements RowMapper {
+    public static final ColumnMapper STRING = new ColumnMapper(Types.VARCHAR);
+    public static final ColumnMapper INTEGER = new ColumnMapper(Types.INTEGER);
+    public static final ColumnMapper LONG = new ColumnMapper(Types.BIGINT);
+
+    private int type;
+    private ColumnMapper(int type) {
+        this.type = type;
+    }
+
+    public Object mapRow(ResultSet rs) throws SQLException {
+        switch (type) {
+        case Types.INTEGER:
+            return new Integer(rs.getInt(1));
+        case Types.BIGINT:
+            return new Long(rs.getLong(1));
+        default:
+            return rs.getString(1);
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.progdan.edmis.control.database;
+
+import java.io.*;
+
+import javax.servlet.*;
+
+/**
+ * Returns the connection borrowed by a request to the pool once the request
+ * is served, so each request holds at most one connection and only while
+ * it runs.
+ */
+public class ConnectionFilter implements Filter {
+    public void init(FilterConfig config) throws ServletException {
+    }
+
+    public void doFilter(ServletRequest request, ServletResponse response,
+                         FilterChain chain) throws IOException,
+            ServletException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            DatabaseController.releaseRequestConnection();
+        }
+    }
+
+    public void destroy() {
+    }
+}
@@ -1,40 +1,235 @@
 package com.progdan.edmis.control.database;
 
 import java.sql.*;
+import java.util.*;
 
 import com.progdan.logengine.*;
 
+/**
+ * Database access of the web tier. Connections are borrowed from the pool of
+ * the jdbc/EDMIS DataSource: getRequestConnection() binds one to the thread
+ * serving the request, and ConnectionFilter returns it to the pool when the
+ * request ends.
+ * <p>
+ * Queries and updates take their values as parameters of a PreparedStatement
+ * and always close it with its ResultSet. Closing hands the statement back
+ * to the statement pool of the connection (poolPreparedStatements of the
+ * jdbc/EDMIS resource), so each SQL text is only prepared once per pooled
+ * connection.
+ */
 public abstract class DatabaseController {
     private static Logger logger = Logger.getLogger(DatabaseController.class.
             getName());
+    /** Connection borrowed by the thread serving the current request */
+    private static ThreadLocal bound = new ThreadLocal();
+    private static long borrowed;
+    private static long failures;
+    private static long borrowTime;
+    private static long maxBorrowTime;
 
     public abstract Connection createDatabase();
 
+    /**
+     * Borrows a connection from the pool; the caller closes it.
+     */
     public abstract Connection getConnection();
 
-    public int executeUpdate(Connection conn, String sql) {
-        logger.debug(">>> Start of DatabaseController.executeUpdate()***");
+    /**
+     * @return the connection bound to the current request, borrowed from
+     *   the pool on the first call
+     */
+    public Connection getRequestConnection() {
+        logger.debug(">>> Start of DatabaseController.getRequestConnection()***");
+        Connection conn = (Connection) bound.get();
+        try {
+            if ((conn == null) || conn.isClosed()) {
+                conn = getConnection();
+                bound.set(conn);
+            }
+        } catch (SQLException e) {
+            logger.error(e);
+        }
+        logger.debug("<<< End of DatabaseController.getRequestConnection()***");
+        return conn;
+    }
+
+    /**
+     * Returns the connection bound to the current request to the pool.
+     */
+    public static void releaseRequestConnection() {
+        Connection conn = (Connection) bound.get();
+        if (conn != null) {
+            bound.set(null);
+            try {
+                conn.close();
+            } catch (SQLException e) {
+                logger.error(e);
+            }
+        }
+    }
+
+    /**
+     * Records a borrow from the pool.
+     * @param ms milliseconds waited for the connection
+     */
+    protected static synchronized void borrowed(long ms, boolean ok) {
+        if (ok) {
+            borrowed++;
+        } else {
+            failures++;
+        }
+        borrowTime += ms;
+        if (ms > maxBorrowTime) {
+            maxBorrowTime = ms;
+        }
+    }
+
+    public static synchronized long getBorrowed() {
+        return borrowed;
+    }
+
+    public static synchronized long getBorrowFailures() {
+        return failures;
+    }
+
+    /**
+     * @return the mean milliseconds waited for a connection
+     */
+    public static synchronized double getMeanBorrowTime() {
+        long n = borrowed + failures;
+        return (n == 0) ? 0 : (double) borrowTime / n;
+    }
+
+    public static synchronized long getMaxBorrowTime() {
+        return maxBorrowTime;
+    }
+
+    /**
+     * @return the rows of the query mapped by the mapper
+     */
+    public Vector query(Connection conn, String sql, Object[] params,
+                        RowMapper mapper) {
+        Vector result = tryQuery(conn, sql, params, mapper);
+        return (result == null) ? new Vector() : result;
+    }
+
+    /**
+     * @return the rows of the query mapped by the mapper, or null on error,
+     *   for callers that must not take a failure for an empty result
+     */
+    public Vector tryQuery(Connection conn, String sql, Object[] params,
+                           RowMapper mapper) {
+        logger.debug(">>> Start of DatabaseController.tryQuery()***");
+        Vector result = new Vector();
+        try {
+            PreparedStatement ps = prepare(conn, sql, params);
+            try {
+                ResultSet rs = ps.executeQuery();
+                try {
+                    while (rs.next()) {
+                        result.add(mapper.mapRow(rs));
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                ps.close();
+            }
+        } catch (SQLException e) {
+            logger.error(e);
+            result = null;
+        }
+        logger.debug("<<< End of DatabaseController.tryQuery()***");
+        return result;
+    }
+
+    /**
+     * @return the first row of the query mapped by the mapper, or null
+     */
+    public Object queryObject(Connection conn, String sql, Object[] params,
+                              RowMapper mapper) {
+        logger.debug(">>> Start of DatabaseController.queryObject()***");
+        Object result = null;
+        try {
+            PreparedStatement ps = prepare(conn, sql, params);
+            try {
+                ps.setMaxRows(1);
+                ResultSet rs = ps.executeQuery();
+                try {
+                    if (rs.next()) {
+                        result = mapper.mapRow(rs);
+                    }
+                } finally {
+                    rs.close();
+                }
+            } finally {
+                ps.close();
+            }
+        } catch (SQLException e) {
+            logger.error(e);
+        }
+        logger.debug("<<< End of DatabaseController.queryObject()***");
+        return result;
+    }
+
+    /**
+     * @return the number of rows changed, or -1 on error
+     */
+    public int update(Connection conn, String sql, Object[] params) {
+        logger.debug(">>> Start of DatabaseController.update()***");
         int n = -1;
         try {
-            Statement s = conn.createStatement();
-            n = s.executeUpdate(sql);
+            PreparedStatement ps = prepare(conn, sql, params);
+            try {
+                n = ps.executeUpdate();
+            } finally {
+                ps.close();
+            }
         } catch (SQLException e) {
             logger.error(e);
         }
-        logger.debug("<<< End of DatabaseController.executeUpdate()***");
+        logger.debug("<<< End of DatabaseController.update()***");
         return n;
     }
 
-    public ResultSet executeQuery(Connection conn, String sql) {
-        logger.debug(">>> Start of DatabaseController.executeQuery()***");
-        ResultSet rs = null;
+    private PreparedStatement prepare(Connection conn, String sql,
+                                      Object[] params) throws SQLException {
+        if (conn == null) {
+            throw new SQLException("No database connection");
+        }
+        PreparedStatement ps = conn.prepareStatement(sql);
+        try {
+            for (int i = 0; (params != null) && (i < params.length); i++) {
+                if (params[i] == null) {
+                    ps.setNull(i + 1, Types.VARCHAR);
+                } else {
+                    ps.setObject(i + 1, params[i]);
+                }
+            }
+        } catch (SQLException e) {
+            ps.close();
+            throw e;
+        }
+        return ps;
+    }
+
+    /**
+     * Runs statements without parameters, such as the schema creation.
+     */
+    public int executeUpdate(Connection conn, String sql) {
+        logger.debug(">>> Start of DatabaseController.executeUpdate()***");
+        int n = -1;
         try {
             Statement s = conn.createStatement();
-            rs = s.executeQuery(sql);
+            try {
+                n = s.executeUpdate(sql);
+            } finally {
+                s.close();
+            }
         } catch (SQLException e) {
             logger.error(e);
         }
-        logger.debug("<<< End of DatabaseController.executeQuery()***");
-        return rs;
+        logger.debug("<<< End of DatabaseController.executeUpdate()***");
+        return n;
     }
 }
@@ -14,46 +14,36 @@ import com.progdan.edmis.control.index.CreateIndex;
 public class MySQLController extends DatabaseController {
     private static Logger logger = Logger.getLogger(MySQLController.class.
             getName());
+    /** The jdbc/EDMIS DataSource, looked up once */
+    private static DataSource dataSource;
+
+    /*
+     * The DataSource is backed by the pool of the application server
+     * (Tomcat's DBCP, see server8080.xml). This code only works when you are
+     * using servlets or EJBs in a J2EE application server.
+     */
+    private static synchronized DataSource getDataSource() throws
+            NamingException {
+        if (dataSource == null) {
+            InitialContext ctx = new InitialContext();
+            dataSource = (DataSource) ctx.lookup("java:comp/env/jdbc/EDMIS");
+        }
+        return dataSource;
+    }
 
     public Connection getConnection() {
         logger.debug(">>> Start of MySQLController.getConnection()***");
         Connection conn = null;
+        long start = System.currentTimeMillis();
         try {
-            /*
-             * Create a JNDI Initial context to be able to
-             *  lookup  the DataSource
-             *
-             * In production-level code, this should be cached as
-             * an instance or static variable, as it can
-             * be quite expensive to create a JNDI context.
-             *
-             * Note: This code only works when you are using servlets
-             * or EJBs in a J2EE application server. If you are
-             * using connection pooling in standalone Java code, you
-             * will have to create/configure datasources using whatever
-             * mechanisms your particular connection pooling library
-             * provides.
-             */
-
-            InitialContext ctx = new InitialContext();
-
-            /*
-             * Lookup the DataSource, which will be backed by a pool
-             * that the application server provides. DataSource instances
-             * are also a good candidate for caching as an instance
-             * variable, as JNDI lookups can be expensive as well.
-             */
-
-            DataSource ds = (DataSource) ctx.lookup(
-                    "java:comp/env/jdbc/EDMIS");
-
-            conn = ds.getConnection();
-
+            conn = getDataSource().getConnection();
+            borrowed(System.currentTimeMillis() - start, true);
         } catch (NamingException e) {
             logger.error(e);
         }
 
         catch (SQLException e) {
+            borrowed(System.currentTimeMillis() - start, false);
             logger.error(e);
             if (e.toString().indexOf("Unknown database 'edmis'") != -1) {
                 conn = createDatabase();
@@ -230,6 +220,8 @@ public class MySQLController extends DatabaseController {
               "DocumentIndexID INT UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,"
               + "DocumentID VARCHAR(128) NOT NULL,"
               + "DocumentGroup TEXT,"
+              + "DocumentIndexLease DATETIME,"
+              + "DocumentIndexAttempts INT UNSIGNED NOT NULL DEFAULT 0,"
               + "INDEX indDocumentID(DocumentID),"
               +
               "FOREIGN KEY (DocumentID) REFERENCES Documents(DocumentID) ON DELETE CASCADE"
@@ -0,0 +1,11 @@
+package com.progdan.edmis.control.database;
+
+import java.sql.*;
+
+/**
+ * Maps the current row of a ResultSet into a model object, for the query
+ * methods of DatabaseController.
+ */
+public interface RowMapper {
+    public Object mapRow(ResultSet rs) throws SQLException;
+}
@@ -0,0 +1,27 @@
+package com.progdan.edmis.control.document;
+
+import java.sql.*;
+
+import com.progdan.edmis.control.database.RowMapper;
+import com.progdan.edmis.model.document.Document;
+
+/**
+ * Maps a row selecting COLUMNS into a Document.
+ */
+public class DocumentMapper implements RowMapper {
+    public static final String COLUMNS =
+            "Documents.DocumentID, DocumentName, DocumentSize, DocumentFormat, LanguageID, DocumentDate, DocumentPages";
+    public static final DocumentMapper INSTANCE = new DocumentMapper();
+
+    public Object mapRow(ResultSet rs) throws SQLException {
+        Document doc = new Document();
+        doc.setId(rs.getString("DocumentID"));
+        doc.setName(rs.getString("DocumentName"));
+        doc.setSize(rs.getLong("DocumentSize"));
+        doc.setFormat(rs.getString("DocumentFormat"));
+        doc.setLanguage(rs.getString("LanguageID"));
+        doc.setDate(rs.getString("DocumentDate"));
+        doc.setPages(rs.getInt("DocumentPages"));
+        return doc;
+    }
+}
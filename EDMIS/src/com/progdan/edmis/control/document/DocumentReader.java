@@ -1,16 +1,20 @@
 package com.progdan.edmis.control.document;
 
+import java.io.*;
 import java.sql.*;
 import java.util.*;
 
 import com.progdan.logengine.*;
 import com.progdan.edmis.model.user.User;
 import com.progdan.edmis.control.database.*;
+import com.progdan.edmis.control.index.NameIndex;
 import com.progdan.edmis.model.document.Document;
 
 public class DocumentReader {
     private static Logger logger = Logger.getLogger(DocumentReader.class.
             getName());
+    /** Most ids in the IN list of one query */
+    private static final int CHUNK = 1000;
     private Connection conn;
     private DatabaseController bd;
     public DocumentReader(User user) {
@@ -22,110 +26,96 @@ public class DocumentReader {
 
     public Document readDocument(String id) {
         logger.debug(">>> Start of DocumentReader.readDocument()***");
-        Document doc = new Document();
-        try {
-            String sql = "SELECT * FROM Documents WHERE DocumentID='" + id +
-                         "'";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            if (rs.next()) {
-                doc.setId(rs.getString("DocumentID"));
-                doc.setName(rs.getString("DocumentName"));
-                doc.setSize(rs.getLong("DocumentSize"));
-                doc.setFormat(rs.getString("DocumentFormat"));
-                doc.setLanguage(rs.getString("LanguageID"));
-                doc.setDate(rs.getString("DocumentDate"));
-                doc.setPages(rs.getInt("DocumentPages"));
-            }
-        } catch (SQLException e) {
-            logger.error(e);
+        String sql = "SELECT " + DocumentMapper.COLUMNS +
+                     " FROM Documents WHERE DocumentID=?";
+        Document doc = (Document) bd.queryObject(conn, sql, new Object[] {id},
+                                                 DocumentMapper.INSTANCE);
+        if (doc == null) {
+            doc = new Document();
         }
         logger.debug("<<< End of DocumentReader.readDocument()***");
         return doc;
     }
 
+    /**
+     * Reads the documents with one query per CHUNK ids.
+     * @return the documents found, by id
+     */
+    public Hashtable readDocuments(Vector ids) {
+        logger.debug(">>> Start of DocumentReader.readDocuments()***");
+        Hashtable result = new Hashtable();
+        for (int start = 0; start < ids.size(); start += CHUNK) {
+            List chunk = ids.subList(start, Math.min(start + CHUNK, ids.size()));
+            StringBuffer sql = new StringBuffer("SELECT " +
+                                                DocumentMapper.COLUMNS +
+                                                " FROM Documents WHERE DocumentID IN (?");
+            for (int i = 1; i < chunk.size(); i++) {
+                sql.append(",?");
+            }
+            sql.append(")");
+            Vector docs = bd.query(conn, sql.toString(), chunk.toArray(),
+                                   DocumentMapper.INSTANCE);
+            for (int i = 0; i < docs.size(); i++) {
+                Document doc = (Document) docs.get(i);
+                result.put(doc.getId(), doc);
+            }
+        }
+        logger.debug("<<< End of DocumentReader.readDocuments()***");
+        return result;
+    }
+
     public boolean exists(String id) {
         logger.debug(">>> Start of DocumentReader.exists()***");
-        boolean result = false;
-        try {
-            String sql = "SELECT * FROM Documents WHERE DocumentID='" + id +
-                         "'";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            result = rs.next();
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        String sql = "SELECT DocumentID FROM Documents WHERE DocumentID=?";
+        boolean result = bd.queryObject(conn, sql, new Object[] {id},
+                                        ColumnMapper.STRING) != null;
         logger.debug("<<< End of DocumentReader.exists()***");
         return result;
     }
 
     public Vector getAllDocuments() {
         logger.debug(">>> Start of DocumentReader.getAllDocuments()***");
-        Vector alldocs = new Vector();
-        Document doc;
-        try {
-            String sql = "SELECT DocumentID, DocumentName, DocumentFormat, LanguageID, DocumentSize, DocumentDate FROM Documents ORDER BY DocumentName";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                doc = new Document();
-                doc.setId(rs.getString("DocumentID"));
-                doc.setName(rs.getString("DocumentName"));
-                doc.setFormat(rs.getString("DocumentFormat"));
-                doc.setLanguage(rs.getString("LanguageID"));
-                doc.setSize(rs.getLong("DocumentSize"));
-                doc.setDate(rs.getString("DocumentDate"));
-                alldocs.add(doc);
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        String sql = "SELECT " + DocumentMapper.COLUMNS +
+                     " FROM Documents ORDER BY DocumentName";
+        Vector alldocs = bd.query(conn, sql, null, DocumentMapper.INSTANCE);
         logger.debug("<<< End of DocumentReader.getAllDocuments()***");
         return alldocs;
     }
 
     public Vector getAllDocumentsByGroup(int id) {
         logger.debug(">>> Start of DocumentReader.getAllDocuments()***");
-        Vector alldocs = new Vector();
-        Document doc;
-        try {
-            String sql = "SELECT Documents.DocumentID, DocumentName, DocumentFormat, LanguageID, DocumentSize, DocumentDate FROM Documents NATURAL JOIN Relations WHERE DocumentGroupID=" +
-                         id + " ORDER BY DocumentName";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                doc = new Document();
-                doc.setId(rs.getString("DocumentID"));
-                doc.setName(rs.getString("DocumentName"));
-                doc.setFormat(rs.getString("DocumentFormat"));
-                doc.setLanguage(rs.getString("LanguageID"));
-                doc.setSize(rs.getLong("DocumentSize"));
-                doc.setDate(rs.getString("DocumentDate"));
-                alldocs.add(doc);
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        String sql = "SELECT " + DocumentMapper.COLUMNS +
+                     " FROM Documents NATURAL JOIN Relations WHERE DocumentGroupID=? ORDER BY DocumentName";
+        Vector alldocs = bd.query(conn, sql, new Object[] {new Integer(id)},
+                                  DocumentMapper.INSTANCE);
         logger.debug("<<< End of DocumentReader.getAllDocuments()***");
         return alldocs;
     }
 
+    /**
+     * Finds the documents with a word of the name starting with each word
+     * of the search, through the index of names.
+     */
     public Vector searchDocuments(String search) {
         logger.debug(
                 ">>> Start of DocumentReader.searchDocuments()***");
         Vector result = new Vector();
-        int i;
-        String name;
-        String sql = "SELECT DocumentID, DocumentName, DocumentFormat, LanguageID FROM Documents WHERE DocumentName LIKE '%" +
-                     search + "%' ORDER BY DocumentName";
-        ResultSet rs = bd.executeQuery(conn, sql);
         try {
-            while (rs.next()) {
-                Document doc = new Document();
-                doc.setId(rs.getString("DocumentID"));
-                doc.setName(rs.getString("DocumentName"));
-                doc.setFormat(rs.getString("DocumentFormat"));
-                doc.setLanguage(rs.getString("LanguageID"));
-                result.add(doc);
+            Vector ids = NameIndex.getInstance().search(bd, conn,
+                    NameIndex.DOCUMENT, search);
+            if (ids == null) {
+                result = getAllDocuments();
+            } else {
+                result.addAll(readDocuments(ids).values());
+                Collections.sort(result, new Comparator() {
+                    public int compare(Object a, Object b) {
+                        return String.valueOf(((Document) a).getName()).
+                                compareToIgnoreCase(String.valueOf(((Document)
+                                b).getName()));
+                    }
+                });
             }
-        } catch (SQLException e) {
+        } catch (IOException e) {
             logger.error(e);
         }
         logger.debug("<<< End of DocumentReader.searchDocuments()***");
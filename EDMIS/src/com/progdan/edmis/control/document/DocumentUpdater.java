@@ -1,11 +1,14 @@
 package com.progdan.edmis.control.document;
 
 import java.sql.*;
+import java.util.*;
 import javax.servlet.http.*;
 
 import com.progdan.logengine.*;
 import com.progdan.edmis.model.user.User;
 import com.progdan.edmis.control.database.*;
+import com.progdan.edmis.control.index.IndexFiles;
+import com.progdan.parserserver.client.ParserClient;
 import com.progdan.edmis.model.document.Document;
 
 public class DocumentUpdater {
@@ -26,6 +29,8 @@ public class DocumentUpdater {
         logger.debug(">>> Start of DocumentUpdater.update()***");
         DocumentWriter write = new DocumentWriter(user);
         Document doc = (Document) session.getAttribute("Document");
+        String name = doc.getName();
+        String language = doc.getLanguage();
 //    doc.setId(request.getParameter("id"));
         doc.setName(request.getParameter("name"));
         doc.setLanguage(request.getParameter("language"));
@@ -35,6 +40,31 @@ public class DocumentUpdater {
 //    doc.setOwer(Integer.parseInt(request.getParameter("ower")));
 //    doc.setDate(request.getParameter("date"));
         write.updateDocument(doc);
+        if (!equals(name, doc.getName()) || !equals(language, doc.getLanguage())) {
+            reindex(doc);
+        }
         logger.debug("<<< End of DocumentUpdater.update()***");
     }
+
+    /**
+     * Indexes the document again on all its groups, so the name and
+     * language stored in the indexes and shown by the searches follow the
+     * database. The Parser Server replaces the older copies.
+     */
+    private void reindex(Document doc) {
+        logger.debug(">>> Start of DocumentUpdater.reindex()***");
+        String sql = "SELECT DocumentGroupID FROM Relations WHERE DocumentID=?";
+        Vector groups = bd.query(conn, sql, new Object[] {doc.getId()},
+                                 ColumnMapper.STRING);
+        if (groups.size() > 0) {
+            IndexFiles index = new IndexFiles(user);
+            index.index((String[]) groups.toArray(new String[groups.size()]),
+                        doc.getId(), doc.getFormat(), ParserClient.REINDEX);
+        }
+        logger.debug("<<< End of DocumentUpdater.reindex()***");
+    }
+
+    private static boolean equals(String a, String b) {
+        return (a == null) ? (b == null) : a.equals(b);
+    }
 }
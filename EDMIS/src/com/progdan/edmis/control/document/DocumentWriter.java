@@ -6,6 +6,8 @@ import java.io.*;
 
 import com.progdan.logengine.*;
 import com.progdan.edmis.control.index.IndexFiles;
+import com.progdan.edmis.control.index.NameIndex;
+import com.progdan.parserserver.client.ParserClient;
 import com.progdan.edmis.model.user.User;
 import com.progdan.edmis.control.database.*;
 import com.progdan.edmis.model.document.Document;
@@ -31,13 +33,11 @@ public class DocumentWriter {
         logger.debug(">>> Start of DocumentWriter.writeNew()***");
         DocumentGroupReader read = new DocumentGroupReader(user);
         RelationControl relation = new RelationControl(user);
-        String sql = "INSERT INTO Documents (DocumentID, DocumentName, DocumentSize, DocumentFormat, LanguageID, DocumentDate) VALUES('"
-                     + doc.getId() + "','" + doc.getName() + "'," +
-                     doc.getSize() +
-                     ",'"
-                     + doc.getFormat() + "','en','" + doc.getDate() + "')";
-
-        bd.executeUpdate(conn, sql);
+        String sql = "INSERT INTO Documents (DocumentID, DocumentName, DocumentSize, DocumentFormat, LanguageID, DocumentDate) VALUES(?,?,?,?,'en',?)";
+        bd.update(conn, sql, new Object[] {doc.getId(), doc.getName(),
+                  new Long(doc.getSize()), doc.getFormat(), doc.getDate()});
+        NameIndex.getInstance().put(NameIndex.DOCUMENT, doc.getId(),
+                                    doc.getName());
         relation.add(doc.getId(), "Administrator Favorites");
         if((user.getLogin() + " Favorites").compareTo("Administrator Favorites") != 0){
             relation.add(doc.getId(), user.getLogin() + " Favorites");
@@ -54,19 +54,19 @@ public class DocumentWriter {
             logger.error(e);
         }
         IndexFiles index = new IndexFiles(user);
-        index.index("all", doc.getId(), doc.getFormat());
+        index.index("all", doc.getId(), doc.getFormat(),
+                    ParserClient.INTERACTIVE);
 
         logger.debug("<<< End of DocumentWriter.writeNew()***");
     }
 
     public void updateDocument(Document doc) {
         logger.debug(">>> Start of DocumentWriter.updateDocument()***");
-        String sql = "UPDATE Documents SET DocumentName='" + doc.getName()
-                     + "',LanguageID='" + doc.getLanguage() +
-                     "',DocumentPages="
-                     + doc.getPages() + "  WHERE DocumentID='" + doc.getId() +
-                     "'";
-        bd.executeUpdate(conn, sql);
+        String sql = "UPDATE Documents SET DocumentName=?, LanguageID=?, DocumentPages=? WHERE DocumentID=?";
+        bd.update(conn, sql, new Object[] {doc.getName(), doc.getLanguage(),
+                  new Integer(doc.getPages()), doc.getId()});
+        NameIndex.getInstance().put(NameIndex.DOCUMENT, doc.getId(),
+                                    doc.getName());
         logger.debug("<<< End of DocumentWriter.updateDocument()***");
     }
 }
@@ -0,0 +1,30 @@
+package com.progdan.edmis.control.documents;
+
+import java.sql.*;
+
+import com.progdan.edmis.control.database.RowMapper;
+import com.progdan.edmis.model.documents.DocumentGroup;
+
+/**
+ * Maps a row selecting COLUMNS into a DocumentGroup.
+ */
+public class DocumentGroupMapper implements RowMapper {
+    public static final String COLUMNS =
+            "DocumentGroups.DocumentGroupID, DocumentGroupName, DocumentGroupDate, DocumentGroupUpdate";
+    public static final DocumentGroupMapper INSTANCE = new DocumentGroupMapper();
+
+    public Object mapRow(ResultSet rs) throws SQLException {
+        DocumentGroup docgrp = new DocumentGroup();
+        docgrp.setId(rs.getInt("DocumentGroupID"));
+        docgrp.setName(rs.getString("DocumentGroupName"));
+        java.sql.Date date = rs.getDate("DocumentGroupDate");
+        if (date != null) {
+            docgrp.setDate(date.toString());
+        }
+        java.sql.Date update = rs.getDate("DocumentGroupUpdate");
+        if (update != null) {
+            docgrp.setLastupdate(update.toString());
+        }
+        return docgrp;
+    }
+}
@@ -1,9 +1,12 @@
 package com.progdan.edmis.control.documents;
 
 import java.sql.*;
+import java.util.Vector;
 
 import com.progdan.logengine.*;
+import com.progdan.edmis.control.database.ColumnMapper;
 import com.progdan.edmis.control.database.DatabaseController;
+import com.progdan.edmis.control.permissions.PermissionCache;
 import com.progdan.edmis.model.documents.DocumentGroup;
 import com.progdan.edmis.model.user.User;
 
@@ -23,22 +26,14 @@ public class DocumentGroupReader {
 
     public boolean isEmpty(int id) {
         logger.debug(">>> Start of DocumentGroupReader.isEmpty()***");
-        boolean empty = true;
-        try {
-            String sql = "SELECT * FROM Relations WHERE DocumentGroupID=" + id;
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                empty = false;
-            }
-            sql = "SELECT * FROM SubDocumentGroups WHERE DocumentGroupRoot=" +
-                  id + " OR DocumentGroupLeaf=" + id;
-            rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                empty = false;
-            }
-
-        } catch (SQLException e) {
-            logger.error(e);
+        Integer docGrp = new Integer(id);
+        String sql = "SELECT DocumentGroupID FROM Relations WHERE DocumentGroupID=?";
+        boolean empty = bd.queryObject(conn, sql, new Object[] {docGrp},
+                                       ColumnMapper.INTEGER) == null;
+        if (empty) {
+            sql = "SELECT DocumentGroupRoot FROM SubDocumentGroups WHERE DocumentGroupRoot=? OR DocumentGroupLeaf=?";
+            empty = bd.queryObject(conn, sql, new Object[] {docGrp, docGrp},
+                                   ColumnMapper.INTEGER) == null;
         }
         logger.debug("<<< End of DocumentGroupReader.isEmpty()***");
         return empty;
@@ -47,16 +42,11 @@ public class DocumentGroupReader {
     public int exists(String name) {
         logger.debug(">>> Start of DocumentGroupReader.exists()***");
         int id = 0;
-        try {
-            String sql =
-                    "Select DocumentGroupID FROM DocumentGroups WHERE DocumentGroupName='" +
-                    name + "'";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                id = rs.getInt("DocumentGroupID");
-            }
-        } catch (SQLException e) {
-            logger.error(e);
+        String sql = "SELECT DocumentGroupID FROM DocumentGroups WHERE DocumentGroupName=?";
+        Vector ids = bd.query(conn, sql, new Object[] {name},
+                              ColumnMapper.INTEGER);
+        if (!ids.isEmpty()) {
+            id = ((Integer) ids.lastElement()).intValue();
         }
         logger.debug("<<< End of DocumentGroupReader.exists()***");
         return id;
@@ -64,28 +54,17 @@ public class DocumentGroupReader {
 
     public DocumentGroup readDocumentGroup(int id) {
         logger.debug(">>> Start of DocumentGroupReader.readDocumentGroup()***");
-        DocumentGroup doc = new DocumentGroup();
-        doc.setId(id);
-        String sql = "SELECT DocumentGroups.* FROM DocumentGroups NATURAL JOIN Permissions NATURAL JOIN PermissionTypes NATURAL JOIN UserGroups NATURAL JOIN Views NATURAL JOIN Users WHERE Users.UserID = " +
-                     user.getId() +
-                     " AND PermissionTypeStrength > 0 AND DocumentGroups.DocumentGroupID=" +
-                     id;
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                String name = rs.getString("DocumentGroupName");
-                doc.setName(name);
-                java.sql.Date date = rs.getDate("DocumentGroupDate");
-                if (date != null) {
-                    doc.setDate(date.toString());
-                }
-                java.sql.Date update = rs.getDate("DocumentGroupUpdate");
-                if (update != null) {
-                    doc.setLastupdate(update.toString());
-                }
-            }
-        } catch (SQLException e) {
-            logger.error(e);
+        DocumentGroup doc = null;
+        if (PermissionCache.getStrength(user, id) > 0) {
+            String sql = "SELECT " + DocumentGroupMapper.COLUMNS +
+                         " FROM DocumentGroups WHERE DocumentGroupID=?";
+            doc = (DocumentGroup) bd.queryObject(conn, sql,
+                    new Object[] {new Integer(id)},
+                    DocumentGroupMapper.INSTANCE);
+        }
+        if (doc == null) {
+            doc = new DocumentGroup();
+            doc.setId(id);
         }
         logger.debug("<<< End of DocumentGroupReader.readDocumentGroup()***");
         return doc;
@@ -2,11 +2,14 @@ package com.progdan.edmis.control.documents;
 
 import java.sql.*;
 import java.util.Properties;
+import java.util.Vector;
 import java.io.*;
 
 import com.progdan.logengine.*;
 import com.progdan.edmis.control.index.CreateIndex;
+import com.progdan.edmis.control.index.NameIndex;
 import com.progdan.edmis.control.database.*;
+import com.progdan.edmis.control.permissions.PermissionCache;
 import com.progdan.edmis.model.user.User;
 import com.progdan.edmis.model.documents.DocumentGroup;
 
@@ -27,23 +30,22 @@ public class DocumentGroupWriter {
 
     public void delete(int id) {
         logger.debug(">>> Start of DocumentGroupWriter.delete()***");
-        String name = "", sql;
-        try {
-            sql =
-                    "SELECT DocumentGroupName FROM DocumentGroups WHERE DocumentGroupID=" +
-                    id;
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                name = rs.getString("DocumentGroupName");
-            }
-            if (name.compareTo(user.getLogin() + " Favorites") != 0) {
-                logger.info("DocumentGroup '" + name + "' removed by " +
-                            user.getLogin() + ".");
-                sql = "DELETE FROM DocumentGroups WHERE DocumentGroupID=" + id;
-                bd.executeUpdate(conn, sql);
-            }
-        } catch (SQLException e) {
-            logger.error(e);
+        Object[] params = new Object[] {new Integer(id)};
+        String sql =
+                "SELECT DocumentGroupName FROM DocumentGroups WHERE DocumentGroupID=?";
+        String name = (String) bd.queryObject(conn, sql, params,
+                                              ColumnMapper.STRING);
+        if (name == null) {
+            name = "";
+        }
+        if (name.compareTo(user.getLogin() + " Favorites") != 0) {
+            logger.info("DocumentGroup '" + name + "' removed by " +
+                        user.getLogin() + ".");
+            sql = "DELETE FROM DocumentGroups WHERE DocumentGroupID=?";
+            bd.update(conn, sql, params);
+            PermissionCache.invalidate();
+            NameIndex.getInstance().remove(NameIndex.GROUP,
+                                           String.valueOf(id));
         }
         logger.debug("<<< End of DocumentGroupWriter.delete()***");
     }
@@ -55,67 +57,60 @@ public class DocumentGroupWriter {
         java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat(
                 "yyyy-MM-dd HH:mm:ss");
         String update = sdf.format(new java.util.Date());
-        String sql = "UPDATE DocumentGroups SET DocumentGroupName='" +
-                     docgrp.getName() +
-                     "', DocumentGroupUpdate='" + update +
-                     "' WHERE DocumentGroupID=" + docgrp.getId();
-        bd.executeUpdate(conn, sql);
+        String sql = "UPDATE DocumentGroups SET DocumentGroupName=?, DocumentGroupUpdate=? WHERE DocumentGroupID=?";
+        bd.update(conn, sql, new Object[] {docgrp.getName(), update,
+                  new Integer(docgrp.getId())});
+        NameIndex.getInstance().put(NameIndex.GROUP,
+                                    String.valueOf(docgrp.getId()),
+                                    docgrp.getName());
         logger.debug("<<< End of DocumentGroupWriter.update()***");
     }
 
     public void writeNew(DocumentGroup docgrp) {
         logger.debug(">>> Start of DocumentGroupWriter.writeNew()***");
-        ResultSet rs;
         String sql;
         int docGrpID = 0, usrGrpID = 0;
-        try {
-            logger.info("DocumentGroup '" + docgrp.getName() + "' created by " +
-                        user.getLogin() + ".");
-            sql = "INSERT INTO DocumentGroups(DocumentGroupName, DocumentGroupDate, DocumentGroupUpdate) VALUES('" +
-                  docgrp.getName() + "','" + docgrp.getDate() + "','" +
-                  docgrp.getLastupdate() + "')";
-            bd.executeUpdate(conn, sql);
-
-            sql =
-                    "SELECT DocumentGroupID FROM DocumentGroups WHERE DocumentGroupName='" +
-                    docgrp.getName() + "'";
-            rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                docGrpID = rs.getInt("DocumentGroupID");
-            }
-
-            Properties props = new Properties();
-            String reppath = null;
-            try {
-                props.load(getClass().getResourceAsStream("/" + "db.properties"));
-                reppath = props.getProperty("reppath", "C:\\EDMIS");
-            } catch (IOException e) {
-                logger.error(e);
-            }
-            String dir = new Integer(docGrpID).toString();
-            File indexdir = new File(reppath + System.getProperty("file.separator") + "index", dir);
-            indexdir.mkdir();
-            CreateIndex.create(indexdir.getAbsolutePath());
-
-
-            sql = "SELECT UserGroupID FROM UserGroups WHERE UserGroupName='" +
-                  user.getLogin() + "'";
-            rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                usrGrpID = rs.getInt("UserGroupID");
-            }
-
-            sql = "INSERT INTO Permissions (UserGroupID, DocumentGroupID, PermissionTypeID) VALUES(" +
-                  usrGrpID + "," + docGrpID + ",1)";
-            bd.executeUpdate(conn, sql);
+        logger.info("DocumentGroup '" + docgrp.getName() + "' created by " +
+                    user.getLogin() + ".");
+        sql = "INSERT INTO DocumentGroups(DocumentGroupName, DocumentGroupDate, DocumentGroupUpdate) VALUES(?,?,?)";
+        bd.update(conn, sql, new Object[] {docgrp.getName(), docgrp.getDate(),
+                  docgrp.getLastupdate()});
 
-            sql = "INSERT INTO Permissions (UserGroupID, DocumentGroupID, PermissionTypeID) VALUES(1," +
-                  docGrpID + ",1)";
-            bd.executeUpdate(conn, sql);
+        sql = "SELECT DocumentGroupID FROM DocumentGroups WHERE DocumentGroupName=?";
+        Vector ids = bd.query(conn, sql, new Object[] {docgrp.getName()},
+                              ColumnMapper.INTEGER);
+        if (!ids.isEmpty()) {
+            docGrpID = ((Integer) ids.lastElement()).intValue();
+        }
+        NameIndex.getInstance().put(NameIndex.GROUP, String.valueOf(docGrpID),
+                                    docgrp.getName());
 
-        } catch (SQLException e) {
+        Properties props = new Properties();
+        String reppath = null;
+        try {
+            props.load(getClass().getResourceAsStream("/" + "db.properties"));
+            reppath = props.getProperty("reppath", "C:\\EDMIS");
+        } catch (IOException e) {
             logger.error(e);
         }
+        String dir = new Integer(docGrpID).toString();
+        File indexdir = new File(reppath + System.getProperty("file.separator") + "index", dir);
+        indexdir.mkdir();
+        CreateIndex.create(indexdir.getAbsolutePath());
+
+        sql = "SELECT UserGroupID FROM UserGroups WHERE UserGroupName=?";
+        ids = bd.query(conn, sql, new Object[] {user.getLogin()},
+                       ColumnMapper.INTEGER);
+        if (!ids.isEmpty()) {
+            usrGrpID = ((Integer) ids.lastElement()).intValue();
+        }
+
+        sql = "INSERT INTO Permissions (UserGroupID, DocumentGroupID, PermissionTypeID) VALUES(?,?,1)";
+        bd.update(conn, sql, new Object[] {new Integer(usrGrpID),
+                  new Integer(docGrpID)});
+        bd.update(conn, sql, new Object[] {new Integer(1),
+                  new Integer(docGrpID)});
+        PermissionCache.invalidate();
         logger.debug("<<< End of DocumentGroupWriter.writeNew()***");
     }
 }
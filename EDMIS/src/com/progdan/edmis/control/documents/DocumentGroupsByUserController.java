@@ -1,5 +1,6 @@
 package com.progdan.edmis.control.documents;
 
+import java.io.*;
 import java.util.*;
 import java.sql.*;
 
@@ -7,6 +8,8 @@ import com.progdan.edmis.model.user.User;
 import com.progdan.edmis.control.database.*;
 import com.progdan.logengine.*;
 import com.progdan.edmis.model.documents.DocumentGroup;
+import com.progdan.edmis.control.permissions.PermissionCache;
+import com.progdan.edmis.control.index.NameIndex;
 
 public class DocumentGroupsByUserController {
     private static Logger logger = Logger.getLogger(
@@ -14,6 +17,14 @@ public class DocumentGroupsByUserController {
     private User user;
     private Connection conn;
     private DatabaseController bd;
+    /**
+     * Groups the user has a permission on, the condition of
+     * DocumentGroupReader.readDocumentGroup(). The lists select the group
+     * columns with it, instead of reading each group again.
+     */
+    private static final String USER_GROUPS =
+            "DocumentGroups NATURAL JOIN Permissions NATURAL JOIN PermissionTypes NATURAL JOIN UserGroups NATURAL JOIN Views NATURAL JOIN Users " +
+            "WHERE PermissionTypeStrength > 0 AND Users.UserID=?";
     public DocumentGroupsByUserController(User user) {
         logger.debug(
                 ">>> Start of DocumentGroupsByUserController.DocumentGroupsByUserController()***");
@@ -27,26 +38,11 @@ public class DocumentGroupsByUserController {
     public Vector getGroups() {
         logger.debug(
                 ">>> Start of DocumentGroupsByUserController.getGroups()***");
-        Vector result = new Vector();
-        DocumentGroupReader read = new DocumentGroupReader(user);
-        int i;
-        String name;
-        String sql = "SELECT DocumentGroups.DocumentGroupID, DocumentGroupName FROM DocumentGroups NATURAL JOIN Permissions NATURAL JOIN UserGroups NATURAL JOIN Views NATURAL JOIN Users WHERE Users.UserID=" +
-                     user.getId() + " ORDER BY DocumentGroupName";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                i = rs.getInt("DocumentGroupID");
-                name = rs.getString("DocumentGroupName");
-                if (name.endsWith("Favorites")) {
-                    result.add(0, read.readDocumentGroup(i));
-                } else {
-                    result.add(read.readDocumentGroup(i));
-                }
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        String sql = "SELECT DISTINCT " + DocumentGroupMapper.COLUMNS +
+                     " FROM " + USER_GROUPS + " ORDER BY DocumentGroupName";
+        Vector result = favoritesFirst(bd.query(conn, sql,
+                new Object[] {new Integer(user.getId())},
+                DocumentGroupMapper.INSTANCE));
         logger.debug("<<< End of DocumentGroupsByUserController.getGroups()***");
         return result;
     }
@@ -54,53 +50,38 @@ public class DocumentGroupsByUserController {
     public Vector getOtherGroups() {
         logger.debug(
                 ">>> Start of DocumentGroupsByUserController.getOtherGroups()***");
-        Vector result = new Vector();
-        DocumentGroupReader read = new DocumentGroupReader(user);
-        int i;
-        String name;
-        String sql = "SELECT DocumentGroupID, DocumentGroupName FROM DocumentGroups WHERE DocumentGroupID NOT IN(" +
-                     "SELECT DocumentGroups.DocumentGroupID FROM DocumentGroups NATURAL JOIN Permissions NATURAL JOIN UserGroups NATURAL JOIN Views NATURAL JOIN Users WHERE Users.UserID=" +
-                     user.getId() + ") ORDER BY DocumentGroupName";
-
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                i = rs.getInt("DocumentGroupID");
-                name = rs.getString("DocumentGroupName");
-                if (!name.endsWith("Favorites")) {
-                    result.add(read.readDocumentGroup(i));
-                }
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        String sql = "SELECT " + DocumentGroupMapper.COLUMNS +
+                     " FROM DocumentGroups WHERE DocumentGroupID NOT IN(" +
+                     "SELECT DocumentGroups.DocumentGroupID FROM " + USER_GROUPS +
+                     ") ORDER BY DocumentGroupName";
+        Vector result = withoutFavorites(bd.query(conn, sql,
+                new Object[] {new Integer(user.getId())},
+                DocumentGroupMapper.INSTANCE));
         logger.debug(
                 "<<< End of DocumentGroupsByUserController.getOtherGroups()***");
         return result;
     }
 
+    /**
+     * Finds the groups of the user with a word of the name starting with
+     * each word of the search, through the index of names.
+     */
     public Vector getGroups(String search) {
         logger.debug(
                 ">>> Start of DocumentGroupsByUserController.getGroups()***");
-        Vector result = new Vector();
-        DocumentGroupReader read = new DocumentGroupReader(user);
-        int i;
-        String name;
-        String sql = "SELECT DocumentGroups.DocumentGroupID, DocumentGroupName FROM DocumentGroups NATURAL JOIN Permissions NATURAL JOIN UserGroups NATURAL JOIN Views NATURAL JOIN Users WHERE Users.UserID=" +
-                     user.getId() + " AND DocumentGroupName LIKE '%" + search + "%' ORDER BY DocumentGroupName";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                i = rs.getInt("DocumentGroupID");
-                name = rs.getString("DocumentGroupName");
-                if (name.endsWith("Favorites")) {
-                    result.add(0, read.readDocumentGroup(i));
-                } else {
-                    result.add(read.readDocumentGroup(i));
-                }
-            }
-        } catch (SQLException e) {
-            logger.error(e);
+        Vector ids = searchNames(search);
+        Vector result;
+        if (ids == null) {
+            result = getGroups();
+        } else if (ids.isEmpty()) {
+            result = new Vector();
+        } else {
+            String sql = "SELECT DISTINCT " + DocumentGroupMapper.COLUMNS +
+                         " FROM " + USER_GROUPS +
+                         " AND DocumentGroups.DocumentGroupID IN (" +
+                         params(ids.size()) + ") ORDER BY DocumentGroupName";
+            result = favoritesFirst(bd.query(conn, sql, withUser(ids),
+                                             DocumentGroupMapper.INSTANCE));
         }
         logger.debug("<<< End of DocumentGroupsByUserController.getGroups()***");
         return result;
@@ -109,67 +90,94 @@ public class DocumentGroupsByUserController {
     public Vector getOtherGroups(String search) {
         logger.debug(
                 ">>> Start of DocumentGroupsByUserController.getOtherGroups()***");
-        Vector result = new Vector();
-        DocumentGroupReader read = new DocumentGroupReader(user);
-        int i;
-        String name;
-        String sql = "SELECT DocumentGroupID, DocumentGroupName FROM DocumentGroups WHERE DocumentGroupID NOT IN(" +
-                     "SELECT DocumentGroups.DocumentGroupID FROM DocumentGroups NATURAL JOIN Permissions NATURAL JOIN UserGroups NATURAL JOIN Views NATURAL JOIN Users WHERE Users.UserID=" +
-                     user.getId() + ") AND DocumentGroupName LIKE '%" + search + "%' ORDER BY DocumentGroupName";
-
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                i = rs.getInt("DocumentGroupID");
-                name = rs.getString("DocumentGroupName");
-                if (!name.endsWith("Favorites")) {
-                    result.add(read.readDocumentGroup(i));
-                }
-            }
-        } catch (SQLException e) {
-            logger.error(e);
+        Vector ids = searchNames(search);
+        Vector result;
+        if (ids == null) {
+            result = getOtherGroups();
+        } else if (ids.isEmpty()) {
+            result = new Vector();
+        } else {
+            String sql = "SELECT " + DocumentGroupMapper.COLUMNS +
+                         " FROM DocumentGroups WHERE DocumentGroupID NOT IN(" +
+                         "SELECT DocumentGroups.DocumentGroupID FROM " +
+                         USER_GROUPS + ") AND DocumentGroupID IN (" +
+                         params(ids.size()) + ") ORDER BY DocumentGroupName";
+            result = withoutFavorites(bd.query(conn, sql, withUser(ids),
+                    DocumentGroupMapper.INSTANCE));
         }
         logger.debug(
                 "<<< End of DocumentGroupsByUserController.getOtherGroups()***");
         return result;
     }
 
-    public boolean isAdmin(int id) {
-        logger.debug(">>> Start of DocumentGroupsByUserController.isAdmin()***");
-        boolean admin = false;
-        String sql = "SELECT UserID FROM Views NATURAL JOIN UserGroups NATURAL JOIN Permissions NATURAL JOIN PermissionTypes WHERE PermissionTypeStrength = 100 AND DocumentGroupID=" +
-                     id;
-        ResultSet rs = bd.executeQuery(conn, sql);
+    /**
+     * @return the ids of the groups found, or null when the search has no
+     *   words
+     */
+    private Vector searchNames(String search) {
         try {
-            while (rs.next()) {
-                int userID = rs.getInt("UserID");
-                if (userID == user.getId()) {
-                    admin = true;
-                }
-            }
-        } catch (SQLException e) {
+            return NameIndex.getInstance().search(bd, conn, NameIndex.GROUP,
+                                                  search);
+        } catch (IOException e) {
             logger.error(e);
+            return new Vector();
+        }
+    }
+
+    /**
+     * @return the parameters of a query on the user and the groups
+     */
+    private Object[] withUser(Vector ids) {
+        Vector params = new Vector(ids);
+        params.add(0, new Integer(user.getId()));
+        return params.toArray();
+    }
+
+    private static String params(int n) {
+        StringBuffer params = new StringBuffer("?");
+        for (int i = 1; i < n; i++) {
+            params.append(",?");
+        }
+        return params.toString();
+    }
+
+    /**
+     * Moves the Favorites groups to the start of the list.
+     */
+    private static Vector favoritesFirst(Vector groups) {
+        Vector result = new Vector();
+        for (int i = 0; i < groups.size(); i++) {
+            DocumentGroup group = (DocumentGroup) groups.get(i);
+            if (group.getName().endsWith("Favorites")) {
+                result.add(0, group);
+            } else {
+                result.add(group);
+            }
+        }
+        return result;
+    }
+
+    private static Vector withoutFavorites(Vector groups) {
+        Vector result = new Vector();
+        for (int i = 0; i < groups.size(); i++) {
+            DocumentGroup group = (DocumentGroup) groups.get(i);
+            if (!group.getName().endsWith("Favorites")) {
+                result.add(group);
+            }
         }
+        return result;
+    }
+
+    public boolean isAdmin(int id) {
+        logger.debug(">>> Start of DocumentGroupsByUserController.isAdmin()***");
+        boolean admin = PermissionCache.getStrength(user, id) >= 100;
         logger.debug("<<< End of DocumentGroupsByUserController.isAdmin()***");
         return admin;
     }
 
     public boolean isMember(int id) {
         logger.debug(">>> Start of DocumentGroupsByUserController.isAdmin()***");
-        boolean admin = false;
-        String sql = "SELECT UserID FROM Views NATURAL JOIN UserGroups NATURAL JOIN Permissions NATURAL JOIN PermissionTypes WHERE PermissionTypeStrength >= 50 AND DocumentGroupID=" +
-                     id;
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                int userID = rs.getInt("UserID");
-                if (userID == user.getId()) {
-                    admin = true;
-                }
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        boolean admin = PermissionCache.getStrength(user, id) >= 50;
         logger.debug("<<< End of DocumentGroupsByUserController.isAdmin()***");
         return admin;
     }
@@ -177,17 +185,10 @@ public class DocumentGroupsByUserController {
     public Vector getAdmins(int id) {
         logger.debug(
                 ">>> Start of DocumentGroupsByUserController.getAdmins()***");
-        Vector admins = new Vector();
-        String sql = "SELECT UserLogin FROM (SELECT * FROM DocumentGroups NATURAL JOIN Permissions NATURAL JOIN PermissionTypes WHERE PermissionTypeStrength = 100 AND DocumentGroups.DocumentGroupID=" +
-                     id + ")UserGroups NATURAL JOIN Views NATURAL JOIN Users";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                admins.add(rs.getString("UserLogin"));
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        String sql = "SELECT UserLogin FROM (SELECT * FROM DocumentGroups NATURAL JOIN Permissions NATURAL JOIN PermissionTypes WHERE PermissionTypeStrength = 100 AND DocumentGroups.DocumentGroupID=?" +
+                     ")UserGroups NATURAL JOIN Views NATURAL JOIN Users";
+        Vector admins = bd.query(conn, sql, new Object[] {new Integer(id)},
+                                 ColumnMapper.STRING);
         logger.debug(
                 "<<< End of DocumentGroupsByUserController.getAdmins()***");
         return admins;
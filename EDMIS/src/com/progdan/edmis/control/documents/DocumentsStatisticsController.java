@@ -7,7 +7,7 @@ import java.text.*;
 import com.progdan.logengine.*;
 import com.progdan.edmis.model.user.User;
 import com.progdan.edmis.control.database.*;
-import com.progdan.edmis.model.document.Document;
+import com.progdan.edmis.control.document.DocumentMapper;
 
 public class DocumentsStatisticsController {
     private static Logger logger = Logger.getLogger(
@@ -36,92 +36,53 @@ public class DocumentsStatisticsController {
     public String getNumDocs(Locale loc, User user) {
         logger.debug(
                 ">>> Start of DocumentsStatisticsController.getNumDocs()***");
-        int n = 0;
         DatabaseController bd = user.getBd();
         Connection conn = user.getConn();
         NumberFormat nf = NumberFormat.getNumberInstance(loc);
         DecimalFormat df = (DecimalFormat) nf;
         df.applyPattern("###,###");
         String sql = "SELECT COUNT(*) FROM Documents";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                n = rs.getInt("COUNT(*)");
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        Integer n = (Integer) bd.queryObject(conn, sql, null,
+                                             ColumnMapper.INTEGER);
         logger.debug("<<< End of DocumentsStatisticsController.getNumDocs()***");
-        return df.format(n);
+        return df.format((n == null) ? 0 : n.intValue());
     }
 
     public String getTotalSize(Locale loc, User user) {
         logger.debug(
                 ">>> Start of DocumentsStatisticsController.getTotalSize()***");
-        long size = 0;
         DatabaseController bd = user.getBd();
         Connection conn = user.getConn();
         NumberFormat nf = NumberFormat.getNumberInstance(loc);
         DecimalFormat df = (DecimalFormat) nf;
         df.applyPattern("###,###");
         String sql = "SELECT SUM(DocumentSize) FROM Documents";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                size = rs.getLong("SUM(DocumentSize)");
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        Long size = (Long) bd.queryObject(conn, sql, null, ColumnMapper.LONG);
 
         logger.debug(
                 "<<< End of DocumentsStatisticsController.getTotalSize()***");
-        return df.format(size);
+        return df.format((size == null) ? 0 : size.longValue());
     }
 
     public Vector getNewDocs(User user) {
         logger.debug(">>> Start of NewUsersController.getNewUsers()***");
         DatabaseController bd = user.getBd();
         Connection conn = user.getConn();
-        Vector newdocs = new Vector();
-        Document doc;
-        String sql = "SELECT DocumentID, DocumentName, DocumentFormat FROM Documents WHERE DocumentDate >= DATE_SUB(CURRENT_DATE(), INTERVAL 1 DAY) ORDER BY DocumentName";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                doc = new Document();
-                doc.setId(rs.getString("DocumentID"));
-                doc.setName(rs.getString("DocumentName"));
-                doc.setFormat(rs.getString("DocumentFormat"));
-                newdocs.add(doc);
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        String sql = "SELECT " + DocumentMapper.COLUMNS +
+                     " FROM Documents WHERE DocumentDate >= DATE_SUB(CURRENT_DATE(), INTERVAL 1 DAY) ORDER BY DocumentName";
+        Vector newdocs = bd.query(conn, sql, null, DocumentMapper.INSTANCE);
         logger.debug("<<< End of NewUsersController.getNewUsers()***");
         return newdocs;
     }
 
     public Vector getNewDocsByGroup(int id, User user) {
         logger.debug(">>> Start of NewUsersController.getNewUsers()***");
-        Vector newdocs = new Vector();
-        Document doc;
         DatabaseController bd = user.getBd();
         Connection conn = user.getConn();
-        String sql = "SELECT Documents.DocumentID, DocumentName, DocumentFormat FROM Relations NATURAL JOIN Documents WHERE  DocumentDate >= DATE_SUB(CURRENT_DATE(), INTERVAL 1 DAY) AND DocumentGroupID=" +
-                     id + " ORDER BY DocumentName";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                doc = new Document();
-                doc.setId(rs.getString("DocumentID"));
-                doc.setName(rs.getString("DocumentName"));
-                doc.setFormat(rs.getString("DocumentFormat"));
-                newdocs.add(doc);
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        String sql = "SELECT " + DocumentMapper.COLUMNS +
+                     " FROM Relations NATURAL JOIN Documents WHERE DocumentDate >= DATE_SUB(CURRENT_DATE(), INTERVAL 1 DAY) AND DocumentGroupID=? ORDER BY DocumentName";
+        Vector newdocs = bd.query(conn, sql, new Object[] {new Integer(id)},
+                                  DocumentMapper.INSTANCE);
         logger.debug("<<< End of NewUsersController.getNewUsers()***");
         return newdocs;
     }
@@ -0,0 +1,37 @@
+package com.progdan.edmis.control.index;
+
+import java.io.*;
+import java.util.*;
+
+import com.progdan.searchengine.index.IndexReader;
+import com.progdan.searchengine.index.Term;
+import com.progdan.searchengine.index.TermDocs;
+import com.progdan.searchengine.search.Filter;
+
+/**
+ * Keeps the hits of the given documents only. Documents are found by the
+ * id stored in their "path" keyword.
+ */
+public class DocumentFilter extends Filter {
+    private Set ids;
+    public DocumentFilter(Set ids) {
+        this.ids = ids;
+    }
+
+    public BitSet bits(IndexReader reader) throws IOException {
+        BitSet bits = new BitSet(reader.maxDoc());
+        TermDocs docs = reader.termDocs();
+        try {
+            Iterator it = ids.iterator();
+            while (it.hasNext()) {
+                docs.seek(new Term("path", (String) it.next()));
+                while (docs.next()) {
+                    bits.set(docs.doc());
+                }
+            }
+        } finally {
+            docs.close();
+        }
+        return bits;
+    }
+}
@@ -0,0 +1,44 @@
+package com.progdan.edmis.control.index;
+
+import java.io.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+import com.progdan.edmis.control.database.*;
+import com.progdan.searchengine.index.IndexReader;
+import com.progdan.searchengine.search.Filter;
+
+/**
+ * Keeps the hits of the documents of the given groups. The documents of
+ * the groups are read from the database each time the filter is applied,
+ * so it is meant to be wrapped in a CachingWrapperFilter, which applies it
+ * once per IndexReader. Only the group ids are kept: the query runs on the
+ * connection of the request applying the filter, and a failed query is
+ * thrown instead of filtering out every document.
+ */
+public class GroupFilter extends Filter {
+    private static Logger logger = Logger.getLogger(GroupFilter.class.getName());
+    private static final String SQL =
+            "SELECT DISTINCT DocumentID FROM Relations WHERE DocumentGroupID IN (";
+    private Vector groups;
+    private DatabaseController bd;
+    public GroupFilter(Vector groups, DatabaseController bd) {
+        this.groups = groups;
+        this.bd = bd;
+    }
+
+    public BitSet bits(IndexReader index) throws IOException {
+        logger.debug("Reading the documents of " + groups.size() + " groups");
+        StringBuffer sql = new StringBuffer(SQL);
+        for (int i = 0; i < groups.size(); i++) {
+            sql.append((i == 0) ? "?" : ",?");
+        }
+        sql.append(")");
+        Vector ids = bd.tryQuery(bd.getRequestConnection(), sql.toString(),
+                                 groups.toArray(), ColumnMapper.STRING);
+        if (ids == null) {
+            throw new IOException("Could not read the documents of the groups");
+        }
+        return new DocumentFilter(new HashSet(ids)).bits(index);
+    }
+}
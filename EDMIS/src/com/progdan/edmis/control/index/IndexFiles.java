@@ -2,21 +2,21 @@ package com.progdan.edmis.control.index;
 
 import java.io.*;
 import java.util.*;
-import java.net.*;
 
 import com.progdan.logengine.*;
-import com.progdan.searchengine.index.IndexWriter;
-import com.progdan.searchengine.analysis.SimpleAnalyzer;
-import com.progdan.searchengine.document.*;
 import com.progdan.edmis.model.user.User;
+import com.progdan.parserserver.client.ParserClient;
 
 
 public class IndexFiles {
     private static Logger logger = Logger.getLogger(IndexFiles.class.getName());
+    /** Most idle connections to the Parser Server kept for the requests */
+    private static final int IDLE = 4;
+    /** Idle connections to the Parser Server, used by one request at a time */
+    private static Vector clients = new Vector();
     private int port;
     private String host;
-    private Socket kkSocket;
-    private String reppath;
+    private int timeout;
     private ParserController control;
     public IndexFiles(User user) {
         control = new ParserController(user);
@@ -24,8 +24,9 @@ public class IndexFiles {
             Properties props = new Properties();
             props.load(getClass().getResourceAsStream("/" + "db.properties"));
             port = Integer.parseInt(props.getProperty("parsePort", "4444"));
-            reppath = props.getProperty("reppath", "C:\\EDMIS");
             host = props.getProperty("parseHost", "localhost");
+            timeout = Integer.parseInt(props.getProperty("parseTimeout", "10")) *
+                      1000;
         } catch (FileNotFoundException e) {
             logger.error(e);
         } catch (IOException e) {
@@ -33,69 +34,83 @@ public class IndexFiles {
         }
     }
 
-    public void index(String indexPath, String id, String format) {
+    /**
+     * @param priority ParserClient.INTERACTIVE for uploads, REINDEX for
+     *   documents added to another group
+     */
+    public void index(String indexPath, String id, String format,
+                      String priority) {
+        index(new String[] {indexPath}, id, format, priority);
+    }
+
+    /**
+     * Indexes the file on each of the groups with a single task.
+     */
+    public void index(String[] groups, String id, String format,
+                      String priority) {
         logger.debug(">>> Start of Client.index()***");
-        File test = new File(reppath + System.getProperty("file.separator") +
-                             "body", id + ".txt");
-        try {
-            if (test.exists()) {
-                IndexWriter writer = new IndexWriter(reppath +
-                        System.getProperty("file.separator") + "index" +
-                        System.getProperty("file.separator") +
-                        indexPath,
-                        new SimpleAnalyzer(), false);
-                logger.info("Indexing file " + id + "." + format +
-                            " on the group " + indexPath);
-                Document doc = new Document();
-                //We create a Document with two Fields, one wich contains
-                //the file path, and one the file's contents
-                InputStream is = new FileInputStream(test.getAbsolutePath());
-                doc.add(Field.UnIndexed("path", id));
-                doc.add(Field.Text("body", (Reader)new InputStreamReader(is)));
-                writer.addDocument(doc);
-                is.close();
-                writer.close();
-            } else {
-                String file = control.fileParsed(id);
-                if (file == null) {
-                    control.addTask(indexPath, id);
-                    sendFileToParser(indexPath, id, format);
-                }
-            }
-        } catch (FileNotFoundException e) {
-            logger.error(e);
-        } catch (IOException e) {
-            logger.error(e);
-        }
+        // The Parser Server keeps the group index writers open, so files
+        // already converted are indexed through it as well; it decides from
+        // its body store and extraction cache whether to convert them again
+        sendFileToParser(groups, id, format, priority);
         logger.debug("<<< End of Client.index()***");
     }
 
-    public void sendFileToParser(String indexPath, String id, String format) {
+    /**
+     * Sends the task on an idle connection, or a new one, which the request
+     * uses alone. The server stores the task before acknowledging it; a
+     * connection left idle too long is opened again once. When the server
+     * cannot be reached in time, or does not store the task, the task is
+     * left in DocumentIndex, where the server picks it up when it starts.
+     */
+    public void sendFileToParser(String[] groups, String id, String format,
+                                 String priority) {
         logger.debug(">>> Start of Client.sendFileToParser()***");
-        String msg;
-        Hashtable request = new Hashtable();
+        ParserClient client = null;
+        synchronized (clients) {
+            if (!clients.isEmpty()) {
+                client = (ParserClient) clients.remove(clients.size() - 1);
+            }
+        }
+        if (client == null) {
+            client = new ParserClient(host, port, timeout);
+        }
+        client.submit(id, format, groups, priority);
         try {
-            kkSocket = new Socket(InetAddress.getByName(host), port);
-            BufferedReader is = new BufferedReader(new InputStreamReader(
-                    kkSocket.getInputStream()));
-            PrintWriter os = new PrintWriter(kkSocket.getOutputStream());
-            if (kkSocket != null && os != null && is != null) {
-                msg = is.readLine();
-                logger.info(msg);
-                os.println("id: " + id);
-                os.flush();
-                os.println("format: " + format);
-                os.flush();
-                os.println("indexPath: " + indexPath);
-                os.flush();
+            try {
+                client.flush();
+            } catch (IOException e) {
+                logger.info("Sending the task again: " + e.getMessage());
+                client.flush();
+            }
+            addTasks(client.getRefused());
+            synchronized (clients) {
+                if (clients.size() < IDLE) {
+                    clients.add(client);
+                    client = null;
+                }
+            }
+            if (client != null) {
+                client.close();
             }
-            is.close();
-            os.close();
-            kkSocket.close();
         } catch (IOException e) {
             logger.error(e);
+            addTasks(client.getPending());
+            addTasks(client.getRefused());
+            client.close();
         }
         logger.debug("<<< End of Client.sendFileToParser()***");
     }
 
+    private void addTasks(Vector tasks) {
+        for (int i = 0; i < tasks.size(); i++) {
+            Hashtable task = (Hashtable) tasks.get(i);
+            String[] groups = (String[]) task.get("groups");
+            for (int j = 0; j < groups.length; j++) {
+                control.addTask(groups[j], (String) task.get("id"));
+            }
+        }
+        tasks.clear();
+    }
+
 }
@@ -0,0 +1,83 @@
+package com.progdan.edmis.control.index;
+
+import java.io.*;
+
+import com.progdan.searchengine.analysis.*;
+
+/**
+ * Splits names into lower case words of letters and digits. Names are
+ * indexed with every prefix of their words, up to MAX_PREFIX characters,
+ * so a word of a search matches the names with a word starting with it.
+ */
+public class NameAnalyzer extends Analyzer {
+    /** Longest prefix indexed; longer search words are cut to it */
+    public static final int MAX_PREFIX = 16;
+    private boolean prefixes;
+
+    /**
+     * @param prefixes true to index the prefixes of the words, false to
+     *   analyze a search
+     */
+    public NameAnalyzer(boolean prefixes) {
+        this.prefixes = prefixes;
+    }
+
+    public TokenStream tokenStream(String fieldName, Reader reader) {
+        TokenStream words = new CharTokenizer(reader) {
+            protected boolean isTokenChar(char c) {
+                return Character.isLetterOrDigit(c);
+            }
+
+            protected char normalize(char c) {
+                return Character.toLowerCase(c);
+            }
+        };
+        return prefixes ? (TokenStream) new PrefixFilter(words) :
+                new TruncateFilter(words);
+    }
+
+    /**
+     * Returns each word followed by its shorter prefixes, at the same
+     * position.
+     */
+    private static class PrefixFilter extends TokenFilter {
+        private Token word;
+        private int length;
+        PrefixFilter(TokenStream input) {
+            super(input);
+        }
+
+        public Token next() throws IOException {
+            if ((word == null) || (length <= 1)) {
+                word = input.next();
+                if (word == null) {
+                    return null;
+                }
+                length = Math.min(word.termText().length(), MAX_PREFIX);
+                return new Token(word.termText().substring(0, length),
+                                 word.startOffset(), word.endOffset());
+            }
+            length--;
+            Token prefix = new Token(word.termText().substring(0, length),
+                                     word.startOffset(),
+                                     word.startOffset() + length);
+            prefix.setPositionIncrement(0);
+            return prefix;
+        }
+    }
+
+    private static class TruncateFilter extends TokenFilter {
+        TruncateFilter(TokenStream input) {
+            super(input);
+        }
+
+        public Token next() throws IOException {
+            Token word = input.next();
+            if ((word == null) || (word.termText().length() <= MAX_PREFIX)) {
+                return word;
+            }
+            return new Token(word.termText().substring(0, MAX_PREFIX),
+                             word.startOffset(), word.endOffset());
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package com.progdan.edmis.control.index;
+
+import java.io.*;
+import java.sql.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+import com.progdan.edmis.control.database.*;
+import com.progdan.searchengine.analysis.*;
+import com.progdan.searchengine.document.Document;
+import com.progdan.searchengine.document.Field;
+import com.progdan.searchengine.index.IndexReader;
+import com.progdan.searchengine.index.IndexWriter;
+import com.progdan.searchengine.index.Term;
+import com.progdan.searchengine.search.*;
+
+/**
+ * Index of the names of the documents and document groups, searched by
+ * the prefixes of their words instead of a LIKE scan of the tables. The
+ * writers of documents and groups keep it up to date: their changes are
+ * queued and written together every nameFlush seconds, with one reader,
+ * one writer and one reopen of the searcher. It is built from the database
+ * on the first search when it does not exist, again when FolderImport
+ * leaves the names.rebuild file after an import, and every nameRebuild
+ * hours.
+ *
+ * Each build goes to a new directory, names.&lt;time&gt;, which replaces the
+ * live one once complete, so searches never see a partial index. The names
+ * written while a build runs are applied to it before the swap.
+ */
+public class NameIndex extends TimerTask {
+    private static Logger logger = Logger.getLogger(NameIndex.class.getName());
+    public static final String DOCUMENT = "document";
+    public static final String GROUP = "group";
+    /** Directories of the index, under reppath/index */
+    private static final String INDEX = "names";
+    /** File left by FolderImport to have the index built again */
+    public static final String REBUILD = INDEX + ".rebuild";
+    private static final String DOCUMENTS =
+            "SELECT DocumentID, DocumentName FROM Documents";
+    private static final String GROUPS =
+            "SELECT DocumentGroupID, DocumentGroupName FROM DocumentGroups";
+    private static NameIndex instance;
+    private String indexDir;
+    /** Directory of the live index, or null before the first build */
+    private String current;
+    private boolean building;
+    /** Names written during a build, as {type, id, name or null} */
+    private Vector journal;
+    /** Names written since the last flush, as {type, id, name or null} */
+    private Vector changes;
+    /** Held while a flush writes the live index, which is not swapped then */
+    private Object flushLock;
+    /** Most ids a search returns, as the callers read them with IN lists */
+    private int limit;
+    private Timer timer;
+    private NameIndex() {
+        logger.debug(">>> Start of NameIndex.NameIndex()***");
+        String reppath = "C:\\EDMIS";
+        long rebuild = 24;
+        long flush = 2;
+        limit = 1000;
+        try {
+            Properties props = new Properties();
+            props.load(getClass().getResourceAsStream("/" + "db.properties"));
+            reppath = props.getProperty("reppath", reppath);
+            rebuild = Long.parseLong(props.getProperty("nameRebuild", "24"));
+            flush = Long.parseLong(props.getProperty("nameFlush", "2"));
+            limit = Integer.parseInt(props.getProperty("nameLimit", "1000"));
+        } catch (IOException e) {
+            logger.error(e);
+        }
+        indexDir = reppath + System.getProperty("file.separator") + "index";
+        current = findCurrent();
+        changes = new Vector();
+        flushLock = new Object();
+        timer = new Timer(true);
+        if (rebuild > 0) {
+            timer.schedule(this, rebuild * 3600000, rebuild * 3600000);
+        }
+        timer.schedule(new TimerTask() {
+            public void run() {
+                File request = new File(getPath(REBUILD));
+                if (request.exists()) {
+                    request.delete();
+                    NameIndex.this.run();
+                }
+                flush();
+            }
+        }, flush * 1000, flush * 1000);
+        logger.debug("<<< End of NameIndex.NameIndex()***");
+    }
+
+    public static synchronized NameIndex getInstance() {
+        if (instance == null) {
+            instance = new NameIndex();
+        }
+        return instance;
+    }
+
+    /**
+     * Stops the rebuilds and writes the names still queued, when the
+     * application stops.
+     */
+    public static void shutdown() {
+        NameIndex index;
+        synchronized (NameIndex.class) {
+            index = instance;
+            instance = null;
+        }
+        if (index != null) {
+            index.timer.cancel();
+            index.flush();
+        }
+    }
+
+    /**
+     * Indexes the name of a new document or group, or its new name.
+     * @param type DOCUMENT or GROUP
+     */
+    public synchronized void put(String type, String id, String name) {
+        logger.debug(">>> Start of NameIndex.put()***");
+        change(type, id, name);
+        logger.debug("<<< End of NameIndex.put()***");
+    }
+
+    public synchronized void remove(String type, String id) {
+        logger.debug(">>> Start of NameIndex.remove()***");
+        change(type, id, null);
+        logger.debug("<<< End of NameIndex.remove()***");
+    }
+
+    /**
+     * Queues the name for the live index and the one being built. Called
+     * with the lock held.
+     */
+    private void change(String type, String id, String name) {
+        String[] change = new String[] {type, id, name};
+        if (journal != null) {
+            journal.add(change);
+        }
+        // Built with every name on the first search
+        if (current != null) {
+            changes.add(change);
+        }
+    }
+
+    /**
+     * Writes the queued names on the live index.
+     */
+    private void flush() {
+        synchronized (flushLock) {
+            Vector batch;
+            String dir;
+            synchronized (this) {
+                batch = changes;
+                changes = new Vector();
+                dir = current;
+            }
+            if ((dir == null) || batch.isEmpty()) {
+                return;
+            }
+            logger.debug(">>> Start of NameIndex.flush()***");
+            try {
+                write(dir, batch);
+                SearcherManager.getInstance().reopen(dir);
+            } catch (IOException e) {
+                logger.error(e);
+            }
+            logger.debug("<<< End of NameIndex.flush()***");
+        }
+    }
+
+    /**
+     * Finds the names with a word starting with each word of the text.
+     * @param type DOCUMENT or GROUP
+     * @return the ids of the nameLimit best matches, or null when the text
+     *   has no words, as then every name matches
+     */
+    public Vector search(DatabaseController bd, Connection conn, String type,
+                         String text) throws IOException {
+        logger.debug(">>> Start of NameIndex.search()***");
+        BooleanQuery query = new BooleanQuery();
+        TokenStream words = new NameAnalyzer(false).tokenStream("name",
+                new StringReader(text));
+        Token word;
+        while ((word = words.next()) != null) {
+            query.add(new TermQuery(new Term("name", word.termText())), true,
+                      false);
+        }
+        words.close();
+        if (query.getClauses().length == 0) {
+            return null;
+        }
+        query.add(new TermQuery(new Term("type", type)), true, false);
+        String dir = getCurrent();
+        if (dir == null) {
+            rebuild(bd, conn);
+            dir = getCurrent();
+            if (dir == null) {
+                throw new IOException("No index of names in " + indexDir);
+            }
+        }
+        Vector result = new Vector();
+        SearcherManager searchers = SearcherManager.getInstance();
+        IndexSearcher searcher;
+        try {
+            searcher = searchers.acquire(dir);
+        } catch (IOException e) {
+            // Replaced and deleted meanwhile by a build
+            searcher = searchers.acquire(getCurrent());
+        }
+        try {
+            // The callers filter and sort the matches
+            TopDocs hits = searcher.search(query, null, limit);
+            if (hits.totalHits > limit) {
+                logger.info("Listing " + limit + " of the " + hits.totalHits +
+                            " names matching " + text);
+            }
+            for (int i = 0; i < hits.scoreDocs.length; i++) {
+                result.add(searcher.doc(hits.scoreDocs[i].doc).get("id"));
+            }
+        } finally {
+            searchers.release(searcher);
+        }
+        logger.debug("<<< End of NameIndex.search()***");
+        return result;
+    }
+
+    private synchronized String getCurrent() {
+        return current;
+    }
+
+    /**
+     * Builds the index again, on its own connection.
+     */
+    public void run() {
+        DatabaseController bd = new MySQLController();
+        Connection conn = bd.getConnection();
+        if (conn != null) {
+            try {
+                rebuild(bd, conn);
+            } finally {
+                try {
+                    conn.close();
+                } catch (SQLException e) {
+                    logger.error(e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Indexes the names of all the documents and groups in a new directory
+     * and makes it the live index. The lock is only held to start the build
+     * and to swap the directories; a call made during another build waits
+     * for it instead.
+     */
+    private void rebuild(DatabaseController bd, Connection conn) {
+        logger.debug(">>> Start of NameIndex.rebuild()***");
+        String dir;
+        synchronized (this) {
+            if (building) {
+                try {
+                    while (building) {
+                        wait();
+                    }
+                } catch (InterruptedException e) {
+                    // The caller finds the index it can
+                }
+                logger.debug("<<< End of NameIndex.rebuild()***");
+                return;
+            }
+            building = true;
+            journal = new Vector();
+            dir = INDEX + "." + System.currentTimeMillis();
+        }
+        String path = getPath(dir);
+        logger.info("Building the index of names " + path);
+        boolean built = false;
+        try {
+            new File(path).mkdirs();
+            IndexWriter writer = new IndexWriter(path, new NameAnalyzer(true),
+                                                 true);
+            try {
+                add(writer, conn, DOCUMENTS, DOCUMENT);
+                add(writer, conn, GROUPS, GROUP);
+                writer.optimize();
+            } finally {
+                writer.close();
+            }
+            built = true;
+        } catch (IOException e) {
+            logger.error(e);
+        } catch (SQLException e) {
+            logger.error(e);
+        }
+        synchronized (flushLock) {
+            synchronized (this) {
+                try {
+                    if (built) {
+                        write(dir, journal);
+                    }
+                } catch (IOException e) {
+                    logger.error(e);
+                    built = false;
+                }
+                if (built) {
+                    String old = current;
+                    current = dir;
+                    // The journal holds the queued names as well
+                    changes.clear();
+                    if (old != null) {
+                        SearcherManager.getInstance().reopen(old);
+                    }
+                }
+                // The old directories still searched are deleted by a later
+                // build
+                deleteOthers();
+                journal = null;
+                building = false;
+                notifyAll();
+            }
+        }
+        logger.debug("<<< End of NameIndex.rebuild()***");
+    }
+
+    /**
+     * @return the newest directory holding an index of names, or null
+     */
+    private String findCurrent() {
+        String found = null;
+        long newest = -1;
+        String[] dirs = new File(indexDir).list();
+        for (int i = 0; (dirs != null) && (i < dirs.length); i++) {
+            long time = getTime(dirs[i]);
+            if ((time > newest) && IndexReader.indexExists(getPath(dirs[i]))) {
+                found = dirs[i];
+                newest = time;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return the time of the build of the directory, 0 for the directory
+     *   of the first versions, or -1 for another directory
+     */
+    private static long getTime(String dir) {
+        if (dir.equals(INDEX)) {
+            return 0;
+        }
+        if (dir.startsWith(INDEX + ".")) {
+            try {
+                return Long.parseLong(dir.substring(INDEX.length() + 1));
+            } catch (NumberFormatException e) {
+                // not a build
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Deletes the directories of the index but the live one, as far as
+     * they are not open. Called with the lock held.
+     */
+    private void deleteOthers() {
+        String[] dirs = new File(indexDir).list();
+        for (int i = 0; (dirs != null) && (i < dirs.length); i++) {
+            if ((getTime(dirs[i]) >= 0) && !dirs[i].equals(current)) {
+                File dir = new File(getPath(dirs[i]));
+                File[] files = dir.listFiles();
+                for (int j = 0; (files != null) && (j < files.length); j++) {
+                    files[j].delete();
+                }
+                if (!dir.delete()) {
+                    logger.debug("Could not delete yet " + dir);
+                }
+            }
+        }
+    }
+
+    private String getPath(String dir) {
+        return indexDir + System.getProperty("file.separator") + dir;
+    }
+
+    /**
+     * Indexes the rows of the query as they are read, so the names of all
+     * the documents are never held in memory.
+     */
+    private void add(IndexWriter writer, Connection conn, String sql,
+                     String type) throws SQLException, IOException {
+        Statement stmt = conn.createStatement();
+        try {
+            ResultSet rs = stmt.executeQuery(sql);
+            while (rs.next()) {
+                String name = rs.getString(2);
+                writer.addDocument(toDocument(type, rs.getString(1),
+                                              (name == null) ? "" : name));
+            }
+            rs.close();
+        } finally {
+            stmt.close();
+        }
+    }
+
+    /**
+     * Replaces the names in the index of the directory, the last change of
+     * each one winning.
+     * @param changes {type, id, name}, with a null name to remove it
+     */
+    private void write(String dir, Vector changes) throws IOException {
+        Map names = new LinkedHashMap();
+        for (int i = 0; i < changes.size(); i++) {
+            String[] change = (String[]) changes.get(i);
+            String key = change[0] + ":" + change[1];
+            names.remove(key);
+            names.put(key, change);
+        }
+        if (names.isEmpty()) {
+            return;
+        }
+        IndexReader reader = IndexReader.open(getPath(dir));
+        try {
+            Iterator keys = names.keySet().iterator();
+            while (keys.hasNext()) {
+                reader.delete(new Term("key", (String) keys.next()));
+            }
+        } finally {
+            reader.close();
+        }
+        IndexWriter writer = new IndexWriter(getPath(dir),
+                                             new NameAnalyzer(true), false);
+        try {
+            Iterator values = names.values().iterator();
+            while (values.hasNext()) {
+                String[] change = (String[]) values.next();
+                if (change[2] != null) {
+                    writer.addDocument(toDocument(change[0], change[1],
+                                                  change[2]));
+                }
+            }
+        } finally {
+            writer.close();
+        }
+    }
+
+    private static Document toDocument(String type, String id, String name) {
+        Document doc = new Document();
+        doc.add(Field.Keyword("key", type + ":" + id));
+        doc.add(Field.Keyword("type", type));
+        doc.add(Field.UnIndexed("id", id));
+        doc.add(Field.UnStored("name", name));
+        return doc;
+    }
+}
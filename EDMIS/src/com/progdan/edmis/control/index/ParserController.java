@@ -18,29 +18,26 @@ public class ParserController {
 
     public String fileParsed(String id) {
         logger.debug(">>> Start of IndexController.getFile()***");
-        String result = null;
-        try {
-            String sql =
-                    "SELECT DocumentData FROM DocumentData WHERE DocumentID='" +
-                    id + "' AND DocumentDataTypeID=1";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            logger.debug("<<< End of IndexController.getFile()***");
-            if (rs.next()) {
-                result = rs.getString("DocumentData");
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        String sql =
+                "SELECT DocumentData FROM DocumentData WHERE DocumentID=? AND DocumentDataTypeID=1";
+        String result = (String) bd.queryObject(conn, sql, new Object[] {id},
+                                                ColumnMapper.STRING);
         logger.debug("<<< End of IndexController.getFile()***");
         return result;
     }
 
+    /**
+     * Leaves the task in DocumentIndex for the Parser Server, unless the
+     * server already stored it.
+     */
     public void addTask(String indexPath, String id) {
         logger.debug(">>> Start of IndexController.addTask()***");
-        String sql =
-                "INSERT INTO DocumentIndex (DocumentID, DocumentGroup) VALUES('" +
-                id + "','" + indexPath + "')";
-        bd.executeUpdate(conn, sql);
+        Object[] params = new Object[] {id, indexPath};
+        String sql = "SELECT DocumentIndexID FROM DocumentIndex WHERE DocumentID=? AND DocumentGroup=?";
+        if (bd.queryObject(conn, sql, params, ColumnMapper.INTEGER) == null) {
+            sql = "INSERT INTO DocumentIndex (DocumentID, DocumentGroup) VALUES(?,?)";
+            bd.update(conn, sql, params);
+        }
         logger.debug("<<< End of IndexController.addTask()***");
     }
 }
@@ -0,0 +1,274 @@
+package com.progdan.edmis.control.index;
+
+import java.io.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+import com.progdan.edmis.control.document.DocumentReader;
+import com.progdan.edmis.control.permissions.PermissionCache;
+import com.progdan.edmis.model.document.Document;
+import com.progdan.edmis.model.document.SearchResult;
+import com.progdan.edmis.model.user.User;
+import com.progdan.searchengine.analysis.*;
+import com.progdan.searchengine.queryParser.*;
+import com.progdan.searchengine.search.*;
+
+/**
+ * Full text search of the index of a document group the user can read, or
+ * of all the groups the user can read, one page at a time.
+ * Only the hits of the page are read from the index. The documents are
+ * shown from the fields stored with them; documents indexed before those
+ * fields were stored are read from the database with one query.
+ */
+public class SearchService {
+    private static Logger logger = Logger.getLogger(SearchService.class.
+            getName());
+    /** Group searching every group the user can read */
+    public static final String ALL = "all";
+    /** Parsed queries kept for the next pages and repeated searches */
+    private static final int QUERIES = 100;
+    private static int page = 20;
+    /**
+     * Written by the Parser Server in an index once every document in it
+     * is found by its path keyword
+     */
+    private static final String MIGRATED = "path.keyword";
+    /** Most groups searched one by one by a search on ALL */
+    private static int maxGroups = 16;
+    private static Map queries = new LinkedHashMap(QUERIES, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry eldest) {
+            return size() > QUERIES;
+        }
+    };
+    static {
+        Properties props = new Properties();
+        try {
+            props.load(SearchService.class.getResourceAsStream("/" +
+                    "db.properties"));
+            page = Integer.parseInt(props.getProperty("searchPage", "20"));
+            maxGroups = Integer.parseInt(props.getProperty("searchGroups",
+                    "16"));
+        } catch (IOException e) {
+            logger.error(e);
+        }
+    }
+    private User user;
+    private DocumentReader reader;
+    public SearchService(User user) {
+        logger.debug(">>> Start of SearchService.SearchService()***");
+        this.user = user;
+        reader = new DocumentReader(user);
+        logger.debug("<<< End of SearchService.SearchService()***");
+    }
+
+    /**
+     * @return the number of documents shown on a page
+     */
+    public static int getPageSize() {
+        return page;
+    }
+
+    /**
+     * Searches the body of the documents of the group, or of every group
+     * the user can read when the group is ALL.
+     * @param offset position of the first hit of the page
+     * @param limit number of hits of the page
+     */
+    public SearchResult search(String group, String queryString, int offset,
+                               int limit) throws IOException, ParseException {
+        logger.debug(">>> Start of SearchService.search()***");
+        offset = Math.max(offset, 0);
+        limit = Math.max(limit, 1);
+        Query query = parse(queryString);
+        SearchResult result;
+        if (ALL.equals(group)) {
+            result = searchAll(query, offset, limit);
+        } else if (!canRead(group)) {
+            logger.info(user.getLogin() + " can not read the group " + group);
+            result = new SearchResult(0, offset, limit);
+        } else {
+            result = searchIndex(group, query, null, offset, limit);
+        }
+        logger.debug("<<< End of SearchService.search()***");
+        return result;
+    }
+
+    private boolean canRead(String group) {
+        try {
+            return PermissionCache.getStrength(user, Integer.parseInt(group)) > 0;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Searches the groups the user can read. Up to maxGroups groups are
+     * searched in parallel and the documents found on several of them are
+     * shown once, with their best score. Above that the index of all the
+     * documents is searched, filtered to the documents of those groups. The
+     * filter is kept in the User until its permissions are read again, and
+     * is only built again for a new reader of the index. The filter finds
+     * the documents by their path keyword, so it is not used until the
+     * Parser Server migrated the documents indexed without one.
+     */
+    private SearchResult searchAll(Query query, int offset, int limit) throws
+            IOException {
+        Vector groups = PermissionCache.getGroups(user);
+        if (groups.isEmpty()) {
+            return new SearchResult(0, offset, limit);
+        }
+        if ((groups.size() > maxGroups) && new File(SearcherManager.
+                getInstance().getPath(ALL), MIGRATED).exists()) {
+            logger.debug("Searching " + groups.size() + " groups on " + ALL);
+            Filter filter;
+            synchronized (user) {
+                filter = user.getGroupFilter();
+                if (filter == null) {
+                    filter = new CachingWrapperFilter(new GroupFilter(groups,
+                            user.getBd()));
+                    user.setGroupFilter(filter);
+                }
+            }
+            return searchIndex(ALL, query, filter, offset, limit);
+        }
+        SearcherManager searchers = SearcherManager.getInstance();
+        Vector open = new Vector();
+        try {
+            for (int i = 0; i < groups.size(); i++) {
+                try {
+                    open.add(searchers.acquire((String) groups.get(i)));
+                } catch (IOException e) {
+                    // A group without an index has no documents to find
+                    logger.error(e);
+                }
+            }
+            if (open.isEmpty()) {
+                return new SearchResult(0, offset, limit);
+            }
+            Searcher searcher = (open.size() == 1) ? (Searcher) open.get(0) :
+                                new ParallelMultiSearcher((Searchable[]) open.
+                    toArray(new Searchable[open.size()]));
+            // Fetches more hits until the page is full of distinct documents
+            int wanted = offset + limit;
+            int n = wanted * 2;
+            while (true) {
+                TopDocs top = searcher.search(query, null, n);
+                ScoreDoc[] hits = top.scoreDocs;
+                HashSet seen = new HashSet();
+                Vector docs = new Vector();
+                Vector scores = new Vector();
+                for (int i = 0; i < hits.length; i++) {
+                    com.progdan.searchengine.document.Document hit = searcher.
+                            doc(hits[i].doc);
+                    if (seen.add(hit.get("path"))) {
+                        docs.add(hit);
+                        scores.add(new Float(hits[i].score));
+                    }
+                }
+                boolean complete = hits.length >= top.totalHits;
+                if ((docs.size() >= wanted) || complete) {
+                    // The duplicates of the hits not fetched are not known
+                    int total = top.totalHits - (hits.length - docs.size());
+                    SearchResult result = new SearchResult(total, offset, limit);
+                    fill(result, docs, scores, offset);
+                    return result;
+                }
+                n *= 2;
+            }
+        } finally {
+            for (int i = 0; i < open.size(); i++) {
+                searchers.release((IndexSearcher) open.get(i));
+            }
+        }
+    }
+
+    private SearchResult searchIndex(String group, Query query, Filter filter,
+                                     int offset, int limit) throws IOException {
+        SearcherManager searchers = SearcherManager.getInstance();
+        IndexSearcher searcher = searchers.acquire(group);
+        try {
+            TopDocs top = searcher.search(query, filter, offset + limit);
+            SearchResult result = new SearchResult(top.totalHits, offset, limit);
+            ScoreDoc[] hits = top.scoreDocs;
+            Vector docs = new Vector();
+            Vector scores = new Vector();
+            for (int i = 0; i < hits.length; i++) {
+                docs.add(i < offset ? null : searcher.doc(hits[i].doc));
+                scores.add(new Float(hits[i].score));
+            }
+            fill(result, docs, scores, offset);
+            return result;
+        } finally {
+            searchers.release(searcher);
+        }
+    }
+
+    /**
+     * Adds the hits of the page to the result.
+     * @param docs the documents found, null before offset
+     * @param scores their scores, best first
+     */
+    private void fill(SearchResult result, Vector docs, Vector scores,
+                      int offset) {
+        // Scores shown as Hits shows them, the best one at most 1
+        float norm = 1.0f;
+        if ((scores.size() > 0) && (((Float) scores.get(0)).floatValue() > 1.0f)) {
+            norm = 1.0f / ((Float) scores.get(0)).floatValue();
+        }
+        int end = Math.min(docs.size(), offset + result.getLimit());
+        Vector page = new Vector();
+        Vector missing = new Vector();
+        for (int i = offset; i < end; i++) {
+            com.progdan.searchengine.document.Document hit = (com.progdan.
+                    searchengine.document.Document) docs.get(i);
+            if (hit.get("name") != null) {
+                page.add(toDocument(hit));
+            } else {
+                page.add(hit.get("path"));
+                missing.add(hit.get("path"));
+            }
+        }
+        Hashtable read = reader.readDocuments(missing);
+        for (int i = offset; i < end; i++) {
+            Object doc = page.get(i - offset);
+            if (doc instanceof String) {
+                doc = read.get(doc);
+            }
+            if (doc != null) {
+                result.add((Document) doc,
+                           ((Float) scores.get(i)).floatValue() * norm);
+            }
+        }
+    }
+
+    /**
+     * @return the document shown from the fields stored in the index
+     */
+    private static Document toDocument(com.progdan.searchengine.document.
+                                       Document hit) {
+        Document doc = new Document();
+        doc.setId(hit.get("path"));
+        doc.setName(hit.get("name"));
+        doc.setFormat(hit.get("format"));
+        doc.setLanguage(hit.get("language"));
+        doc.setDate(hit.get("date"));
+        try {
+            doc.setSize(Long.parseLong(hit.get("size")));
+        } catch (NumberFormatException e) {
+            // not stored
+        }
+        return doc;
+    }
+
+    private static Query parse(String queryString) throws ParseException {
+        synchronized (queries) {
+            Query query = (Query) queries.get(queryString);
+            if (query == null) {
+                query = QueryParser.parse(queryString, "body",
+                                          new SimpleAnalyzer());
+                queries.put(queryString, query);
+            }
+            return query;
+        }
+    }
+}
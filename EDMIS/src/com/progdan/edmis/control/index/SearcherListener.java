@@ -0,0 +1,23 @@
+package com.progdan.edmis.control.index;
+
+import javax.servlet.*;
+
+/**
+ * Closes the index searchers and stops the rebuilds of the index of names
+ * when the application stops.
+ */
+public class SearcherListener implements ServletContextListener {
+    /**
+     * @see javax.servlet.ServletContextListener#contextInitialized(javax.servlet.ServletContextEvent)
+     */
+    public void contextInitialized(ServletContextEvent event) {
+    }
+
+    /**
+     * @see javax.servlet.ServletContextListener#contextDestroyed(javax.servlet.ServletContextEvent)
+     */
+    public void contextDestroyed(ServletContextEvent event) {
+        SearcherManager.shutdown();
+        NameIndex.shutdown();
+    }
+}
@@ -0,0 +1,270 @@
+package com.progdan.edmis.control.index;
+
+import java.io.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+import com.progdan.searchengine.index.IndexReader;
+import com.progdan.searchengine.search.IndexSearcher;
+
+/**
+ * Keeps one open IndexSearcher per group index, shared by every search.
+ * Searches acquire() a searcher and release() it when they are done with
+ * its hits. Every few seconds the version of each index is checked and a
+ * changed index is opened again; the old searcher is closed once the
+ * searches using it release it.
+ */
+public class SearcherManager extends TimerTask {
+    private static Logger logger = Logger.getLogger(SearcherManager.class.
+            getName());
+    private static SearcherManager instance;
+    private String indexDir;
+    /** Entry of the current searcher of each index path */
+    private Hashtable entries = new Hashtable();
+    /** Entry of every searcher still in use, current or not */
+    private Hashtable open = new Hashtable();
+    private Timer timer;
+    private SearcherManager() {
+        this(getIndexDir(), getRefresh());
+    }
+
+    /**
+     * Manages the indexes of another directory than reppath/index, as the
+     * tests do.
+     * @param refresh milliseconds between the checks of the versions
+     */
+    public SearcherManager(String indexDir, long refresh) {
+        logger.debug(">>> Start of SearcherManager.SearcherManager()***");
+        this.indexDir = indexDir;
+        timer = new Timer(true);
+        timer.schedule(this, refresh, refresh);
+        logger.debug("<<< End of SearcherManager.SearcherManager()***");
+    }
+
+    private static String getIndexDir() {
+        return getProperties().getProperty("reppath", "C:\\EDMIS") +
+                System.getProperty("file.separator") + "index";
+    }
+
+    private static long getRefresh() {
+        return Long.parseLong(getProperties().getProperty("searcherRefresh",
+                "10")) * 1000;
+    }
+
+    private static Properties getProperties() {
+        Properties props = new Properties();
+        try {
+            props.load(SearcherManager.class.getResourceAsStream("/" +
+                    "db.properties"));
+        } catch (IOException e) {
+            logger.error(e);
+        }
+        return props;
+    }
+
+    public static synchronized SearcherManager getInstance() {
+        if (instance == null) {
+            instance = new SearcherManager();
+        }
+        return instance;
+    }
+
+    /**
+     * Closes the searchers of the running manager, if any.
+     */
+    public static void shutdown() {
+        SearcherManager manager;
+        synchronized (SearcherManager.class) {
+            manager = instance;
+            instance = null;
+        }
+        if (manager != null) {
+            manager.close();
+        }
+    }
+
+    /**
+     * @return the searcher of the index of the group, opened on the first
+     *   search; hand it back to release()
+     */
+    public IndexSearcher acquire(String group) throws IOException {
+        logger.debug(">>> Start of SearcherManager.acquire()***");
+        String path = getPath(group);
+        Entry entry;
+        synchronized (this) {
+            entry = (Entry) entries.get(path);
+            if (entry != null) {
+                entry.refs++;
+                logger.debug("<<< End of SearcherManager.acquire()***");
+                return entry.searcher;
+            }
+        }
+        entry = open(path);
+        synchronized (this) {
+            Entry current = (Entry) entries.get(path);
+            if (current != null) {
+                // Opened meanwhile by another search
+                entry.searcher.close();
+                entry = current;
+            } else {
+                entries.put(path, entry);
+                open.put(entry.searcher, entry);
+            }
+            entry.refs++;
+        }
+        logger.debug("<<< End of SearcherManager.acquire()***");
+        return entry.searcher;
+    }
+
+    /**
+     * @return the directory of the index of the group
+     */
+    public String getPath(String group) {
+        return indexDir + System.getProperty("file.separator") + group;
+    }
+
+    public void release(IndexSearcher searcher) {
+        logger.debug(">>> Start of SearcherManager.release()***");
+        Entry entry;
+        synchronized (this) {
+            entry = (Entry) open.get(searcher);
+            if ((entry == null) || (--entry.refs > 0) || !entry.retired) {
+                entry = null;
+            } else {
+                open.remove(searcher);
+            }
+        }
+        if (entry != null) {
+            close(entry);
+        }
+        logger.debug("<<< End of SearcherManager.release()***");
+    }
+
+    /**
+     * Makes the next searches open the index of the group again, for
+     * changes that must be found before the next check.
+     */
+    public void reopen(String group) {
+        logger.debug(">>> Start of SearcherManager.reopen()***");
+        String path = getPath(group);
+        Entry entry;
+        synchronized (this) {
+            entry = (Entry) entries.remove(path);
+            if (entry != null) {
+                entry.retired = true;
+                if (entry.refs > 0) {
+                    entry = null;
+                } else {
+                    open.remove(entry.searcher);
+                }
+            }
+        }
+        if (entry != null) {
+            close(entry);
+        }
+        logger.debug("<<< End of SearcherManager.reopen()***");
+    }
+
+    /**
+     * Opens again the indexes whose version changed.
+     */
+    public void run() {
+        String[] paths;
+        synchronized (this) {
+            paths = (String[]) entries.keySet().toArray(new String[0]);
+        }
+        for (int i = 0; i < paths.length; i++) {
+            try {
+                Entry entry;
+                synchronized (this) {
+                    entry = (Entry) entries.get(paths[i]);
+                }
+                if ((entry == null) ||
+                    (IndexReader.getCurrentVersion(paths[i]) == entry.version)) {
+                    continue;
+                }
+                logger.info("Reopening the index " + paths[i]);
+                Entry fresh = open(paths[i]);
+                boolean replaced;
+                synchronized (this) {
+                    // reopen() or close() may have retired the entry, and
+                    // closed it, while the index was opened
+                    replaced = (entries.get(paths[i]) != entry);
+                    if (!replaced) {
+                        entries.put(paths[i], fresh);
+                        open.put(fresh.searcher, fresh);
+                        entry.retired = true;
+                        if (entry.refs > 0) {
+                            entry = null;
+                        } else {
+                            open.remove(entry.searcher);
+                        }
+                    }
+                }
+                if (replaced) {
+                    close(fresh);
+                } else if (entry != null) {
+                    close(entry);
+                }
+            } catch (IOException e) {
+                logger.error(e);
+            }
+        }
+    }
+
+    /**
+     * Stops the refresh and closes the searchers not in use.
+     */
+    public void close() {
+        logger.debug(">>> Start of SearcherManager.close()***");
+        timer.cancel();
+        Vector idle = new Vector();
+        synchronized (this) {
+            Iterator it = entries.values().iterator();
+            while (it.hasNext()) {
+                Entry entry = (Entry) it.next();
+                entry.retired = true;
+                if (entry.refs == 0) {
+                    open.remove(entry.searcher);
+                    idle.add(entry);
+                }
+            }
+            entries.clear();
+        }
+        for (int i = 0; i < idle.size(); i++) {
+            close((Entry) idle.get(i));
+        }
+        logger.debug("<<< End of SearcherManager.close()***");
+    }
+
+    private Entry open(String path) throws IOException {
+        // The version is read first, so a change made while opening is
+        // found by the next check
+        Entry entry = new Entry();
+        entry.version = IndexReader.getCurrentVersion(path);
+        entry.searcher = openSearcher(path);
+        return entry;
+    }
+
+    /**
+     * @return a new searcher of the index in the directory
+     */
+    protected IndexSearcher openSearcher(String path) throws IOException {
+        return new IndexSearcher(path);
+    }
+
+    private void close(Entry entry) {
+        try {
+            entry.searcher.close();
+        } catch (IOException e) {
+            logger.error(e);
+        }
+    }
+
+    private class Entry {
+        IndexSearcher searcher;
+        long version;
+        int refs;
+        boolean retired;
+    }
+}
@@ -25,20 +25,15 @@ public class LanguageReader {
 
     public Vector getLanguages(){
         logger.debug(">>> Start of LanguageReader.getLanguages()***");
-        Vector result = new Vector();
-        Language lang;
-        try{
-            String sql = "SELECT LanguageID,LanguageName FROM Languages ORDER BY LanguageName";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while(rs.next()){
-                lang = new Language();
+        String sql = "SELECT LanguageID,LanguageName FROM Languages ORDER BY LanguageName";
+        Vector result = bd.query(conn, sql, null, new RowMapper() {
+            public Object mapRow(ResultSet rs) throws SQLException {
+                Language lang = new Language();
                 lang.setId(rs.getString("LanguageID"));
                 lang.setName(rs.getString("LanguageName"));
-                result.add(lang);
+                return lang;
             }
-        }catch(SQLException e){
-            logger.error(e);
-        }
+        });
         logger.debug("<<< End of LanguageReader.getLanguages()***");
         return result;
     }
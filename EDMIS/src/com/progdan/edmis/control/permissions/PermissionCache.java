@@ -0,0 +1,89 @@
+package com.progdan.edmis.control.permissions;
+
+import java.sql.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+import com.progdan.edmis.control.database.*;
+import com.progdan.edmis.model.user.User;
+
+/**
+ * Effective permissions of the logged users: the strongest
+ * PermissionTypeStrength of the user on each document group, read with one
+ * query and kept in the User of the session. Any change to Permissions
+ * calls invalidate(), and each user reads its map again on the next check.
+ * A map that could not be read is not kept, so the next check tries again.
+ */
+public class PermissionCache {
+    private static Logger logger = Logger.getLogger(PermissionCache.class.
+            getName());
+    private static final String SQL =
+            "SELECT DocumentGroupID, MAX(PermissionTypeStrength) AS Strength FROM Views NATURAL JOIN UserGroups NATURAL JOIN Permissions NATURAL JOIN PermissionTypes WHERE UserID=? GROUP BY DocumentGroupID";
+    private static final RowMapper MAPPER = new RowMapper() {
+        public Object mapRow(ResultSet rs) throws SQLException {
+            return new int[] {rs.getInt("DocumentGroupID"),
+                    rs.getInt("Strength")};
+        }
+    };
+    private static long version = 1;
+
+    /**
+     * Discards the permissions read by every user.
+     */
+    public static synchronized void invalidate() {
+        version++;
+    }
+
+    private static synchronized long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return the strongest permission of the user on the group, 0 if none
+     */
+    public static int getStrength(User user, int docGrp) {
+        Integer strength = (Integer) getPermissions(user).get(new Integer(
+                docGrp));
+        return (strength == null) ? 0 : strength.intValue();
+    }
+
+    /**
+     * @return the ids of the groups the user can read
+     */
+    public static Vector getGroups(User user) {
+        Vector groups = new Vector();
+        Hashtable permissions = getPermissions(user);
+        Enumeration keys = permissions.keys();
+        while (keys.hasMoreElements()) {
+            Integer docGrp = (Integer) keys.nextElement();
+            if (((Integer) permissions.get(docGrp)).intValue() > 0) {
+                groups.add(docGrp.toString());
+            }
+        }
+        return groups;
+    }
+
+    private static Hashtable getPermissions(User user) {
+        synchronized (user) {
+            long current = getVersion();
+            Hashtable permissions = user.getPermissions();
+            if ((permissions == null) ||
+                (user.getPermissionsVersion() != current)) {
+                logger.debug("Reading the permissions of " + user.getLogin());
+                Vector rows = user.getBd().tryQuery(user.getConn(), SQL,
+                        new Object[] {new Integer(user.getId())}, MAPPER);
+                if (rows == null) {
+                    // No permission until they can be read
+                    return new Hashtable();
+                }
+                permissions = new Hashtable();
+                for (int i = 0; i < rows.size(); i++) {
+                    int[] row = (int[]) rows.get(i);
+                    permissions.put(new Integer(row[0]), new Integer(row[1]));
+                }
+                user.setPermissions(permissions, current);
+            }
+            return permissions;
+        }
+    }
+}
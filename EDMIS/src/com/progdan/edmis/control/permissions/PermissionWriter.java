@@ -23,31 +23,28 @@ public class PermissionWriter {
 
     public void addPermission(int usrGrp, int docGrp) {
         logger.debug(">>> Start of PermissionWriter.addPermission()***");
-        String sql = "INSERT INTO Permissions (UserGroupID, DocumentGroupID, PermissionTypeID) VALUES(" +
-                     usrGrp + "," + docGrp + ",2)";
-        bd.executeUpdate(conn, sql);
+        String sql = "INSERT INTO Permissions (UserGroupID, DocumentGroupID, PermissionTypeID) VALUES(?,?,2)";
+        bd.update(conn, sql, new Object[] {new Integer(usrGrp),
+                  new Integer(docGrp)});
+        PermissionCache.invalidate();
         logger.debug("<<< End of PermissionWriter.addPermission()***");
     }
 
     public void removePermission(int usrGrp, int docGrp) {
         logger.debug(">>> Start of PermissionWriter.removePermission()***");
         if(usrGrp != 1){
-            String login = "";
-            try {
-                String sql =
-                        "SELECT DocumentGroupName FROM DocumentGroups WHERE DocumentGroupID=" +
-                        docGrp;
-                ResultSet rs = bd.executeQuery(conn, sql);
-                while (rs.next()) {
-                    login = rs.getString("DocumentGroupName");
-                }
-                if (login.compareTo(user.getLogin() + " Favorites") != 0) {
-                    sql = "DELETE FROM Permissions WHERE UserGroupID=" + usrGrp +
-                          " AND DocumentGroupID=" + docGrp;
-                    bd.executeUpdate(conn, sql);
-                }
-            } catch (SQLException e) {
-                logger.error(e);
+            String sql =
+                    "SELECT DocumentGroupName FROM DocumentGroups WHERE DocumentGroupID=?";
+            String login = (String) bd.queryObject(conn, sql,
+                    new Object[] {new Integer(docGrp)}, ColumnMapper.STRING);
+            if (login == null) {
+                login = "";
+            }
+            if (login.compareTo(user.getLogin() + " Favorites") != 0) {
+                sql = "DELETE FROM Permissions WHERE UserGroupID=? AND DocumentGroupID=?";
+                bd.update(conn, sql, new Object[] {new Integer(usrGrp),
+                          new Integer(docGrp)});
+                PermissionCache.invalidate();
             }
         }
         logger.debug("<<< End of PermissionWriter.removePermission()***");
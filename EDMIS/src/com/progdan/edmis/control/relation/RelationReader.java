@@ -6,6 +6,7 @@ import java.util.Vector;
 import com.progdan.logengine.*;
 import com.progdan.edmis.model.user.User;
 import com.progdan.edmis.control.database.*;
+import com.progdan.edmis.control.documents.DocumentGroupMapper;
 import com.progdan.edmis.model.documents.DocumentGroup;
 
 public class RelationReader {
@@ -25,29 +26,20 @@ public class RelationReader {
     public Vector getRelations(String doc) {
         logger.debug(">>> Start of RelationReader.getRelations()***");
         Vector result = new Vector();
-        int i;
-        String name;
-        DocumentGroup docGrp;
-        try {
-            String sql = "SELECT DocumentGroups.DocumentGroupID, DocumentGroupName FROM Relations NATURAL JOIN DocumentGroups WHERE DocumentID='" +
-                         doc + "' ORDER BY DocumentGroupName";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                docGrp = new DocumentGroup();
-                i = rs.getInt("DocumentGroupID");
-                name = rs.getString("DocumentGroupName");
-                docGrp.setId(i);
-                docGrp.setName(name);
-                if (name.endsWith(" Favorites")) {
-                    if (name.compareTo(user.getLogin() + " Favorites") == 0) {
-                        result.add(0, docGrp);
-                    }
-                } else {
-                    result.add(docGrp);
+        String sql = "SELECT " + DocumentGroupMapper.COLUMNS +
+                     " FROM Relations NATURAL JOIN DocumentGroups WHERE DocumentID=? ORDER BY DocumentGroupName";
+        Vector groups = bd.query(conn, sql, new Object[] {doc},
+                                 DocumentGroupMapper.INSTANCE);
+        for (int i = 0; i < groups.size(); i++) {
+            DocumentGroup docGrp = (DocumentGroup) groups.get(i);
+            String name = docGrp.getName();
+            if (name.endsWith(" Favorites")) {
+                if (name.compareTo(user.getLogin() + " Favorites") == 0) {
+                    result.add(0, docGrp);
                 }
+            } else {
+                result.add(docGrp);
             }
-        } catch (SQLException e) {
-            logger.error(e);
         }
         logger.debug("<<< End of RelationReader.getRelations()***");
         return result;
@@ -12,6 +12,7 @@ import com.progdan.edmis.control.documents.DocumentGroupsByUserController;
 import com.progdan.edmis.control.document.DocumentReader;
 import com.progdan.edmis.model.document.Document;
 import com.progdan.edmis.control.index.IndexFiles;
+import com.progdan.parserserver.client.ParserClient;
 
 public class RelationWriter {
     private static Logger logger = Logger.getLogger(RelationWriter.class.
@@ -29,17 +30,15 @@ public class RelationWriter {
 
     public void writeNew(Relationship rel) {
         logger.debug(">>> Start of RelationWriter.writeNew()***");
+        Integer docGrpID = new Integer(rel.getDocumentGroupId());
         String sql =
-                "INSERT INTO Relations(DocumentID, DocumentGroupID) VALUES('" +
-                rel.getDocumentId() + "'," + rel.getDocumentGroupId() + ")";
-
-        bd.executeUpdate(conn, sql);
+                "INSERT INTO Relations(DocumentID, DocumentGroupID) VALUES(?,?)";
+        bd.update(conn, sql, new Object[] {rel.getDocumentId(), docGrpID});
         java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat(
                 "yyyy-MM-dd HH:mm:ss");
         String lastUpdate = sdf.format(new java.util.Date());
-        sql = "UPDATE DocumentGroups SET DocumentGroupUpdate='" + lastUpdate +
-              "' WHERE DocumentGroupID=" + rel.getDocumentGroupId();
-        bd.executeUpdate(conn, sql);
+        sql = "UPDATE DocumentGroups SET DocumentGroupUpdate=? WHERE DocumentGroupID=?";
+        bd.update(conn, sql, new Object[] {lastUpdate, docGrpID});
 
         Properties props = new Properties();
         String reppath = null;
@@ -54,7 +53,8 @@ public class RelationWriter {
         String docGrp = new Integer(rel.getDocumentGroupId()).toString();
         DocumentReader read = new DocumentReader(user);
         Document doc = read.readDocument(rel.getDocumentId());
-        index.index(docGrp, rel.getDocumentId(), doc.getFormat());
+        index.index(docGrp, rel.getDocumentId(), doc.getFormat(),
+                    ParserClient.REINDEX);
 
         logger.debug("<<< End of RelationWriter.writeNew()***");
     }
@@ -66,16 +66,13 @@ public class RelationWriter {
                 user);
         String sql;
         if (docgrp.isMember(docGrp)) {
-            sql =
-                    "DELETE FROM Relations WHERE DocumentID='" +
-                    doc + "' AND DocumentGroupID=" + docGrp;
-            bd.executeUpdate(conn, sql);
+            sql = "DELETE FROM Relations WHERE DocumentID=? AND DocumentGroupID=?";
+            bd.update(conn, sql, new Object[] {doc, new Integer(docGrp)});
             java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat(
                     "yyyy-MM-dd HH:mm:ss");
             String lastUpdate = sdf.format(new java.util.Date());
-            sql = "UPDATE DocumentGroups SET DocumentGroupUpdate='" +
-                  lastUpdate + "' WHERE DocumentGroupID=" + docGrp;
-            bd.executeUpdate(conn, sql);
+            sql = "UPDATE DocumentGroups SET DocumentGroupUpdate=? WHERE DocumentGroupID=?";
+            bd.update(conn, sql, new Object[] {lastUpdate, new Integer(docGrp)});
         }
         logger.debug("<<< End of RelationWriter.remove()***");
     }
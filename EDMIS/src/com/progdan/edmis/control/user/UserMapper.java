@@ -0,0 +1,27 @@
+package com.progdan.edmis.control.user;
+
+import java.sql.*;
+
+import com.progdan.edmis.control.database.RowMapper;
+import com.progdan.edmis.model.user.User;
+
+/**
+ * Maps a row of Users into a User.
+ */
+public class UserMapper implements RowMapper {
+    public static final UserMapper INSTANCE = new UserMapper();
+
+    public Object mapRow(ResultSet rs) throws SQLException {
+        User user = new User(rs.getString("UserLogin"),
+                             rs.getString("UserPasswd"),
+                             rs.getString("UserEmail"),
+                             rs.getString("UserName"));
+        user.setAccountActive(rs.getBoolean("UserAccountActive"));
+        user.setId(rs.getInt("UserID"));
+        java.sql.Date lastlogin = rs.getDate("UserLastLogin");
+        if (lastlogin != null) {
+            user.setLastlogin(lastlogin.toString());
+        }
+        return user;
+    }
+}
@@ -2,99 +2,77 @@ package com.progdan.edmis.control.user;
 
 import java.sql.*;
 import java.util.Properties;
+import java.util.Vector;
 import java.io.*;
 
 import com.progdan.logengine.*;
 import com.progdan.edmis.control.index.CreateIndex;
+import com.progdan.edmis.control.index.NameIndex;
 import com.progdan.edmis.model.user.User;
 import com.progdan.edmis.control.database.*;
 
 public class UserWriter {
     private static Logger logger = Logger.getLogger(User.class.getName());
-    private static DatabaseController bd;
-    private static Connection conn;
     public void writeNew(User user) {
         logger.debug(">>> Start of UserWriter.write()***");
-        bd = user.getBd();
-        conn = user.getConn();
-        int userID = 0, userGrpID = 0, docGrpID = 0;
-        ResultSet rs;
+        DatabaseController bd = user.getBd();
+        Connection conn = user.getConn();
+        int userID, userGrpID, docGrpID;
         java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat(
                 "yyyy-MM-dd HH:mm:ss");
         String register = sdf.format(new java.util.Date());
+        logger.info("User " + user.getLogin() + " register");
+        String sql =
+                "INSERT INTO Users(UserLogin, UserPasswd, UserEmail, UserName, UserRegister, UserAccountActive) VALUES(?,?,?,?,?,?)";
+        bd.update(conn, sql, new Object[] {user.getLogin(), user.getPassword(),
+                  user.getEmail(), user.getName(), register,
+                  new Integer(user.isAccountActive() ? 1 : 0)});
+
+        sql = "SELECT UserID FROM Users WHERE UserLogin=?";
+        userID = lastId(bd, conn, sql, user.getLogin());
+
+        logger.info("DocumentGroup " + user.getLogin() +
+                    " Favorites register");
+        String favorites = user.getLogin() + " Favorites";
+        sql = "INSERT INTO DocumentGroups (DocumentGroupName, DocumentGroupDate, DocumentGroupUpdate) VALUES(?,?,?)";
+        bd.update(conn, sql, new Object[] {favorites, register, register});
+
+        sql = "SELECT DocumentGroupID FROM DocumentGroups WHERE DocumentGroupName=?";
+        docGrpID = lastId(bd, conn, sql, favorites);
+        NameIndex.getInstance().put(NameIndex.GROUP, String.valueOf(docGrpID),
+                                    favorites);
+
+        Properties props = new Properties();
+        String reppath = null;
         try {
-            logger.info("User " + user.getLogin() + " register");
-            String sql =
-                    "INSERT INTO Users(UserLogin, UserPasswd, UserEmail, UserName, UserRegister, UserAccountActive) VALUES('"
-                    + user.getLogin() + "','" + user.getPassword() + "','" +
-                    user.getEmail()
-                    + "','" + user.getName() + "','" + register + "',"
-                    + (user.isAccountActive() ? 1 : 0) + ")";
-            bd.executeUpdate(conn, sql);
-
-            sql = "SELECT UserID FROM Users WHERE UserLogin='" + user.getLogin() +
-                  "'";
-            rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                userID = rs.getInt("UserID");
-            }
-
-            logger.info("DocumentGroup " + user.getLogin() +
-                        " Favorites register");
-            sql = "INSERT INTO DocumentGroups (DocumentGroupName, DocumentGroupDate, DocumentGroupUpdate) VALUES('" +
-                  user.getLogin() + " Favorites','" +
-                  register + "','" + register + "')";
-            bd.executeUpdate(conn, sql);
-
-            sql =
-                    "SELECT DocumentGroupID FROM DocumentGroups WHERE DocumentGroupName='" +
-                    user.getLogin() + " Favorites'";
-            rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                docGrpID = rs.getInt("DocumentGroupID");
-            }
-
-            Properties props = new Properties();
-            String reppath = null;
-            try {
-                props.load(getClass().getResourceAsStream("/" + "db.properties"));
-                reppath = props.getProperty("reppath", "C:\\EDMIS");
-            } catch (IOException e) {
-                logger.error(e);
-            }
-            String dir = new Integer(docGrpID).toString();
-            File indexdir = new File(reppath +
-                                     System.getProperty("file.separator") +
-                                     "index", dir);
-            indexdir.mkdir();
-            CreateIndex.create(indexdir.getAbsolutePath());
-
-            logger.info("UserGroup " + user.getLogin() + " register");
-            sql =
-                    "INSERT INTO UserGroups (UserGroupName) VALUES('" +
-                    user.getLogin() + "')";
-            bd.executeUpdate(conn, sql);
-
-            sql = "SELECT UserGroupID FROM UserGroups WHERE UserGroupName='" +
-                  user.getLogin() + "'";
-            rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                userGrpID = rs.getInt("UserGroupID");
-            }
-
-            logger.info("Table Permissions register");
-            sql =
-                    "INSERT INTO Permissions (UserGroupID, DocumentGroupID, PermissionTypeID) VALUES(" +
-                    userGrpID + "," + docGrpID + ",1)";
-            bd.executeUpdate(conn, sql);
-
-            logger.info("Table Views register");
-            sql = "INSERT INTO Views (UserID, UserGroupID) VALUES(" + userID +
-                  "," + userGrpID + ")";
-            bd.executeUpdate(conn, sql);
-        } catch (SQLException e) {
+            props.load(getClass().getResourceAsStream("/" + "db.properties"));
+            reppath = props.getProperty("reppath", "C:\\EDMIS");
+        } catch (IOException e) {
             logger.error(e);
         }
+        String dir = new Integer(docGrpID).toString();
+        File indexdir = new File(reppath +
+                                 System.getProperty("file.separator") +
+                                 "index", dir);
+        indexdir.mkdir();
+        CreateIndex.create(indexdir.getAbsolutePath());
+
+        logger.info("UserGroup " + user.getLogin() + " register");
+        sql = "INSERT INTO UserGroups (UserGroupName) VALUES(?)";
+        bd.update(conn, sql, new Object[] {user.getLogin()});
+
+        sql = "SELECT UserGroupID FROM UserGroups WHERE UserGroupName=?";
+        userGrpID = lastId(bd, conn, sql, user.getLogin());
+
+        logger.info("Table Permissions register");
+        sql = "INSERT INTO Permissions (UserGroupID, DocumentGroupID, PermissionTypeID) VALUES(?,?,1)";
+        bd.update(conn, sql, new Object[] {new Integer(userGrpID),
+                  new Integer(docGrpID)});
+
+        logger.info("Table Views register");
+        sql = "INSERT INTO Views (UserID, UserGroupID) VALUES(?,?)";
+        bd.update(conn, sql, new Object[] {new Integer(userID),
+                  new Integer(userGrpID)});
 
         logger.debug("<<< End of UserWriter.write()***");
     }
@@ -102,9 +80,8 @@ public class UserWriter {
     public static void activate(String login) {
         logger.debug(">>> Start of UserWriter.activate()***");
         MySQLController bd = new MySQLController();
-        String sql = "UPDATE Users SET UserAccountActive='" + 1 +
-                     "' WHERE UserLogin='" + login + "'";
-        bd.executeUpdate(bd.getConnection(), sql);
+        String sql = "UPDATE Users SET UserAccountActive=1 WHERE UserLogin=?";
+        bd.update(bd.getRequestConnection(), sql, new Object[] {login});
         logger.debug("<<< End of UserWriter.activate()***");
     }
 
@@ -114,25 +91,28 @@ public class UserWriter {
                 "yyyy-MM-dd HH:mm:ss");
         String lastLogin = sdf.format(new java.util.Date());
         user.setLastlogin(lastLogin);
-        String sql = "UPDATE Users SET UserLastLogin='" + lastLogin +
-                     "', UserActive=" + 1 + " WHERE UserID=" + user.getId();
-        user.getBd().executeUpdate(user.getConn(), sql);
+        String sql = "UPDATE Users SET UserLastLogin=?, UserActive=1 WHERE UserID=?";
+        user.getBd().update(user.getConn(), sql,
+                            new Object[] {lastLogin, new Integer(user.getId())});
         logger.debug("<<< End of UserWriter.login()***");
     }
 
+    /**
+     * Called when the session ends, outside of a request, so it borrows and
+     * returns its own connection.
+     */
     public void logout(User user) {
         logger.debug(">>> Start of UserWriter.logout()***");
-        try {
-            Connection conn;
-            String sql = "UPDATE Users SET UserActive=" + 0 + " WHERE UserID=" +
-                         user.getId();
-            conn = user.getBd().getConnection();
-            user.getBd().executeUpdate(conn, sql);
-            conn.close();
-            conn = user.getConn();
-            conn.close();
-        } catch (SQLException e) {
-            logger.error(e);
+        Connection conn = user.getBd().getConnection();
+        if (conn != null) {
+            try {
+                String sql = "UPDATE Users SET UserActive=0 WHERE UserID=?";
+                user.getBd().update(conn, sql,
+                                    new Object[] {new Integer(user.getId())});
+                conn.close();
+            } catch (SQLException e) {
+                logger.error(e);
+            }
         }
         logger.info("User " + user.getLogin() + " exited of the system.");
         logger.debug("<<< End of UserWriter.logout()***");
@@ -140,10 +120,20 @@ public class UserWriter {
 
     public void updatePassword(User user) {
         logger.debug(">>> Start of UserWriter.logout()***");
-        String sql = "UPDATE Users SET UserPasswd='" + user.getPassword() +
-                     "' WHERE UserID=" +
-                     user.getId();
-        user.getBd().executeUpdate(user.getConn(), sql);
+        String sql = "UPDATE Users SET UserPasswd=? WHERE UserID=?";
+        user.getBd().update(user.getConn(), sql,
+                            new Object[] {user.getPassword(),
+                            new Integer(user.getId())});
         logger.debug("<<< End of UserWriter.logout()***");
     }
+
+    /**
+     * @return the id of the last row found by the query, or 0
+     */
+    private static int lastId(DatabaseController bd, Connection conn,
+                              String sql, String name) {
+        Vector ids = bd.query(conn, sql, new Object[] {name},
+                              ColumnMapper.INTEGER);
+        return ids.isEmpty() ? 0 : ((Integer) ids.lastElement()).intValue();
+    }
 }
@@ -32,18 +32,10 @@ public class NewUsersController {
 
     public Vector getNewUsers(User user) {
         logger.debug(">>> Start of NewUsersController.getNewUsers()***");
-        Vector newusers = new Vector();
         DatabaseController bd = user.getBd();
         Connection conn = user.getConn();
         String sql = "SELECT UserLogin FROM Users WHERE UserRegister >= DATE_SUB(CURRENT_DATE(), INTERVAL 1 DAY) ORDER BY UserLogin";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try{
-            while (rs.next()) {
-                newusers.add(rs.getString("UserLogin"));
-            }
-        }catch(SQLException e){
-            logger.error(e);
-        }
+        Vector newusers = bd.query(conn, sql, null, ColumnMapper.STRING);
         logger.debug("<<< End of NewUsersController.getNewUsers()***");
         return newusers;
     }
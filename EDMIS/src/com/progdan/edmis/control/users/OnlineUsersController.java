@@ -35,16 +35,8 @@ public class OnlineUsersController {
         logger.debug(">>> Start of OnlineUsersController.getOnlineUsers()***");
         DatabaseController bd = user.getBd();
         Connection conn = user.getConn();
-        Vector online = new Vector();
         String sql = "SELECT UserLogin FROM Users WHERE UserActive=1 ORDER BY UserLogin";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            while (rs.next()) {
-                online.add(rs.getString("UserLogin"));
-            }
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        Vector online = bd.query(conn, sql, null, ColumnMapper.STRING);
         logger.debug("<<< End of OnlineUsersController.getOnlineUsers()***");
         return online;
     }
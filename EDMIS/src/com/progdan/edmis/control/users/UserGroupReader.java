@@ -1,6 +1,7 @@
 package com.progdan.edmis.control.users;
 
 import java.sql.*;
+import java.util.Vector;
 
 import com.progdan.logengine.*;
 import com.progdan.edmis.control.database.*;
@@ -23,16 +24,11 @@ public class UserGroupReader {
     public int getUserGroup(String login) {
         logger.debug(">>> Start of UserGroupReader.getUserGroup()***");
         int id = 0;
-        try {
-            String sql =
-                    "SELECT UserGroupID FROM UserGroups WHERE UserGroupName = '" +
-                    login + "'";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                id = rs.getInt("UserGroupID");
-            }
-        } catch (SQLException e) {
-            logger.error(e);
+        String sql = "SELECT UserGroupID FROM UserGroups WHERE UserGroupName=?";
+        Vector ids = bd.query(conn, sql, new Object[] {login},
+                              ColumnMapper.INTEGER);
+        if (!ids.isEmpty()) {
+            id = ((Integer) ids.lastElement()).intValue();
         }
         logger.debug("<<< End of UserGroupReader.getUserGroup()***");
         return id;
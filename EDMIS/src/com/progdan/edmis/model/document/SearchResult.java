@@ -0,0 +1,77 @@
+package com.progdan.edmis.model.document;
+
+import java.util.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * One page of the documents found by a full text search.
+ */
+public class SearchResult {
+    private static Logger logger = Logger.getLogger(SearchResult.class.
+            getName());
+    private int total;
+    private int offset;
+    private int limit;
+    private Vector documents = new Vector();
+    private Vector scores = new Vector();
+
+    public SearchResult(int total, int offset, int limit) {
+        logger.debug(">>> Start of SearchResult.SearchResult()***");
+        this.total = total;
+        this.offset = offset;
+        this.limit = limit;
+        logger.debug("<<< End of SearchResult.SearchResult()***");
+    }
+
+    public void add(Document doc, float score) {
+        logger.debug(">>> Start of SearchResult.add()***");
+        documents.add(doc);
+        scores.add(new Float(score));
+        logger.debug("<<< End of SearchResult.add()***");
+    }
+
+    /**
+     * @return the number of documents found by the search
+     */
+    public int getTotal() {
+        logger.debug(">>> Start of SearchResult.getTotal()***");
+        logger.debug("<<< End of SearchResult.getTotal()***");
+        return total;
+    }
+
+    public int getOffset() {
+        logger.debug(">>> Start of SearchResult.getOffset()***");
+        logger.debug("<<< End of SearchResult.getOffset()***");
+        return offset;
+    }
+
+    public int getLimit() {
+        logger.debug(">>> Start of SearchResult.getLimit()***");
+        logger.debug("<<< End of SearchResult.getLimit()***");
+        return limit;
+    }
+
+    /**
+     * @return the number of documents on this page
+     */
+    public int size() {
+        return documents.size();
+    }
+
+    public Document getDocument(int i) {
+        return (Document) documents.get(i);
+    }
+
+    public float getScore(int i) {
+        return ((Float) scores.get(i)).floatValue();
+    }
+
+    public boolean hasPrevious() {
+        return offset > 0;
+    }
+
+    public boolean hasNext() {
+        return offset + limit < total;
+    }
+}
@@ -1,9 +1,11 @@
 package com.progdan.edmis.model.user;
 
 import java.sql.*;
+import java.util.Hashtable;
 
 import com.progdan.logengine.*;
 import com.progdan.edmis.control.database.*;
+import com.progdan.searchengine.search.Filter;
 
 public class User {
     private String lastlogin;
@@ -12,13 +14,16 @@ public class User {
     private String password;
     private String email;
     private static Logger logger = Logger.getLogger(User.class.getName());
-    private static DatabaseController bd;
-    private static Connection conn;
+    private DatabaseController bd;
+    /** Strongest permission on each document group, see PermissionCache */
+    private Hashtable permissions;
+    private long permissionsVersion;
+    /** Filter of the groups the user can read, see SearchService */
+    private Filter groupFilter;
 
     public User() {
         logger.debug(">>> Start of User.User()***");
         this.bd = new MySQLController();
-        this.conn = bd.getConnection();
         logger.debug("<<< End of User.User()***");
     }
 
@@ -62,22 +67,13 @@ public class User {
 
     public static boolean exists(String name) {
         logger.debug(">>> Start of User.Exists()***");
-        bd = new MySQLController();
-        conn = bd.getConnection();
-        String sql = "SELECT * FROM users WHERE UserLogin='" + name + "'";
-        ResultSet rs = bd.executeQuery(conn, sql);
-        try {
-            if (rs.next()) {
-                logger.debug("<<< End of User.exists()***");
-                conn.close();
-                return true;
-            }
-            conn.close();
-        } catch (SQLException e) {
-            logger.error(e);
-        }
+        DatabaseController bd = new MySQLController();
+        Connection conn = bd.getRequestConnection();
+        String sql = "SELECT UserID FROM Users WHERE UserLogin=?";
+        boolean result = bd.queryObject(conn, sql, new Object[] {name},
+                                        ColumnMapper.INTEGER) != null;
         logger.debug("<<< End of User.Exists()***");
-        return false;
+        return result;
     }
 
     private String name;
@@ -119,16 +115,14 @@ public class User {
         logger.debug("<<< End of User.setEmail()***");
     }
 
+    /**
+     * @return the connection of the current request. It is returned to the
+     *   pool by ConnectionFilter, so it must not be kept across requests.
+     */
     public Connection getConn() {
         logger.debug(">>> Start of User.getConn()***");
         logger.debug("<<< End of User.getConn()***");
-        return conn;
-    }
-
-    public void setConn(Connection conn) {
-        logger.debug(">>> Start of User.setConn()***");
-        this.conn = conn;
-        logger.debug("<<< End of User.setConn()***");
+        return bd.getRequestConnection();
     }
 
     public boolean isAccountActive() {
@@ -143,6 +137,28 @@ public class User {
         logger.debug("<<< End of User.setAccountActive()***");
     }
 
+    public Hashtable getPermissions() {
+        return permissions;
+    }
+
+    public long getPermissionsVersion() {
+        return permissionsVersion;
+    }
+
+    public void setPermissions(Hashtable permissions, long version) {
+        this.permissions = permissions;
+        this.permissionsVersion = version;
+        groupFilter = null;
+    }
+
+    public Filter getGroupFilter() {
+        return groupFilter;
+    }
+
+    public void setGroupFilter(Filter groupFilter) {
+        this.groupFilter = groupFilter;
+    }
+
     public DatabaseController getBd() {
         return bd;
     }
@@ -0,0 +1,20 @@
+package test.edmis;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Holds all the test cases of EDMIS.
+ */
+public class TestAll extends TestCase {
+    public TestAll(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTest(test.edmis.index.TestSearcherManager.suite());
+        return suite;
+    }
+}
@@ -0,0 +1,173 @@
+package test.edmis.index;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.progdan.edmis.control.index.SearcherManager;
+import com.progdan.searchengine.analysis.SimpleAnalyzer;
+import com.progdan.searchengine.document.Document;
+import com.progdan.searchengine.document.Field;
+import com.progdan.searchengine.index.IndexWriter;
+import com.progdan.searchengine.search.IndexSearcher;
+
+/**
+ * Tests that the SearcherManager shares its searchers, opens the changed
+ * indexes again and closes each searcher once, when no search uses it.
+ */
+public class TestSearcherManager extends TestCase {
+    private static final String GROUP = "1";
+    private File indexDir;
+    private Manager manager;
+    public TestSearcherManager(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestSearcherManager.class);
+    }
+
+    protected void setUp() throws IOException {
+        indexDir = File.createTempFile("TestSearcherManager", "");
+        indexDir.delete();
+        addDocument(true);
+        // Refreshed by the tests only
+        manager = new Manager(indexDir.getPath());
+    }
+
+    protected void tearDown() {
+        manager.close();
+        File[] files = new File(indexDir, GROUP).listFiles();
+        for (int i = 0; (files != null) && (i < files.length); i++) {
+            files[i].delete();
+        }
+        new File(indexDir, GROUP).delete();
+        indexDir.delete();
+    }
+
+    public void testShared() throws IOException {
+        IndexSearcher first = manager.acquire(GROUP);
+        IndexSearcher second = manager.acquire(GROUP);
+        assertSame(first, second);
+        manager.release(first);
+        manager.release(second);
+        assertFalse("current searcher closed", isClosed(first));
+        assertEquals(1, manager.opened.size());
+    }
+
+    public void testReopenIdle() throws IOException {
+        IndexSearcher searcher = manager.acquire(GROUP);
+        manager.release(searcher);
+        manager.reopen(GROUP);
+        assertTrue(isClosed(searcher));
+        assertNotSame(searcher, manager.acquire(GROUP));
+    }
+
+    public void testReopenInUse() throws IOException {
+        IndexSearcher old = manager.acquire(GROUP);
+        manager.reopen(GROUP);
+        IndexSearcher fresh = manager.acquire(GROUP);
+        assertNotSame(old, fresh);
+        assertFalse("searcher closed while in use", isClosed(old));
+        manager.release(old);
+        assertTrue(isClosed(old));
+        assertFalse(isClosed(fresh));
+    }
+
+    public void testRefresh() throws IOException {
+        IndexSearcher old = manager.acquire(GROUP);
+        manager.run();
+        assertSame("index not changed", old, manager.acquire(GROUP));
+        manager.release(old);
+        addDocument(false);
+        manager.run();
+        assertFalse("searcher closed while in use", isClosed(old));
+        IndexSearcher fresh = manager.acquire(GROUP);
+        assertEquals(2, fresh.maxDoc());
+        manager.release(old);
+        assertTrue(isClosed(old));
+        manager.release(fresh);
+        assertFalse(isClosed(fresh));
+    }
+
+    /**
+     * reopen() retires the entry while run() opens the changed index: the
+     * searcher opened by run() is closed instead of replacing the entry.
+     */
+    public void testRetiredEntryRace() throws IOException {
+        IndexSearcher old = manager.acquire(GROUP);
+        manager.release(old);
+        addDocument(false);
+        manager.reopenWhileOpening = true;
+        manager.run();
+        assertEquals(2, manager.opened.size());
+        assertTrue(isClosed(old));
+        IndexSearcher raced = (IndexSearcher) manager.opened.get(1);
+        assertTrue("searcher of the retired entry left open", isClosed(raced));
+        IndexSearcher fresh = manager.acquire(GROUP);
+        assertNotSame(raced, fresh);
+        assertFalse(isClosed(fresh));
+        manager.release(fresh);
+    }
+
+    public void testCloseInUse() throws IOException {
+        IndexSearcher searcher = manager.acquire(GROUP);
+        manager.close();
+        assertFalse("searcher closed while in use", isClosed(searcher));
+        manager.release(searcher);
+        assertTrue(isClosed(searcher));
+    }
+
+    private void addDocument(boolean create) throws IOException {
+        File dir = new File(indexDir, GROUP);
+        dir.mkdirs();
+        IndexWriter writer = new IndexWriter(dir.getPath(), new SimpleAnalyzer(),
+                                             create);
+        Document doc = new Document();
+        doc.add(Field.Keyword("path", String.valueOf(System.currentTimeMillis())));
+        writer.addDocument(doc);
+        writer.close();
+    }
+
+    private static boolean isClosed(IndexSearcher searcher) {
+        return ((Searcher) searcher).closes > 0;
+    }
+
+    /**
+     * Counts the closes of its searchers, which must be closed only once.
+     */
+    private static class Searcher extends IndexSearcher {
+        int closes;
+        Searcher(String path) throws IOException {
+            super(path);
+        }
+
+        public void close() throws IOException {
+            assertEquals("searcher closed twice", 0, closes);
+            closes++;
+            super.close();
+        }
+    }
+
+    private static class Manager extends SearcherManager {
+        Vector opened = new Vector();
+        /** Makes the next open retire the entry, as reopen() would meanwhile */
+        boolean reopenWhileOpening;
+        Manager(String indexDir) {
+            super(indexDir, 3600000);
+        }
+
+        protected IndexSearcher openSearcher(String path) throws IOException {
+            IndexSearcher searcher = new Searcher(path);
+            opened.add(searcher);
+            if (reopenWhileOpening) {
+                reopenWhileOpening = false;
+                reopen(GROUP);
+            }
+            return searcher;
+        }
+    }
+}
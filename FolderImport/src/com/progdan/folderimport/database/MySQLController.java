@@ -192,6 +192,8 @@ public class MySQLController extends DatabaseController {
               "DocumentIndexID INT UNSIGNED NOT NULL AUTO_INCREMENT PRIMARY KEY,"
               + "DocumentID VARCHAR(128) NOT NULL,"
               + "DocumentGroup TEXT,"
+              + "DocumentIndexLease DATETIME,"
+              + "DocumentIndexAttempts INT UNSIGNED NOT NULL DEFAULT 0,"
               + "INDEX indDocumentID(DocumentID),"
               + "FOREIGN KEY (DocumentID) REFERENCES Documents(DocumentID) ON DELETE RESTRICT"
               + ") TYPE=INNODB";
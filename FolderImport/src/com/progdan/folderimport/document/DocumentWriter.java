@@ -14,10 +14,19 @@ public class DocumentWriter {
             getName());
     private Connection conn;
     private DatabaseController bd;
+    private IndexFiles index;
     public DocumentWriter() {
         bd = new MySQLController();
         bd.testDriver();
         conn = bd.getConnection();
+        index = new IndexFiles();
+    }
+
+    /**
+     * Sends the files not yet sent to the Parser Server.
+     */
+    public void close() {
+        index.close();
     }
 
 
@@ -25,7 +34,6 @@ public class DocumentWriter {
 
         public void writeNew(Document doc) {
         logger.debug(">>> Start of DocumentWriter.writeNew()***");
-        IndexFiles index = new IndexFiles();
         String sql = "INSERT INTO Documents (DocumentID, DocumentName, DocumentSize, DocumentFormat, LanguageID, DocumentDate, DocumentPages) VALUES('"
                      + doc.getId() + "','" + doc.getName() + "',"
                      + doc.getSize() + ",'"
@@ -43,7 +51,6 @@ public class DocumentWriter {
         sql = "UPDATE DocumentGroups SET DocumentGroupUpdate='" + lastUpdate +
               "' WHERE DocumentGroupID=1";
         bd.executeUpdate(conn, sql);
-        index.index("1", doc.getId(), doc.getFormat());
 
         //ProgDan Favorites relation
         sql = "INSERT INTO Relations(DocumentID, DocumentGroupID) VALUES('" +
@@ -52,9 +59,9 @@ public class DocumentWriter {
         sql = "UPDATE DocumentGroups SET DocumentGroupUpdate='" + lastUpdate +
               "' WHERE DocumentGroupID=2";
         bd.executeUpdate(conn, sql);
-        index.index("2", doc.getId(), doc.getFormat());
 
-        index.index("all", doc.getId(), doc.getFormat());
+        index.index(new String[] {"1", "2", "all"}, doc.getId(),
+                    doc.getFormat());
 
         logger.debug("<<< End of DocumentWriter.writeNew()***");
     }
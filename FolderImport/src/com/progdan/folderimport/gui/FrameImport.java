@@ -179,6 +179,8 @@ public class FrameImport extends JFrame {
             System.out.println(ex);
         } catch (IOException ex) {
             System.out.println(ex);
+        } finally {
+            write.close();
         }
     }
 }
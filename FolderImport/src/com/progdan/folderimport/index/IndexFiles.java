@@ -1,31 +1,40 @@
 package com.progdan.folderimport.index;
 
 import java.io.*;
-import java.net.*;
 import java.util.*;
 
 import com.progdan.logengine.*;
+import com.progdan.parserserver.client.ParserClient;
 
+/**
+ * Sends the imported files to the Parser Server in batches of parseBatch
+ * tasks on one connection. Call close() at the end of the import to send
+ * the last batch and have EDMIS index the new names.
+ */
 public class IndexFiles {
     private static Logger logger = Logger.getLogger(IndexFiles.class.getName());
     private int port;
     private String host;
-    private Socket kkSocket;
     private String reppath;
+    private int batch;
+    private ParserClient client;
     private ParserController control;
     public IndexFiles() {
         control = new ParserController();
+        batch = 100;
         try {
             Properties props = new Properties();
             props.load(getClass().getResourceAsStream("/" + "db.properties"));
             port = Integer.parseInt(props.getProperty("parsePort", "4444"));
             reppath = props.getProperty("reppath", "C:\\EDMIS");
             host = props.getProperty("parseHost", "localhost");
+            batch = Integer.parseInt(props.getProperty("parseBatch", "100"));
         } catch (FileNotFoundException e) {
             logger.error(e);
         } catch (IOException e) {
             logger.error(e);
         }
+        client = new ParserClient(host, port);
         try {
             jbInit();
         } catch (Exception ex) {
@@ -34,44 +43,69 @@ public class IndexFiles {
     }
 
     public void index(String indexPath, String id, String format) {
+        index(new String[] {indexPath}, id, format);
+    }
+
+    /**
+     * Queues one task indexing the file on each of the groups.
+     */
+    public void index(String[] groups, String id, String format) {
         logger.debug(">>> Start of Client.index()***");
-        File test = new File(reppath + System.getProperty("file.separator") +
-                             "body", id + ".txt");
-        String file = control.fileParsed(id);
-        if (file == null) {
-/*@todo Envio de arquivo para extrao de texto*/
-//            sendFileToParser(indexPath, id, format);
+        client.submit(id, format, groups, ParserClient.IMPORT);
+        if (client.getPending().size() >= batch) {
+            flush();
         }
-        control.addTask(indexPath, id);
         logger.debug("<<< End of Client.index()***");
     }
 
-    public void sendFileToParser(String indexPath, String id, String format) {
-        logger.debug(">>> Start of Client.sendFileToParser()***");
-        String msg;
-        Hashtable request = new Hashtable();
+    /**
+     * Sends the queued tasks. When the server cannot be reached, or does
+     * not store a task, the tasks are left in DocumentIndex, where the
+     * server picks them up when it starts.
+     */
+    public void flush() {
+        logger.debug(">>> Start of Client.flush()***");
         try {
-            kkSocket = new Socket(InetAddress.getByName(host), port);
-            BufferedReader is = new BufferedReader(new InputStreamReader(
-                    kkSocket.getInputStream()));
-            PrintWriter os = new PrintWriter(kkSocket.getOutputStream());
-            if (kkSocket != null && os != null && is != null) {
-                msg = is.readLine();
-                logger.info(msg);
-                os.println("id: " + id);
-                os.flush();
-                os.println("format: " + format);
-                os.flush();
-                os.println("indexPath: " + indexPath);
-                os.flush();
+            client.flush();
+        } catch (IOException e) {
+            logger.error(e);
+            addTasks(client.getPending());
+        }
+        addTasks(client.getRefused());
+        logger.debug("<<< End of Client.flush()***");
+    }
+
+    private void addTasks(Vector tasks) {
+        for (int i = 0; i < tasks.size(); i++) {
+            Hashtable task = (Hashtable) tasks.get(i);
+            String[] groups = (String[]) task.get("groups");
+            for (int j = 0; j < groups.length; j++) {
+                control.addTask(groups[j], (String) task.get("id"));
             }
-            is.close();
-            os.close();
-            kkSocket.close();
+        }
+        tasks.clear();
+    }
+
+    public void close() {
+        logger.debug(">>> Start of Client.close()***");
+        flush();
+        client.close();
+        rebuildNames();
+        logger.debug("<<< End of Client.close()***");
+    }
+
+    /**
+     * Leaves the file asking EDMIS to build its index of names again, which
+     * it looks for every few seconds.
+     */
+    private void rebuildNames() {
+        File dir = new File(reppath, "index");
+        try {
+            dir.mkdirs();
+            new File(dir, "names.rebuild").createNewFile();
         } catch (IOException e) {
             logger.error(e);
         }
-        logger.debug("<<< End of Client.sendFileToParser()***");
     }
 
     private void jbInit() throws Exception {
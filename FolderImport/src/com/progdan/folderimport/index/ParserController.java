@@ -34,12 +34,24 @@ public class ParserController {
         return result;
     }
 
+    /**
+     * Leaves the task in DocumentIndex for the Parser Server, unless the
+     * server already stored it.
+     */
     public void addTask(String indexPath, String id) {
         logger.debug(">>> Start of IndexController.addTask()***");
-        String sql =
-                "INSERT INTO DocumentIndex (DocumentID, DocumentGroup) VALUES('" +
-                id + "','" + indexPath + "')";
-        bd.executeUpdate(conn, sql);
+        try {
+            String sql = "SELECT DocumentIndexID FROM DocumentIndex WHERE DocumentID='" +
+                         id + "' AND DocumentGroup='" + indexPath + "'";
+            ResultSet rs = bd.executeQuery(conn, sql);
+            if (!rs.next()) {
+                sql = "INSERT INTO DocumentIndex (DocumentID, DocumentGroup) VALUES('" +
+                      id + "','" + indexPath + "')";
+                bd.executeUpdate(conn, sql);
+            }
+        } catch (SQLException e) {
+            logger.error(e);
+        }
         logger.debug("<<< End of IndexController.addTask()***");
     }
 }
@@ -0,0 +1,179 @@
+package com.progdan.parserserver.client;
+
+import java.io.*;
+import java.net.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * Client of the Parser Server task protocol. Tasks queued with submit() are
+ * written together on one persistent connection by flush(), which then
+ * waits for the acknowledgement of each of them. A task lists every group
+ * the document is indexed on and the server fans it out. Acknowledgements
+ * are matched to the tasks by id, so a flush repeated after an I/O error
+ * only sends the tasks the server did not answer. Connecting and
+ * each read give up after the timeout, so a stalled server fails the flush
+ * instead of blocking the caller.
+ */
+public class ParserClient {
+    private static Logger logger = Logger.getLogger(ParserClient.class.getName());
+    /** Priorities of the tasks, served in this order by the server */
+    public static final String INTERACTIVE = "interactive";
+    public static final String IMPORT = "import";
+    public static final String REINDEX = "reindex";
+    private String host;
+    private int port;
+    /** Milliseconds to connect and to wait for each line of the server */
+    private int timeout;
+    private Socket socket;
+    private BufferedReader is;
+    private Writer os;
+    private Vector pending;
+    private Vector refused;
+    public ParserClient(String host, int port) {
+        this(host, port, 30000);
+    }
+
+    public ParserClient(String host, int port, int timeout) {
+        logger.debug(">>> Start of ParserClient.ParserClient()***");
+        this.host = host;
+        this.port = port;
+        this.timeout = timeout;
+        pending = new Vector();
+        refused = new Vector();
+        logger.debug("<<< End of ParserClient.ParserClient()***");
+    }
+
+    /**
+     * @param priority INTERACTIVE, IMPORT or REINDEX
+     */
+    public void submit(String id, String format, String[] groups,
+                       String priority) {
+        logger.debug(">>> Start of ParserClient.submit()***");
+        Hashtable task = new Hashtable();
+        task.put("id", id);
+        task.put("format", format);
+        task.put("groups", groups);
+        task.put("priority", priority);
+        pending.add(task);
+        logger.debug("<<< End of ParserClient.submit()***");
+    }
+
+    /**
+     * Sends the queued tasks and reads their acknowledgements. Acknowledged
+     * tasks are stored by the server, the ones it answers with an error are
+     * moved to getRefused(); when the connection fails the others stay in
+     * getPending() and the connection is reopened on the next flush.
+     */
+    public void flush() throws IOException {
+        logger.debug(">>> Start of ParserClient.flush()***");
+        if (pending.isEmpty()) {
+            return;
+        }
+        try {
+            if (socket == null) {
+                connect();
+            }
+            StringBuffer batch = new StringBuffer();
+            for (int i = 0; i < pending.size(); i++) {
+                Hashtable task = (Hashtable) pending.get(i);
+                String[] groups = (String[]) task.get("groups");
+                batch.append("id: " + task.get("id") + "\r\n");
+                batch.append("format: " + task.get("format") + "\r\n");
+                batch.append("priority: " + task.get("priority") + "\r\n");
+                batch.append("groups:");
+                for (int j = 0; j < groups.length; j++) {
+                    batch.append(" " + groups[j]);
+                }
+                batch.append("\r\n\r\n");
+            }
+            os.write(batch.toString());
+            os.flush();
+            int sent = pending.size();
+            while (sent > 0) {
+                String ack = is.readLine();
+                if (ack == null) {
+                    throw new IOException("Parser Server closed the connection");
+                }
+                Hashtable task = acked(ack);
+                if (task == null) {
+                    logger.error("Unexpected answer of the Parser Server: " + ack);
+                    continue;
+                }
+                sent--;
+                if (!ack.startsWith("OK ")) {
+                    logger.error("Parser Server refused the task: " + ack);
+                    refused.add(task);
+                }
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+        logger.debug("<<< End of ParserClient.flush()***");
+    }
+
+    /**
+     * @return the tasks not acknowledged yet, as Hashtables with the keys
+     *   id, format, groups and priority
+     */
+    public Vector getPending() {
+        return pending;
+    }
+
+    /**
+     * @return the tasks the server answered with an error, which the caller
+     *   stores some other way and clears
+     */
+    public Vector getRefused() {
+        return refused;
+    }
+
+    /**
+     * Removes from the pending tasks the oldest one with the id of the
+     * acknowledgement, "OK id groups" or "ERROR id reason".
+     * @return the task, or null when no pending task has that id
+     */
+    private Hashtable acked(String ack) {
+        StringTokenizer tokens = new StringTokenizer(ack, " ");
+        if (tokens.countTokens() < 2) {
+            return null;
+        }
+        tokens.nextToken();
+        String id = tokens.nextToken();
+        for (int i = 0; i < pending.size(); i++) {
+            Hashtable task = (Hashtable) pending.get(i);
+            if (id.equals(task.get("id"))) {
+                pending.remove(i);
+                return task;
+            }
+        }
+        return null;
+    }
+
+    public void close() {
+        logger.debug(">>> Start of ParserClient.close()***");
+        if (socket != null) {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                logger.error(e);
+            }
+        }
+        socket = null;
+        logger.debug("<<< End of ParserClient.close()***");
+    }
+
+    private void connect() throws IOException {
+        socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), timeout);
+        socket.setSoTimeout(timeout);
+        // The charset of the Parser Server protocol
+        is = new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                "UTF-8"));
+        os = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(),
+                "UTF-8"));
+        logger.info(is.readLine());
+    }
+}
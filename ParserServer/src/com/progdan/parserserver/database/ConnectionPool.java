@@ -0,0 +1,87 @@
+package com.progdan.parserserver.database;
+
+import java.sql.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * Bounded pool of database connections, opened on demand by the
+ * DatabaseController up to the pool size. When every connection is in use
+ * callers wait for one to be released.
+ */
+public class ConnectionPool {
+    private static Logger logger = Logger.getLogger(ConnectionPool.class.
+            getName());
+    /** Milliseconds to wait for a free connection */
+    private static final long WAIT = 30000;
+    private DatabaseController bd;
+    private int size;
+    private int open;
+    private LinkedList idle;
+    private boolean closed;
+    public ConnectionPool(DatabaseController bd, int size) {
+        logger.debug(">>> Start of ConnectionPool.ConnectionPool()***");
+        this.bd = bd;
+        this.size = size;
+        idle = new LinkedList();
+        logger.debug("<<< End of ConnectionPool.ConnectionPool()***");
+    }
+
+    public synchronized PooledConnection get() throws SQLException {
+        long deadline = System.currentTimeMillis() + WAIT;
+        while (!closed) {
+            while (!idle.isEmpty()) {
+                PooledConnection pc = (PooledConnection) idle.removeFirst();
+                if (!pc.isClosed()) {
+                    return pc;
+                }
+                open--;
+            }
+            if (open < size) {
+                Connection conn = bd.getConnection();
+                if (conn == null) {
+                    throw new SQLException("No database connection");
+                }
+                open++;
+                return new PooledConnection(conn);
+            }
+            long wait = deadline - System.currentTimeMillis();
+            if (wait <= 0) {
+                throw new SQLException("No free database connection after " +
+                                       WAIT + "ms");
+            }
+            try {
+                wait(wait);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted waiting for a connection");
+            }
+        }
+        throw new SQLException("Connection pool closed");
+    }
+
+    public synchronized void release(PooledConnection pc) {
+        if (pc == null) {
+            return;
+        }
+        if (closed || pc.isClosed()) {
+            pc.close();
+            open--;
+        } else {
+            idle.addLast(pc);
+        }
+        notify();
+    }
+
+    public synchronized void close() {
+        logger.debug(">>> Start of ConnectionPool.close()***");
+        closed = true;
+        while (!idle.isEmpty()) {
+            ((PooledConnection) idle.removeFirst()).close();
+            open--;
+        }
+        notifyAll();
+        logger.debug("<<< End of ConnectionPool.close()***");
+    }
+}
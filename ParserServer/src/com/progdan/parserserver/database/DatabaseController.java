@@ -21,7 +21,11 @@ public abstract class DatabaseController {
         int n = -1;
         try {
             Statement s = conn.createStatement();
-            n = s.executeUpdate(sql);
+            try {
+                n = s.executeUpdate(sql);
+            } finally {
+                s.close();
+            }
         } catch (SQLException e) {
             logger.error(e);
         }
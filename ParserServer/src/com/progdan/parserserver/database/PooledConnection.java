@@ -0,0 +1,95 @@
+package com.progdan.parserserver.database;
+
+import java.sql.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * Connection handed out by a ConnectionPool. The statements it prepares are
+ * kept open and reused, as each SQL text is prepared once per connection.
+ * Call ConnectionPool.release() when done; ResultSets must be closed by the
+ * caller before that.
+ */
+public class PooledConnection {
+    private static Logger logger = Logger.getLogger(PooledConnection.class.
+            getName());
+    private Connection conn;
+    private Hashtable statements;
+    PooledConnection(Connection conn) {
+        this.conn = conn;
+        statements = new Hashtable();
+    }
+
+    /**
+     * @return the statement prepared for the SQL text, with its parameters
+     *   cleared
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement ps = (PreparedStatement) statements.get(sql);
+        if (ps == null) {
+            ps = conn.prepareStatement(sql);
+            statements.put(sql, ps);
+        } else {
+            ps.clearParameters();
+        }
+        return ps;
+    }
+
+    /**
+     * For statements run once, such as schema upgrades. The caller closes
+     * the statement.
+     */
+    public Statement createStatement() throws SQLException {
+        return conn.createStatement();
+    }
+
+    /**
+     * Prepares a statement that is not kept, such as one with a variable
+     * number of parameters. The caller closes the statement.
+     */
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return conn.prepareStatement(sql);
+    }
+
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        conn.setAutoCommit(autoCommit);
+    }
+
+    public void commit() throws SQLException {
+        conn.commit();
+    }
+
+    public void rollback() {
+        try {
+            conn.rollback();
+        } catch (SQLException e) {
+            logger.error(e);
+        }
+    }
+
+    boolean isClosed() {
+        try {
+            return conn.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    void close() {
+        Enumeration e = statements.elements();
+        while (e.hasMoreElements()) {
+            try {
+                ((PreparedStatement) e.nextElement()).close();
+            } catch (SQLException err) {
+                logger.error(err);
+            }
+        }
+        statements.clear();
+        try {
+            conn.close();
+        } catch (SQLException err) {
+            logger.error(err);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.progdan.parserserver.extract;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reader for the ITSF container of Compiled HTML Help (.chm) files. Files
+ * stored in the MSCompressed section are decompressed with LZXDecoder; read
+ * them in list() order so each frame is only decoded once.
+ */
+public class CHMFile {
+    private static final String CONTENT =
+            "::DataSpace/Storage/MSCompressed/Content";
+    private static final String CONTROL_DATA =
+            "::DataSpace/Storage/MSCompressed/ControlData";
+    private static final String RESET_TABLE =
+            "::DataSpace/Storage/MSCompressed/Transform/" +
+            "{7FC28940-9D31-11D0-9B27-00A0C91E9C7C}/InstanceData/ResetTable";
+
+    private RandomAccessFile file;
+    private long dataOffset;
+    private Hashtable entries = new Hashtable();
+    private Vector names = new Vector();
+
+    /** MSCompressed section */
+    private long contentOffset;
+    private long contentLength;
+    private long uncompressedLength;
+    private long[] frames;
+    private int framesPerReset;
+    private LZXDecoder decoder;
+    private byte[] frame = new byte[LZXDecoder.FRAME_SIZE];
+    private int currentFrame = -1;
+    public CHMFile(File source) throws IOException {
+        file = new RandomAccessFile(source, "r");
+        try {
+            readDirectory();
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * @return the names of the stored files, ordered by their position in
+     *   the file
+     */
+    public String[] list() {
+        String[] list = new String[names.size()];
+        names.copyInto(list);
+        return list;
+    }
+
+    public byte[] read(String name) throws IOException {
+        Entry entry = (Entry) entries.get(name);
+        if (entry == null) {
+            throw new FileNotFoundException(name);
+        }
+        if (entry.length > Integer.MAX_VALUE) {
+            throw new IOException("File " + name + " too large");
+        }
+        byte[] data = new byte[(int) entry.length];
+        if (entry.section == 0) {
+            file.seek(dataOffset + entry.offset);
+            file.readFully(data);
+            return data;
+        }
+        if (decoder == null) {
+            openCompressed();
+        }
+        if (entry.offset + entry.length > uncompressedLength) {
+            throw new IOException("File " + name + " beyond the compressed section");
+        }
+        long position = entry.offset;
+        int done = 0;
+        while (done < data.length) {
+            int index = (int) (position / LZXDecoder.FRAME_SIZE);
+            int start = (int) (position % LZXDecoder.FRAME_SIZE);
+            decodeFrame(index);
+            int n = Math.min(data.length - done, frameLength(index) - start);
+            System.arraycopy(frame, start, data, done, n);
+            done += n;
+            position += n;
+        }
+        return data;
+    }
+
+    public void close() throws IOException {
+        file.close();
+    }
+
+    private void readDirectory() throws IOException {
+        byte[] header = new byte[0x60];
+        file.seek(0);
+        file.readFully(header, 0, 0x58);
+        if (!new String(header, 0, 4, "ISO-8859-1").equals("ITSF")) {
+            throw new IOException("Not a CHM file");
+        }
+        int version = getInt(header, 4);
+        long dirOffset = getLong(header, 0x48);
+        long dirLength = getLong(header, 0x50);
+        if (version >= 3) {
+            file.readFully(header, 0x58, 8);
+            dataOffset = getLong(header, 0x58);
+        } else {
+            dataOffset = dirOffset + dirLength;
+        }
+
+        byte[] itsp = new byte[0x54];
+        file.seek(dirOffset);
+        file.readFully(itsp);
+        if (!new String(itsp, 0, 4, "ISO-8859-1").equals("ITSP")) {
+            throw new IOException("Invalid CHM directory");
+        }
+        // Layout of the ITSP header as read by libmspack: the listing
+        // chunks run from the first to the last PMGL chunk, out of the
+        // chunk count at 0x2C (0x28 is unknown and always -1)
+        int headerLength = getInt(itsp, 8);
+        int blockLength = getInt(itsp, 0x10);
+        int firstPMGL = getInt(itsp, 0x20);
+        int lastPMGL = getInt(itsp, 0x24);
+        int blocks = getInt(itsp, 0x2C);
+        if ((blockLength < 20) || (blocks < 0) ||
+            ((long) blocks * blockLength > dirLength) ||
+            (firstPMGL < 0) || (lastPMGL < firstPMGL) || (lastPMGL >= blocks)) {
+            throw new IOException("Invalid CHM directory");
+        }
+
+        byte[] chunk = new byte[blockLength];
+        for (int i = firstPMGL; i <= lastPMGL; i++) {
+            file.seek(dirOffset + headerLength + (long) i * blockLength);
+            file.readFully(chunk);
+            if (new String(chunk, 0, 4, "ISO-8859-1").equals("PMGL")) {
+                readListing(chunk, blockLength - getInt(chunk, 4));
+            }
+        }
+        Collections.sort(names, new Comparator() {
+            public int compare(Object a, Object b) {
+                Entry ea = (Entry) entries.get(a);
+                Entry eb = (Entry) entries.get(b);
+                if (ea.section != eb.section) {
+                    return ea.section - eb.section;
+                }
+                return ea.offset < eb.offset ? -1 : ea.offset > eb.offset ? 1 : 0;
+            }
+        });
+    }
+
+    /**
+     * Reads the entries of a PMGL directory chunk.
+     */
+    private void readListing(byte[] chunk, int end) throws IOException {
+        int[] pos = new int[] {20};
+        while (pos[0] < end) {
+            int length = (int) getEncInt(chunk, pos);
+            if ((length <= 0) || (pos[0] + length > end)) {
+                break;
+            }
+            String name = new String(chunk, pos[0], length, "UTF-8");
+            pos[0] += length;
+            Entry entry = new Entry();
+            entry.section = (int) getEncInt(chunk, pos);
+            entry.offset = getEncInt(chunk, pos);
+            entry.length = getEncInt(chunk, pos);
+            if ((entry.section == 0) || (entry.section == 1)) {
+                entries.put(name, entry);
+                names.add(name);
+            }
+        }
+    }
+
+    private void openCompressed() throws IOException {
+        Entry content = (Entry) entries.get(CONTENT);
+        if ((content == null) || (content.section != 0)) {
+            throw new IOException("CHM file without compressed content");
+        }
+        contentOffset = dataOffset + content.offset;
+        contentLength = content.length;
+
+        byte[] control = read(CONTROL_DATA);
+        if ((control.length < 0x18) ||
+            !new String(control, 4, 4, "ISO-8859-1").equals("LZXC")) {
+            throw new IOException("Unsupported CHM compression");
+        }
+        long resetInterval = getInt(control, 0x0C) & 0xFFFFFFFFL;
+        long windowSize = getInt(control, 0x10) & 0xFFFFFFFFL;
+        if (getInt(control, 0x08) == 2) {
+            resetInterval *= LZXDecoder.FRAME_SIZE;
+            windowSize *= LZXDecoder.FRAME_SIZE;
+        }
+        if ((resetInterval == 0) || (resetInterval % LZXDecoder.FRAME_SIZE != 0)) {
+            throw new IOException("Invalid LZX reset interval");
+        }
+        framesPerReset = (int) (resetInterval / LZXDecoder.FRAME_SIZE);
+        int windowBits = 0;
+        while ((1L << windowBits) < windowSize) {
+            windowBits++;
+        }
+
+        byte[] table = read(RESET_TABLE);
+        int count = getInt(table, 4);
+        int tableOffset = getInt(table, 0x0C);
+        uncompressedLength = getLong(table, 0x10);
+        if (getLong(table, 0x20) != LZXDecoder.FRAME_SIZE) {
+            throw new IOException("Unsupported LZX block size");
+        }
+        if ((count < 0) || (tableOffset + (long) count * 8 > table.length)) {
+            throw new IOException("Invalid LZX reset table");
+        }
+        frames = new long[count];
+        for (int i = 0; i < count; i++) {
+            frames[i] = getLong(table, tableOffset + i * 8);
+        }
+        decoder = new LZXDecoder(windowBits);
+    }
+
+    /**
+     * Decodes the frame into the frame buffer, starting from the reset
+     * point before it unless the previous frames were just decoded.
+     */
+    private void decodeFrame(int index) throws IOException {
+        if (index == currentFrame) {
+            return;
+        }
+        if (index >= frames.length) {
+            throw new IOException("LZX frame " + index + " not in the reset table");
+        }
+        int first = index - (index % framesPerReset);
+        if ((currentFrame >= first) && (currentFrame < index)) {
+            first = currentFrame + 1;
+        }
+        for (int i = first; i <= index; i++) {
+            if (i % framesPerReset == 0) {
+                decoder.reset();
+            }
+            long start = frames[i];
+            long end = (i + 1 < frames.length) ? frames[i + 1] : contentLength;
+            if ((end < start) || (end > contentLength)) {
+                throw new IOException("Invalid LZX reset table");
+            }
+            byte[] input = new byte[(int) (end - start)];
+            file.seek(contentOffset + start);
+            file.readFully(input);
+            currentFrame = -1;
+            decoder.decode(input, 0, input.length, frame, frameLength(i));
+            currentFrame = i;
+        }
+    }
+
+    private int frameLength(int index) {
+        return (int) Math.min(LZXDecoder.FRAME_SIZE,
+                              uncompressedLength -
+                              (long) index * LZXDecoder.FRAME_SIZE);
+    }
+
+    private static int getInt(byte[] b, int off) {
+        return (b[off] & 0xFF) | ((b[off + 1] & 0xFF) << 8) |
+                ((b[off + 2] & 0xFF) << 16) | ((b[off + 3] & 0xFF) << 24);
+    }
+
+    private static long getLong(byte[] b, int off) {
+        return (getInt(b, off) & 0xFFFFFFFFL) |
+                ((long) getInt(b, off + 4) << 32);
+    }
+
+    /**
+     * Reads a variable length integer: 7 bits per byte, most significant
+     * first, with the high bit set on all bytes but the last.
+     */
+    private static long getEncInt(byte[] b, int[] pos) {
+        long value = 0;
+        int c;
+        do {
+            if (pos[0] >= b.length) {
+                return -1;
+            }
+            c = b[pos[0]++] & 0xFF;
+            value = (value << 7) | (c & 0x7F);
+        } while ((c & 0x80) != 0);
+        return value;
+    }
+
+    private class Entry {
+        int section;
+        long offset;
+        long length;
+    }
+}
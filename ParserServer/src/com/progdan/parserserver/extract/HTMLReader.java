@@ -0,0 +1,254 @@
+package com.progdan.parserserver.extract;
+
+import java.io.*;
+import java.nio.charset.Charset;
+
+/**
+ * Reader returning the text of an HTML document: tags, comments and the
+ * content of script and style elements are dropped (each tag reads as a
+ * space) and character entities are decoded.
+ */
+public class HTMLReader extends Reader {
+    /** Entities of ISO-8859-1, from &amp;nbsp; (160) to &amp;yuml; (255) */
+    private static final String[] LATIN1 = {
+        "nbsp", "iexcl", "cent", "pound", "curren", "yen", "brvbar", "sect",
+        "uml", "copy", "ordf", "laquo", "not", "shy", "reg", "macr",
+        "deg", "plusmn", "sup2", "sup3", "acute", "micro", "para", "middot",
+        "cedil", "sup1", "ordm", "raquo", "frac14", "frac12", "frac34", "iquest",
+        "Agrave", "Aacute", "Acirc", "Atilde", "Auml", "Aring", "AElig", "Ccedil",
+        "Egrave", "Eacute", "Ecirc", "Euml", "Igrave", "Iacute", "Icirc", "Iuml",
+        "ETH", "Ntilde", "Ograve", "Oacute", "Ocirc", "Otilde", "Ouml", "times",
+        "Oslash", "Ugrave", "Uacute", "Ucirc", "Uuml", "Yacute", "THORN", "szlig",
+        "agrave", "aacute", "acirc", "atilde", "auml", "aring", "aelig", "ccedil",
+        "egrave", "eacute", "ecirc", "euml", "igrave", "iacute", "icirc", "iuml",
+        "eth", "ntilde", "ograve", "oacute", "ocirc", "otilde", "ouml", "divide",
+        "oslash", "ugrave", "uacute", "ucirc", "uuml", "yacute", "thorn", "yuml"};
+    /** Longest entity name looked for */
+    private static final int MAX_ENTITY = 10;
+
+    private PushbackReader in;
+    private int pending = -1;
+    public HTMLReader(Reader in) {
+        super(in);
+        this.in = new PushbackReader(new BufferedReader(in), MAX_ENTITY + 2);
+    }
+
+    /**
+     * Opens an HTML stream, decoding it with the charset of its byte order
+     * mark or meta tag, and windows-1252 otherwise.
+     */
+    public static HTMLReader open(InputStream stream) throws IOException {
+        BufferedInputStream in = new BufferedInputStream(stream);
+        in.mark(1024);
+        byte[] head = new byte[1024];
+        int n = 0;
+        int r;
+        while ((n < head.length) && (r = in.read(head, n, head.length - n)) > 0) {
+            n += r;
+        }
+        in.reset();
+        String charset = "Cp1252";
+        if ((n >= 3) && ((head[0] & 0xFF) == 0xEF) && ((head[1] & 0xFF) == 0xBB) &&
+            ((head[2] & 0xFF) == 0xBF)) {
+            in.skip(3);
+            charset = "UTF-8";
+        } else {
+            String text = new String(head, 0, n, "ISO-8859-1").toLowerCase();
+            int i = text.indexOf("charset=");
+            if (i >= 0) {
+                i += 8;
+                while ((i < text.length()) &&
+                       ((text.charAt(i) == '"') || (text.charAt(i) == '\''))) {
+                    i++;
+                }
+                int j = i;
+                while ((j < text.length()) &&
+                       (Character.isLetterOrDigit(text.charAt(j)) ||
+                        (text.charAt(j) == '-') || (text.charAt(j) == '_'))) {
+                    j++;
+                }
+                String name = text.substring(i, j);
+                try {
+                    if (Charset.isSupported(name)) {
+                        charset = name;
+                    }
+                } catch (IllegalArgumentException e) {
+                    // keep the default
+                }
+            }
+        }
+        return new HTMLReader(new InputStreamReader(in, charset));
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = 0;
+        while (n < len) {
+            int c = next();
+            if (c < 0) {
+                break;
+            }
+            cbuf[off + n++] = (char) c;
+        }
+        return (n == 0) && (len > 0) ? -1 : n;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * @return the next text character, or -1 at the end of the document
+     */
+    private int next() throws IOException {
+        if (pending >= 0) {
+            int c = pending;
+            pending = -1;
+            return c;
+        }
+        int c = in.read();
+        if (c == '<') {
+            return tag();
+        }
+        if (c == '&') {
+            return entity();
+        }
+        return c;
+    }
+
+    /**
+     * Skips a tag, comment or declaration; the opening '<' was read.
+     */
+    private int tag() throws IOException {
+        int c = in.read();
+        if (c == '!') {
+            int c1 = in.read();
+            int c2 = in.read();
+            if ((c1 == '-') && (c2 == '-')) {
+                skipTo("-->");
+                return ' ';
+            }
+            unread(c2);
+            unread(c1);
+        } else if ((c != '/') && (c != '?') && !Character.isLetter((char) c)) {
+            // Not markup, a lone '<'
+            unread(c);
+            return '<';
+        }
+        StringBuffer name = new StringBuffer();
+        boolean inName = c != '/';
+        if (inName && (c >= 0)) {
+            name.append((char) c);
+        }
+        int quote = 0;
+        while ((c = in.read()) >= 0) {
+            if (quote != 0) {
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '>') {
+                break;
+            } else if ((c == '"') || (c == '\'')) {
+                quote = c;
+                inName = false;
+            } else if (inName && Character.isLetterOrDigit((char) c)) {
+                name.append((char) c);
+            } else {
+                inName = false;
+            }
+        }
+        String element = name.toString().toLowerCase();
+        if (element.equals("script") || element.equals("style")) {
+            skipTo("</" + element);
+            skipTo(">");
+        }
+        return ' ';
+    }
+
+    /**
+     * Decodes a character entity; the opening '&' was read.
+     */
+    private int entity() throws IOException {
+        char[] buf = new char[MAX_ENTITY + 1];
+        int n = 0;
+        int c;
+        while ((n < buf.length) && (c = in.read()) >= 0) {
+            buf[n++] = (char) c;
+            if ((c == ';') || !Character.isLetterOrDigit((char) c) && (c != '#')) {
+                break;
+            }
+        }
+        int value = -1;
+        if ((n > 1) && (buf[n - 1] == ';')) {
+            value = decode(new String(buf, 0, n - 1));
+        }
+        if (value < 0) {
+            in.unread(buf, 0, n);
+            return '&';
+        }
+        if (value > 0xFFFF) {
+            // Characters outside the BMP read as a surrogate pair
+            value -= 0x10000;
+            pending = 0xDC00 + (value & 0x3FF);
+            return 0xD800 + (value >> 10);
+        }
+        return value;
+    }
+
+    private static int decode(String name) {
+        if (name.startsWith("#")) {
+            try {
+                int value;
+                if (name.startsWith("#x") || name.startsWith("#X")) {
+                    value = Integer.parseInt(name.substring(2), 16);
+                } else {
+                    value = Integer.parseInt(name.substring(1));
+                }
+                return (value > 0) && (value <= 0x10FFFF) ? value : -1;
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+        }
+        if (name.equals("amp")) {
+            return '&';
+        }
+        if (name.equals("lt")) {
+            return '<';
+        }
+        if (name.equals("gt")) {
+            return '>';
+        }
+        if (name.equals("quot")) {
+            return '"';
+        }
+        if (name.equals("apos")) {
+            return '\'';
+        }
+        for (int i = 0; i < LATIN1.length; i++) {
+            if (LATIN1[i].equals(name)) {
+                return i == 0 ? ' ' : 160 + i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Skips the input up to and including the given text, ignoring case.
+     */
+    private void skipTo(String end) throws IOException {
+        int matched = 0;
+        int c;
+        while ((matched < end.length()) && (c = in.read()) >= 0) {
+            if (Character.toLowerCase((char) c) == end.charAt(matched)) {
+                matched++;
+            } else {
+                matched = (Character.toLowerCase((char) c) == end.charAt(0)) ? 1 : 0;
+            }
+        }
+    }
+
+    private void unread(int c) throws IOException {
+        if (c >= 0) {
+            in.unread(c);
+        }
+    }
+}
@@ -0,0 +1,441 @@
+package com.progdan.parserserver.extract;
+
+import java.io.*;
+
+/**
+ * Decoder for the LZX compression used by the MSCompressed section of CHM
+ * files. Data is decoded one 32K frame at a time; the caller passes the
+ * compressed bytes of each frame as delimited by the CHM reset table, in
+ * order, and calls reset() at every reset interval.
+ */
+public class LZXDecoder {
+    /** Uncompressed size of a frame */
+    public static final int FRAME_SIZE = 0x8000;
+
+    private static final int MIN_MATCH = 2;
+    private static final int NUM_CHARS = 256;
+    private static final int NUM_PRIMARY_LENGTHS = 7;
+    private static final int NUM_SECONDARY_LENGTHS = 249;
+    private static final int PRETREE_NUM_ELEMENTS = 20;
+    private static final int ALIGNED_NUM_ELEMENTS = 8;
+
+    private static final int BLOCKTYPE_VERBATIM = 1;
+    private static final int BLOCKTYPE_ALIGNED = 2;
+    private static final int BLOCKTYPE_UNCOMPRESSED = 3;
+
+    private static final int[] EXTRA_BITS = new int[52];
+    private static final int[] POSITION_BASE = new int[52];
+    static {
+        for (int i = 0, j = 0; i < 51; i += 2) {
+            EXTRA_BITS[i] = j;
+            EXTRA_BITS[i + 1] = j;
+            if ((i != 0) && (j < 17)) {
+                j++;
+            }
+        }
+        for (int i = 0, j = 0; i < 51; i++) {
+            POSITION_BASE[i] = j;
+            j += 1 << EXTRA_BITS[i];
+        }
+    }
+
+    private byte[] window;
+    private int windowPosn;
+    private int mainElements;
+    private int r0, r1, r2;
+    private boolean headerRead;
+    private int blockType;
+    private int blockLength;
+    private int blockRemaining;
+    private int intelFileSize;
+    private int intelCurPos;
+    private boolean intelStarted;
+
+    private Tree pretree = new Tree(PRETREE_NUM_ELEMENTS);
+    private Tree maintree;
+    private Tree lengthtree = new Tree(NUM_SECONDARY_LENGTHS);
+    private Tree alignedtree = new Tree(ALIGNED_NUM_ELEMENTS);
+
+    /** Current frame input */
+    private byte[] in;
+    private int inPos;
+    private int inEnd;
+    private long bitBuffer;
+    private int bitsLeft;
+
+    /**
+     * @param windowBits log2 of the window size, 15 to 21
+     */
+    public LZXDecoder(int windowBits) throws IOException {
+        if ((windowBits < 15) || (windowBits > 21)) {
+            throw new IOException("Unsupported LZX window size 2^" + windowBits);
+        }
+        int positionSlots = (windowBits == 20) ? 42 :
+                            (windowBits == 21) ? 50 : windowBits << 1;
+        window = new byte[1 << windowBits];
+        mainElements = NUM_CHARS + (positionSlots << 3);
+        maintree = new Tree(mainElements);
+        reset();
+    }
+
+    /**
+     * Resets the decoder state, as done by the encoder at every reset
+     * interval.
+     */
+    public void reset() {
+        r0 = r1 = r2 = 1;
+        headerRead = false;
+        blockRemaining = 0;
+        blockType = 0;
+        intelCurPos = 0;
+        intelStarted = false;
+        windowPosn = 0;
+        maintree.clear();
+        lengthtree.clear();
+    }
+
+    /**
+     * Decodes one frame.
+     * @param input compressed data of the frame
+     * @param off start of the frame in input
+     * @param len length of the compressed frame
+     * @param out buffer receiving the frame, at least outLen long
+     * @param outLen uncompressed size of the frame, FRAME_SIZE except for
+     *   the last one
+     */
+    public void decode(byte[] input, int off, int len, byte[] out, int outLen) throws
+            IOException {
+        in = input;
+        inPos = off;
+        inEnd = off + len;
+        bitBuffer = 0;
+        bitsLeft = 0;
+        int framePosn = windowPosn;
+
+        if (!headerRead) {
+            if (readBits(1) == 1) {
+                int hi = readBits(16);
+                int lo = readBits(16);
+                intelFileSize = (hi << 16) | lo;
+            } else {
+                intelFileSize = 0;
+            }
+            headerRead = true;
+        }
+
+        int todo = outLen;
+        while (todo > 0) {
+            if (blockRemaining == 0) {
+                readBlockHeader();
+            }
+            int run = Math.min(blockRemaining, todo);
+            todo -= run;
+            blockRemaining -= run;
+            if (blockType == BLOCKTYPE_UNCOMPRESSED) {
+                if (inPos + run > inEnd) {
+                    throw new IOException("LZX uncompressed block overrun");
+                }
+                System.arraycopy(in, inPos, window, windowPosn, run);
+                inPos += run;
+                windowPosn += run;
+            } else {
+                run = decodeRun(run);
+                if (run < 0) {
+                    // A match ran past the end of the frame
+                    if (-run > blockRemaining) {
+                        throw new IOException("LZX match overrun");
+                    }
+                    blockRemaining += run;
+                    todo += run;
+                }
+            }
+        }
+
+        if (windowPosn - framePosn != outLen) {
+            throw new IOException("LZX frame size mismatch");
+        }
+        System.arraycopy(window, framePosn, out, 0, outLen);
+        if (windowPosn == window.length) {
+            windowPosn = 0;
+        }
+        if ((intelFileSize != 0) && intelStarted && (outLen > 10)) {
+            translate(out, outLen);
+        } else {
+            intelCurPos += outLen;
+        }
+    }
+
+    private void readBlockHeader() throws IOException {
+        if ((blockType == BLOCKTYPE_UNCOMPRESSED) && ((blockLength & 1) == 1)) {
+            // Uncompressed blocks are padded to an even length
+            inPos++;
+        }
+        blockType = readBits(3);
+        int hi = readBits(16);
+        int lo = readBits(8);
+        blockRemaining = blockLength = (hi << 8) | lo;
+        switch (blockType) {
+        case BLOCKTYPE_ALIGNED:
+            for (int i = 0; i < ALIGNED_NUM_ELEMENTS; i++) {
+                alignedtree.lens[i] = readBits(3);
+            }
+            alignedtree.build();
+            // the rest of the header is the same as a verbatim block
+        case BLOCKTYPE_VERBATIM:
+            readLengths(maintree.lens, 0, NUM_CHARS);
+            readLengths(maintree.lens, NUM_CHARS, mainElements);
+            maintree.build();
+            if (maintree.lens[0xE8] != 0) {
+                intelStarted = true;
+            }
+            readLengths(lengthtree.lens, 0, NUM_SECONDARY_LENGTHS);
+            lengthtree.build();
+            break;
+        case BLOCKTYPE_UNCOMPRESSED:
+            intelStarted = true;
+            // Skip 1 to 16 bits to realign on a 16 bit boundary
+            if (bitsLeft == 0) {
+                readBits(16);
+            }
+            bitBuffer = 0;
+            bitsLeft = 0;
+            if (inPos + 12 > inEnd) {
+                throw new IOException("LZX truncated uncompressed header");
+            }
+            r0 = readInt();
+            r1 = readInt();
+            r2 = readInt();
+            break;
+        default:
+            throw new IOException("Invalid LZX block type " + blockType);
+        }
+    }
+
+    /**
+     * Decodes up to run bytes of a verbatim or aligned block.
+     * @return run minus the bytes decoded, negative when the last match
+     *   went past run
+     */
+    private int decodeRun(int run) throws IOException {
+        boolean aligned = blockType == BLOCKTYPE_ALIGNED;
+        while (run > 0) {
+            int element = maintree.decode();
+            if (element < NUM_CHARS) {
+                window[windowPosn++] = (byte) element;
+                run--;
+                continue;
+            }
+            element -= NUM_CHARS;
+            int matchLength = element & NUM_PRIMARY_LENGTHS;
+            if (matchLength == NUM_PRIMARY_LENGTHS) {
+                matchLength += lengthtree.decode();
+            }
+            matchLength += MIN_MATCH;
+
+            int slot = element >>> 3;
+            int matchOffset;
+            if (slot == 0) {
+                matchOffset = r0;
+            } else if (slot == 1) {
+                matchOffset = r1;
+                r1 = r0;
+                r0 = matchOffset;
+            } else if (slot == 2) {
+                matchOffset = r2;
+                r2 = r0;
+                r0 = matchOffset;
+            } else {
+                int extra = (slot >= 36) ? 17 : EXTRA_BITS[slot];
+                matchOffset = POSITION_BASE[slot] - 2;
+                if (aligned && (extra >= 3)) {
+                    if (extra > 3) {
+                        matchOffset += readBits(extra - 3) << 3;
+                    }
+                    matchOffset += alignedtree.decode();
+                } else if (extra > 0) {
+                    matchOffset += readBits(extra);
+                }
+                r2 = r1;
+                r1 = r0;
+                r0 = matchOffset;
+            }
+
+            if (windowPosn + matchLength > window.length) {
+                throw new IOException("LZX match beyond the window");
+            }
+            int src = windowPosn - matchOffset;
+            if (src < 0) {
+                src += window.length;
+                if (src < 0) {
+                    throw new IOException("LZX match offset too large");
+                }
+            }
+            for (int i = 0; i < matchLength; i++) {
+                window[windowPosn++] = window[src++];
+                if (src == window.length) {
+                    src = 0;
+                }
+            }
+            run -= matchLength;
+        }
+        return run;
+    }
+
+    /**
+     * Reads code lengths, coded with the pretree as deltas from the lengths
+     * of the previous block.
+     */
+    private void readLengths(int[] lens, int first, int last) throws
+            IOException {
+        for (int i = 0; i < PRETREE_NUM_ELEMENTS; i++) {
+            pretree.lens[i] = readBits(4);
+        }
+        pretree.build();
+        int x = first;
+        while (x < last) {
+            int z = pretree.decode();
+            if (z == 17) {
+                int n = readBits(4) + 4;
+                while ((n-- > 0) && (x < last)) {
+                    lens[x++] = 0;
+                }
+            } else if (z == 18) {
+                int n = readBits(5) + 20;
+                while ((n-- > 0) && (x < last)) {
+                    lens[x++] = 0;
+                }
+            } else if (z == 19) {
+                int n = readBits(1) + 4;
+                z = pretree.decode();
+                if (z > 16) {
+                    throw new IOException("Invalid LZX code length");
+                }
+                z = lens[x] - z;
+                if (z < 0) {
+                    z += 17;
+                }
+                while ((n-- > 0) && (x < last)) {
+                    lens[x++] = z;
+                }
+            } else {
+                z = lens[x] - z;
+                if (z < 0) {
+                    z += 17;
+                }
+                lens[x++] = z;
+            }
+        }
+    }
+
+    /**
+     * Undoes the Intel E8 call translation of the encoder.
+     */
+    private void translate(byte[] data, int len) {
+        int curPos = intelCurPos;
+        int end = len - 10;
+        int i = 0;
+        while (i < end) {
+            if ((data[i++] & 0xFF) != 0xE8) {
+                curPos++;
+                continue;
+            }
+            int absOff = (data[i] & 0xFF) | ((data[i + 1] & 0xFF) << 8) |
+                         ((data[i + 2] & 0xFF) << 16) | (data[i + 3] << 24);
+            if ((absOff >= -curPos) && (absOff < intelFileSize)) {
+                int relOff = (absOff >= 0) ? absOff - curPos :
+                             absOff + intelFileSize;
+                data[i] = (byte) relOff;
+                data[i + 1] = (byte) (relOff >>> 8);
+                data[i + 2] = (byte) (relOff >>> 16);
+                data[i + 3] = (byte) (relOff >>> 24);
+            }
+            i += 4;
+            curPos += 5;
+        }
+        intelCurPos += len;
+    }
+
+    private int readInt() {
+        int n = (in[inPos] & 0xFF) | ((in[inPos + 1] & 0xFF) << 8) |
+                ((in[inPos + 2] & 0xFF) << 16) | ((in[inPos + 3] & 0xFF) << 24);
+        inPos += 4;
+        return n;
+    }
+
+    /**
+     * Reads n bits, most significant first, from the 16 bit little endian
+     * words of the input. Reading past the end yields zeros.
+     */
+    private int readBits(int n) {
+        while (bitsLeft < n) {
+            int lo = (inPos < inEnd) ? in[inPos] & 0xFF : 0;
+            int hi = (inPos + 1 < inEnd) ? in[inPos + 1] & 0xFF : 0;
+            inPos += 2;
+            bitBuffer = (bitBuffer << 16) | (hi << 8) | lo;
+            bitsLeft += 16;
+        }
+        bitsLeft -= n;
+        int value = (int) (bitBuffer >>> bitsLeft) & ((1 << n) - 1);
+        bitBuffer &= (1L << bitsLeft) - 1;
+        return value;
+    }
+
+    /**
+     * Canonical Huffman tree, decoded one bit at a time.
+     */
+    private class Tree {
+        int[] lens;
+        int[] counts = new int[17];
+        int[] symbols;
+        Tree(int elements) {
+            lens = new int[elements];
+            symbols = new int[elements];
+        }
+
+        void clear() {
+            for (int i = 0; i < lens.length; i++) {
+                lens[i] = 0;
+            }
+        }
+
+        void build() throws IOException {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = 0;
+            }
+            for (int i = 0; i < lens.length; i++) {
+                if (lens[i] > 16) {
+                    throw new IOException("Invalid LZX code length");
+                }
+                counts[lens[i]]++;
+            }
+            counts[0] = 0;
+            int[] offs = new int[17];
+            for (int i = 1; i < 16; i++) {
+                offs[i + 1] = offs[i] + counts[i];
+            }
+            for (int i = 0; i < lens.length; i++) {
+                if (lens[i] != 0) {
+                    symbols[offs[lens[i]]++] = i;
+                }
+            }
+        }
+
+        int decode() throws IOException {
+            int code = 0;
+            int first = 0;
+            int index = 0;
+            for (int len = 1; len <= 16; len++) {
+                code |= readBits(1);
+                int count = counts[len];
+                if (code - first < count) {
+                    return symbols[index + (code - first)];
+                }
+                index += count;
+                first += count;
+                first <<= 1;
+                code <<= 1;
+            }
+            throw new IOException("Invalid LZX Huffman code");
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.progdan.parserserver.extract;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * Reader returning the text painted by a PostScript document. The strings
+ * passed to an operator, which covers show and its variants as well as the
+ * one letter procedures most drivers define for them, are returned
+ * separated by spaces; the prolog and the strings consumed by operators
+ * that do not paint are skipped.
+ */
+public class PSReader extends Reader {
+    /** Operators taking a string that is not painted */
+    private static final Set IGNORED = new HashSet(Arrays.asList(new String[] {
+            "def", "print", "=", "==", "cvn", "cvx", "exec", "run", "known",
+            "get", "put", "search", "anchorsearch", "token", "readstring",
+            "writestring", "readhexstring", "writehexstring", "readline",
+            "stringwidth", "begin", "end", "dup", "pop", "exch", "copy", "load",
+            "where", "eq", "ne", "findfont", "selectfont", "findresource",
+            "defineresource", "undefineresource", "resourcestatus",
+            "setpagedevice", "file", "deletefile", "renamefile", "status",
+            "charpath", "glyphshow", "bind"}));
+
+    /** Header of documents following the document structuring conventions */
+    private static final String DSC_HEADER = "%!PS-Adobe-";
+
+    private PushbackReader in;
+    private boolean prolog;
+    private String text = "";
+    private int pos;
+    private String last;
+    public PSReader(Reader in) throws IOException {
+        super(in);
+        this.in = new PushbackReader(new BufferedReader(in), DSC_HEADER.length());
+        prolog = hasProlog();
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0) {
+            return 0;
+        }
+        while (pos >= text.length()) {
+            if (!nextText()) {
+                return -1;
+            }
+        }
+        int n = Math.min(len, text.length() - pos);
+        text.getChars(pos, pos + n, cbuf, off);
+        pos += n;
+        return n;
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+
+    /**
+     * Only DSC documents tell where their prolog ends, so the prolog is only
+     * skipped when the header says the document conforms.
+     */
+    private boolean hasProlog() throws IOException {
+        char[] header = new char[DSC_HEADER.length()];
+        int n = 0;
+        int r;
+        while ((n < header.length) &&
+               (r = in.read(header, n, header.length - n)) > 0) {
+            n += r;
+        }
+        in.unread(header, 0, n);
+        return new String(header, 0, n).equals(DSC_HEADER);
+    }
+
+    /**
+     * Reads tokens until a painted string is found.
+     * @return false at the end of the document
+     */
+    private boolean nextText() throws IOException {
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '%') {
+                String comment = readLine();
+                if (comment.startsWith("%EndProlog") ||
+                    comment.startsWith("%EndSetup") ||
+                    comment.startsWith("%Page:")) {
+                    prolog = false;
+                }
+            } else if (c == '(') {
+                last = readString();
+            } else if ((c == '<') && (peek() != '<')) {
+                last = readHexString();
+            } else if (Character.isWhitespace((char) c) || (c == '[') ||
+                       (c == ']') || (c == '{') || (c == '}') || (c == '<') ||
+                       (c == '>')) {
+                // separators keep the pending string
+            } else {
+                in.unread(c);
+                String name = readName();
+                if (name.length() == 0) {
+                    in.read();
+                    continue;
+                }
+                if ((last != null) && !prolog && !name.startsWith("/") &&
+                    !Character.isDigit(name.charAt(0)) && (name.charAt(0) != '-') &&
+                    !IGNORED.contains(name)) {
+                    text = last + " ";
+                    pos = 0;
+                    last = null;
+                    return true;
+                }
+                if (!name.startsWith("/") && !Character.isDigit(name.charAt(0)) &&
+                    (name.charAt(0) != '-') && (name.charAt(0) != '.')) {
+                    // An operator that does not paint consumes the string
+                    last = null;
+                }
+            }
+        }
+        return false;
+    }
+
+    private int peek() throws IOException {
+        int c = in.read();
+        if (c >= 0) {
+            in.unread(c);
+        }
+        return c;
+    }
+
+    private String readLine() throws IOException {
+        StringBuffer line = new StringBuffer();
+        int c;
+        while (((c = in.read()) >= 0) && (c != '\n') && (c != '\r')) {
+            line.append((char) c);
+        }
+        return line.toString();
+    }
+
+    private String readName() throws IOException {
+        StringBuffer name = new StringBuffer();
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (Character.isWhitespace((char) c) || ("()<>[]{}%".indexOf(c) >= 0) ||
+                ((c == '/') && (name.length() > 0))) {
+                in.unread(c);
+                break;
+            }
+            name.append((char) c);
+        }
+        return name.toString();
+    }
+
+    /**
+     * Reads a literal string; the opening parenthesis was read.
+     */
+    private String readString() throws IOException {
+        StringBuffer s = new StringBuffer();
+        int depth = 1;
+        int c;
+        while ((c = in.read()) >= 0) {
+            if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                if (--depth == 0) {
+                    break;
+                }
+            } else if (c == '\\') {
+                c = in.read();
+                switch (c) {
+                case 'n':
+                    c = '\n';
+                    break;
+                case 'r':
+                    c = '\r';
+                    break;
+                case 't':
+                    c = '\t';
+                    break;
+                case 'b':
+                    c = '\b';
+                    break;
+                case 'f':
+                    c = '\f';
+                    break;
+                case '\r':
+                    if (peek() == '\n') {
+                        in.read();
+                    }
+                    continue;
+                case '\n':
+                    continue;
+                default:
+                    if ((c >= '0') && (c <= '7')) {
+                        int value = c - '0';
+                        for (int i = 0; i < 2; i++) {
+                            int d = peek();
+                            if ((d < '0') || (d > '7')) {
+                                break;
+                            }
+                            value = (value << 3) + in.read() - '0';
+                        }
+                        c = value & 0xFF;
+                    }
+                }
+                if (c < 0) {
+                    break;
+                }
+            }
+            s.append((char) c);
+        }
+        return s.toString();
+    }
+
+    /**
+     * Reads a hexadecimal string; the opening bracket was read.
+     */
+    private String readHexString() throws IOException {
+        StringBuffer s = new StringBuffer();
+        int high = -1;
+        int c;
+        while (((c = in.read()) >= 0) && (c != '>')) {
+            int digit = Character.digit((char) c, 16);
+            if (digit < 0) {
+                continue;
+            }
+            if (high < 0) {
+                high = digit;
+            } else {
+                s.append((char) ((high << 4) | digit));
+                high = -1;
+            }
+        }
+        if (high >= 0) {
+            s.append((char) (high << 4));
+        }
+        return s.toString();
+    }
+}
@@ -0,0 +1,132 @@
+package com.progdan.parserserver.index;
+
+import java.io.*;
+import java.lang.reflect.Constructor;
+import java.util.*;
+
+import com.progdan.logengine.*;
+import com.progdan.parserserver.index.converters.*;
+
+/**
+ * Maps document formats to the converter that handles them, as configured
+ * in converters.properties. One converter instance per class is created at
+ * startup and shared by all the parser workers.
+ */
+public class ConverterRegistry {
+    private static Logger logger = Logger.getLogger(ConverterRegistry.class.
+            getName());
+    /** Formats sharing the OLE2 compound document signature */
+    private static final String OLE2_FORMATS = " doc xls ppt ";
+    private Hashtable converters;
+    public ConverterRegistry(String reppath, String cmdpath) {
+        logger.debug(">>> Start of ConverterRegistry.ConverterRegistry()***");
+        converters = new Hashtable();
+        Hashtable instances = new Hashtable();
+        try {
+            Properties props = new Properties();
+            props.load(getClass().getResourceAsStream("/" +
+                    "converters.properties"));
+            Enumeration formats = props.propertyNames();
+            while (formats.hasMoreElements()) {
+                String format = (String) formats.nextElement();
+                String name = props.getProperty(format).trim();
+                try {
+                    Converter conv = (Converter) instances.get(name);
+                    if (conv == null) {
+                        Constructor constructor = Class.forName(name).
+                                getConstructor(new Class[] {String.class,
+                                               String.class});
+                        conv = (Converter) constructor.newInstance(new Object[] {
+                                reppath, cmdpath});
+                        instances.put(name, conv);
+                    }
+                    converters.put(format.toLowerCase(), conv);
+                } catch (Exception e) {
+                    logger.error("Converter " + name + " for format " + format +
+                                 " not available");
+                    logger.error(e);
+                }
+            }
+        } catch (IOException e) {
+            logger.error(e);
+        }
+        logger.debug("<<< End of ConverterRegistry.ConverterRegistry()***");
+    }
+
+    /**
+     * Returns the converter for the format. When the content of the source
+     * file shows another format handled by a streaming converter, that
+     * converter is used instead.
+     * @param format the declared format (file extension)
+     * @param source the file to convert, may not exist
+     * @return the converter, or null when the format is not supported
+     */
+    public Converter getConverter(String format, File source) {
+        logger.debug(">>> Start of ConverterRegistry.getConverter()***");
+        Converter conv = (Converter) converters.get(format.toLowerCase());
+        String sniffed = sniff(source);
+        if ((sniffed != null) &&
+            !((sniffed.compareTo("doc") == 0) &&
+              (OLE2_FORMATS.indexOf(" " + format + " ") != -1))) {
+            Converter real = (Converter) converters.get(sniffed);
+            if ((real != null) && (real != conv) &&
+                (real instanceof StreamConverter)) {
+                logger.info("File " + source.getName() + " looks like " +
+                            sniffed + ", converting as such");
+                conv = real;
+            }
+        }
+        logger.debug("<<< End of ConverterRegistry.getConverter()***");
+        return conv;
+    }
+
+    /**
+     * Guesses the format of a file from its first bytes.
+     * @return the format, or null when it is not recognized
+     */
+    private String sniff(File source) {
+        if (!source.exists()) {
+            return null;
+        }
+        byte[] magic = new byte[512];
+        int n = 0;
+        String head;
+        try {
+            InputStream is = new FileInputStream(source);
+            try {
+                int r;
+                while ((n < magic.length) &&
+                       ((r = is.read(magic, n, magic.length - n)) != -1)) {
+                    n += r;
+                }
+            } finally {
+                is.close();
+            }
+            head = new String(magic, 0, n, "ISO-8859-1").trim().toLowerCase();
+        } catch (IOException e) {
+            logger.error(e);
+            return null;
+        }
+        if (head.startsWith("%pdf")) {
+            return "pdf";
+        }
+        if (head.startsWith("{\\rtf")) {
+            return "rtf";
+        }
+        if (head.startsWith("%!")) {
+            return "ps";
+        }
+        if (head.startsWith("itsf")) {
+            return "chm";
+        }
+        if ((n >= 4) && ((magic[0] & 0xFF) == 0xD0) &&
+            ((magic[1] & 0xFF) == 0xCF) && ((magic[2] & 0xFF) == 0x11) &&
+            ((magic[3] & 0xFF) == 0xE0)) {
+            return "doc";
+        }
+        if (head.startsWith("<html") || head.startsWith("<!doctype html")) {
+            return "html";
+        }
+        return null;
+    }
+}
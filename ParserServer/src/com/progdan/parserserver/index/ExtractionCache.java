@@ -0,0 +1,136 @@
+package com.progdan.parserserver.index;
+
+import java.io.*;
+import java.util.*;
+import java.util.zip.*;
+
+import com.progdan.logengine.*;
+import com.progdan.parserserver.index.converters.Converter;
+import com.progdan.parserserver.util.TeeReader;
+
+/**
+ * Text extracted by the streaming converters, kept in reppath/cache so a
+ * document added to another group or indexed again is not converted again.
+ * Document IDs are the SHA-512 of the content, so each document has one
+ * entry, cache/xx/id.gz (xx being the first two characters of the ID): a
+ * gzipped UTF-8 file starting with "name: value" header lines (the
+ * converter class and version, and the metadata the converter reported)
+ * followed by a blank line and the text. An entry is only used when it was
+ * written by the same version of the converter the task is run with, or
+ * when the source file is gone and the document cannot be converted again.
+ */
+public class ExtractionCache {
+    private static Logger logger = Logger.getLogger(ExtractionCache.class.
+            getName());
+    private static final String CHARSET = "UTF-8";
+    private File dir;
+    public ExtractionCache(String reppath) {
+        logger.debug(">>> Start of ExtractionCache.ExtractionCache()***");
+        dir = new File(reppath, "cache");
+        logger.debug("<<< End of ExtractionCache.ExtractionCache()***");
+    }
+
+    /**
+     * @param id the document
+     * @param conv the converter the document would be converted with
+     * @param any whether an entry of another converter or version is used
+     * @return the cached text, or null on a miss
+     */
+    public Reader get(String id, Converter conv, boolean any) {
+        logger.debug(">>> Start of ExtractionCache.get()***");
+        File file = file(id);
+        if (!file.exists()) {
+            logger.debug("<<< End of ExtractionCache.get()***");
+            return null;
+        }
+        BufferedReader in = null;
+        try {
+            in = new BufferedReader(new InputStreamReader(new GZIPInputStream(
+                    new FileInputStream(file)), CHARSET));
+            Hashtable header = readHeader(in);
+            if (!any && !(conv.getClass().getName().equals(header.get(
+                    "converter")) &&
+                          String.valueOf(conv.getVersion()).equals(header.get(
+                                  "version")))) {
+                logger.info("Cached text of " + id + " is from " +
+                            header.get("converter") + " " +
+                            header.get("version") + ", converting again");
+                in.close();
+                in = null;
+            }
+        } catch (IOException e) {
+            logger.error("Cached text of " + id + " is unreadable");
+            logger.error(e);
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException err) {
+                    // already failed
+                }
+                in = null;
+            }
+        }
+        logger.debug("<<< End of ExtractionCache.get()***");
+        return in;
+    }
+
+    /**
+     * Returns a reader copying the text to the entry of the document while
+     * it is indexed. The entry replaces the previous one when the reader is
+     * closed.
+     * @param metadata names and values stored with the text
+     */
+    public Reader put(Reader text, String id, Converter conv,
+                      Hashtable metadata) throws IOException {
+        logger.debug(">>> Start of ExtractionCache.put()***");
+        File file = file(id);
+        file.getParentFile().mkdirs();
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new
+                GZIPOutputStream(new FileOutputStream(tmp)), CHARSET));
+        try {
+            out.write("converter: " + conv.getClass().getName() + "\n");
+            out.write("version: " + conv.getVersion() + "\n");
+            Enumeration names = metadata.keys();
+            while (names.hasMoreElements()) {
+                String name = (String) names.nextElement();
+                out.write(name + ": " + metadata.get(name) + "\n");
+            }
+            out.write("\n");
+        } catch (IOException e) {
+            out.close();
+            tmp.delete();
+            throw e;
+        }
+        logger.debug("<<< End of ExtractionCache.put()***");
+        return new TeeReader(text, file, tmp, out);
+    }
+
+    /**
+     * Removes the entry left half written by a cancelled conversion.
+     */
+    public void cleanup(String id) {
+        File file = file(id);
+        new File(file.getParentFile(), file.getName() + ".tmp").delete();
+    }
+
+    private File file(String id) {
+        String prefix = (id.length() >= 2) ? id.substring(0, 2) : id;
+        return new File(new File(dir, prefix), id + ".gz");
+    }
+
+    private Hashtable readHeader(BufferedReader in) throws IOException {
+        Hashtable header = new Hashtable();
+        String line;
+        while (((line = in.readLine()) != null) && (line.length() > 0)) {
+            int i = line.indexOf(": ");
+            if (i > 0) {
+                header.put(line.substring(0, i), line.substring(i + 2));
+            }
+        }
+        if (line == null) {
+            throw new EOFException("Truncated cache entry");
+        }
+        return header;
+    }
+}
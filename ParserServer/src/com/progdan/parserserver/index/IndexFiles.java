@@ -10,20 +10,45 @@ import com.progdan.parserserver.server.*;
 public class IndexFiles extends Thread {
     private static Logger logger = Logger.getLogger(IndexFiles.class.getName());
     private static String reppath;
-    private static String cmdpath;
-    private LinkedList index;
+    /** Seconds a task stays leased to a worker */
+    private static int lease;
+    /** Attempts before a task is marked as not parsed */
+    private static int retries;
+    /** Seconds before the first retry, doubled on every attempt */
+    private static int backoff;
+    /** Milliseconds a conversion may run before it is cancelled */
+    private static long timeout;
+    private TaskQueue index;
+    private IndexWriters writers;
+    private ConverterRegistry converters;
     private IndexController control;
     private Server server;
-    public IndexFiles(LinkedList index, IndexController control, Server server) {
+    /** Tasks of the conversion being run, watched by the Watchdog */
+    private Vector current;
+    private Converter conv;
+    private long started;
+    private Vector processes;
+    private boolean cancelled;
+    private boolean abandoned;
+    public IndexFiles(TaskQueue index, IndexWriters writers,
+                      ConverterRegistry converters, IndexController control,
+                      Server server) {
         logger.debug(">>> Start of IndexFiles.IndexFiles()***");
         this.index = index;
+        this.writers = writers;
+        this.converters = converters;
         this.control = control;
         this.server = server;
+        processes = new Vector();
         Properties props = new Properties();
         try {
             props.load(getClass().getResourceAsStream("/" + "db.properties"));
             reppath = props.getProperty("reppath", "C:\\EDMIS");
-            cmdpath = props.getProperty("cmdpath", "");
+            lease = Integer.parseInt(props.getProperty("parseLease", "600"));
+            retries = Integer.parseInt(props.getProperty("parseRetries", "3"));
+            backoff = Integer.parseInt(props.getProperty("parseBackoff", "30"));
+            timeout = Long.parseLong(props.getProperty("parseTimeout", "300")) *
+                      1000;
         } catch (IOException e) {
             logger.error(e);
         }
@@ -33,83 +58,230 @@ public class IndexFiles extends Thread {
     public void run() {
         logger.debug(">>> Start of IndexFiles.run()***");
         Hashtable task;
-        Converter conv;
-        boolean result;
-        while (index.size() != 0) {
-            task = (Hashtable) index.removeFirst();
-            result = false;
+        Vector indexed;
+        boolean timedOut;
+        while (!isInterrupted()) {
+            try {
+                task = index.take();
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (task == null) {
+                break;
+            }
+            if (!control.leaseTask(task, lease)) {
+                logger.info("Task " + task.get("id") + " on the group " +
+                            task.get("indexPath") + " is leased or done");
+                index.release(task);
+                continue;
+            }
+            // The tasks of the document on its other groups are indexed in
+            // the same pass
+            Vector tasks = new Vector();
+            tasks.add(task);
+            Vector siblings = index.takeSiblings(task);
+            for (int i = 0; i < siblings.size(); i++) {
+                Hashtable sibling = (Hashtable) siblings.get(i);
+                if (control.leaseTask(sibling, lease)) {
+                    tasks.add(sibling);
+                } else {
+                    index.release(sibling);
+                }
+            }
+            indexed = new Vector();
+            timedOut = false;
             String format = (String) task.get("format");
             String id = (String) task.get("id");
             String parsed = control.fileParsed(id);
-            if ((parsed == null) || (parsed.compareTo("false") != 0)) {
-                if (format.compareTo("txt") == 0) {
-                    conv = new TXT2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("pdf") == 0) {
-                    conv = new PDF2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if ((format.compareTo("htm") == 0) ||
-                    (format.compareTo("html") == 0)) {
-                    conv = new HTML2Text(reppath, cmdpath);
-                    result = conv.index(task);
+            boolean noParse = (parsed != null) && (parsed.compareTo("false") == 0);
+            Converter converter = null;
+            if (!noParse) {
+                converter = converters.getConverter(format,
+                        new File(reppath, id + "." + format));
+                if (converter != null) {
+                    start(tasks, converter);
+                    indexed = converter.index(tasks,
+                            control.getDocument(id), writers);
+                    boolean gone;
+                    synchronized (this) {
+                        current = null;
+                        processes.clear();
+                        timedOut = cancelled;
+                        gone = abandoned;
+                    }
+                    if (gone) {
+                        // The watchdog already failed the tasks; only now
+                        // may another worker take the document
+                        requeue(tasks, converter);
+                        break;
+                    }
+                    // Clear the interrupt of a cancelled conversion
+                    Thread.interrupted();
+                    long elapsed = System.currentTimeMillis() - started;
+                    server.getMetrics().converted(format, elapsed);
+                    logger.info("File " + id + "." + format + " took " +
+                                elapsed + "ms");
+                } else {
+                    // Retrying would not find a converter either
+                    logger.info("No converter for format " + format);
+                    noParse = true;
                 }
-                if (format.compareTo("chm") == 0) {
-                    conv = new CHM2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("ppt") == 0) {
-                    conv = new PPT2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("doc") == 0) {
-                    conv = new DOC2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("xls") == 0) {
-                    conv = new XLS2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("rtf") == 0) {
-                    conv = new RTF2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("ps") == 0) {
-                    conv = new PS2Text(reppath, cmdpath);
-                    result = conv.index(task);
+            }
+            Vector failed = new Vector();
+            for (int i = 0; i < tasks.size(); i++) {
+                Hashtable t = (Hashtable) tasks.get(i);
+                if (indexed.contains(t)) {
+                    server.getMetrics().indexed(format);
+                    index.release(t);
+                } else {
+                    failed.add(t);
                 }
+            }
+            if (!failed.isEmpty()) {
+                fail(failed, converter, timedOut, noParse, true);
+            }
+            server.updateGUI();
+        }
+        server.removeIndexer(this);
+        logger.debug("<<< End of IndexFiles.run()***");
+    }
 
-                if (format.compareTo("c") == 0) {
-                    conv = new C2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("cpp") == 0) {
-                    conv = new CPP2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("h") == 0) {
-                    conv = new H2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("java") == 0) {
-                    conv = new JAVA2Text(reppath, cmdpath);
-                    result = conv.index(task);
-                }
-                if (format.compareTo("sql") == 0) {
-                    conv = new SQL2Text(reppath, cmdpath);
-                    result = conv.index(task);
+    /**
+     * Registers an external process of the running conversion, so it is
+     * destroyed when the conversion is cancelled.
+     */
+    public synchronized void watch(Process proc) {
+        if (cancelled) {
+            proc.destroy();
+        } else {
+            processes.add(proc);
+        }
+    }
+
+    /**
+     * Called by the Watchdog. A conversion past its deadline is cancelled:
+     * its external processes are destroyed and the worker is interrupted.
+     * When the worker is still stuck after another timeout, as in-process
+     * converters cannot always be interrupted, it is abandoned: the task is
+     * failed, a new worker is started and this one exits when it returns.
+     * The document stays busy in the queue until then, so no other worker
+     * converts it at the same time.
+     */
+    void check(long now) {
+        Vector tasks;
+        Converter stuck;
+        synchronized (this) {
+            if ((current == null) || abandoned || (now - started < timeout)) {
+                return;
+            }
+            if (!cancelled) {
+                cancelled = true;
+                Hashtable task = (Hashtable) current.get(0);
+                logger.warn("File " + task.get("id") + "." +
+                            task.get("format") + " timed out after " +
+                            (now - started) + "ms, cancelling");
+                for (int i = 0; i < processes.size(); i++) {
+                    ((Process) processes.get(i)).destroy();
                 }
+                interrupt();
+                return;
             }
-            if (result) {
-                control.completeTask(task);
-                control.parseFile(id);
+            if (now - started < 2 * timeout) {
+                return;
+            }
+            abandoned = true;
+            tasks = current;
+            stuck = conv;
+        }
+        Hashtable task = (Hashtable) tasks.get(0);
+        logger.error("Worker stuck on file " + task.get("id") + "." +
+                     task.get("format") + ", starting a new one");
+        for (int i = 0; i < tasks.size(); i++) {
+            index.abandon((Hashtable) tasks.get(i));
+        }
+        fail(tasks, stuck, true, false, false);
+        server.addIndexer();
+    }
+
+    /**
+     * Hands the tasks failed by the Watchdog back to the queue, once the
+     * abandoned conversion returned. Its files are only cleaned up now, as
+     * the conversion was still writing them when it was abandoned.
+     */
+    private void requeue(Vector tasks, Converter conv) {
+        logger.debug(">>> Start of IndexFiles.requeue()***");
+        conv.cleanup((String) ((Hashtable) tasks.get(0)).get("id"));
+        for (int i = 0; i < tasks.size(); i++) {
+            Hashtable task = (Hashtable) tasks.get(i);
+            Long due = (Long) task.remove("retryAt");
+            if (due == null) {
+                index.release(task);
             } else {
+                index.retry(task, Math.max(0, due.longValue() -
+                                           System.currentTimeMillis()));
+            }
+        }
+        logger.debug("<<< End of IndexFiles.requeue()***");
+    }
+
+    /**
+     * @return whether the worker is running a conversion
+     */
+    public synchronized boolean isBusy() {
+        return (current != null) && !abandoned;
+    }
+
+    private synchronized void start(Vector tasks, Converter conv) {
+        current = tasks;
+        this.conv = conv;
+        started = System.currentTimeMillis();
+        cancelled = false;
+    }
+
+    /**
+     * Retries the tasks of a document after a backoff, or marks the file as
+     * not parsed once they ran out of attempts.
+     * @param release whether to clean up the conversion and hand the tasks
+     *   back to the queue now, or leave it to requeue()
+     */
+    private void fail(Vector tasks, Converter conv, boolean timedOut,
+                      boolean noParse, boolean release) {
+        logger.debug(">>> Start of IndexFiles.fail()***");
+        Hashtable first = (Hashtable) tasks.get(0);
+        String format = (String) first.get("format");
+        String id = (String) first.get("id");
+        if (timedOut) {
+            if (release) {
+                conv.cleanup(id);
+            }
+            control.timeoutFile(id);
+        }
+        for (int i = 0; i < tasks.size(); i++) {
+            Hashtable task = (Hashtable) tasks.get(i);
+            server.getMetrics().failed(format, timedOut);
+            // Tasks without a DocumentIndex row are not retried
+            Integer n = (Integer) task.get("attempts");
+            int attempts = (n == null) ? retries : n.intValue();
+            if (noParse || (attempts >= retries)) {
                 control.noParseFile(id);
+                control.completeTask(task);
+                if (release) {
+                    index.release(task);
+                }
+            } else {
+                int delay = backoff << (attempts - 1);
+                logger.info("Retrying file " + id + "." + format +
+                            " on the group " + task.get("indexPath") +
+                            " in " + delay + "s (attempt " + attempts + ")");
+                control.retryTask(task, delay);
+                if (release) {
+                    index.retry(task, delay * 1000L);
+                } else {
+                    task.put("retryAt", new Long(System.currentTimeMillis() +
+                                                 delay * 1000L));
+                }
             }
-            server.updateGUI();
         }
-        server.removeIndexer();
-        logger.debug("<<< End of IndexFiles.run()***");
+        logger.debug("<<< End of IndexFiles.fail()***");
     }
 }
@@ -0,0 +1,428 @@
+package com.progdan.parserserver.index;
+
+import java.io.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+import com.progdan.parserserver.server.IndexController;
+import com.progdan.parserserver.server.TaskQueue;
+import com.progdan.searchengine.analysis.SimpleAnalyzer;
+import com.progdan.searchengine.document.Document;
+import com.progdan.searchengine.index.IndexReader;
+import com.progdan.searchengine.index.IndexWriter;
+import com.progdan.searchengine.index.InvertedDocument;
+import com.progdan.searchengine.index.Term;
+import com.progdan.searchengine.index.TermDocs;
+
+/**
+ * Keeps one IndexWriter open per document group and commits it every
+ * <code>batch</code> documents or <code>flush</code> milliseconds. The tasks
+ * of a batch are only completed on the database once the batch is on disk,
+ * so a crash before the commit leaves them in DocumentIndex to be parsed
+ * again on the next start; a commit that fails queues them again after the
+ * flush interval. A document indexed again, after a change of its name or language,
+ * replaces its older copy when the batch is committed.
+ */
+public class IndexWriters extends TimerTask {
+    private static Logger logger = Logger.getLogger(IndexWriters.class.getName());
+    /** Written in a group index once none of its paths is left unindexed */
+    private static final String MIGRATED = "path.keyword";
+    private String reppath;
+    private int batch;
+    private long flush;
+    private IndexController control;
+    private TaskQueue index;
+    private Hashtable groups;
+    private Timer timer;
+    public IndexWriters(String reppath, int batch, long flush,
+                        IndexController control, TaskQueue index) {
+        logger.debug(">>> Start of IndexWriters.IndexWriters()***");
+        this.reppath = reppath;
+        this.batch = batch;
+        this.flush = flush;
+        this.control = control;
+        this.index = index;
+        groups = new Hashtable();
+        timer = new Timer(true);
+        timer.schedule(this, flush, flush);
+        Thread migration = new Thread("IndexWriters migration") {
+            public void run() {
+                migrate();
+            }
+        };
+        migration.setDaemon(true);
+        migration.start();
+        logger.debug("<<< End of IndexWriters.IndexWriters()***");
+    }
+
+    /**
+     * Scans the group indexes not marked as migrated at startup, so the
+     * documents indexed before their path was a keyword are indexed again
+     * even on groups that receive no new documents. A group whose writer
+     * is already open is scanned by its first commit instead.
+     */
+    private void migrate() {
+        logger.debug(">>> Start of IndexWriters.migrate()***");
+        String[] dirs = new File(getPath("")).list();
+        for (int i = 0; (dirs != null) && (i < dirs.length); i++) {
+            String indexPath = dirs[i];
+            if (!isGroup(indexPath) ||
+                new File(getPath(indexPath), MIGRATED).exists() ||
+                !IndexReader.indexExists(getPath(indexPath))) {
+                continue;
+            }
+            Group group = getGroup(indexPath);
+            synchronized (group) {
+                if ((group.writer != null) || (group.legacy != null)) {
+                    continue;
+                }
+                IndexReader reader = null;
+                try {
+                    reader = IndexReader.open(getPath(indexPath));
+                    int removed = removeLegacy(reader, indexPath, group);
+                    if (removed > 0) {
+                        logger.info("Removed " + removed +
+                                    " older copies from the group " + indexPath);
+                    }
+                } catch (IOException e) {
+                    logger.error(e);
+                } finally {
+                    if (reader != null) {
+                        try {
+                            reader.close();
+                        } catch (IOException e) {
+                            logger.error(e);
+                        }
+                    }
+                }
+            }
+        }
+        logger.debug("<<< End of IndexWriters.migrate()***");
+    }
+
+    /**
+     * @return whether the directory under reppath/index is the index of a
+     *   document group or of all the documents, and not the index of names
+     */
+    private static boolean isGroup(String dir) {
+        if (dir.equals("all")) {
+            return true;
+        }
+        for (int i = 0; i < dir.length(); i++) {
+            if (!Character.isDigit(dir.charAt(i))) {
+                return false;
+            }
+        }
+        return dir.length() > 0;
+    }
+
+    /**
+     * Analyzes the document the way the group writers would, so it can be
+     * added to any number of groups without being analyzed again.
+     */
+    public InvertedDocument invert(Document doc) throws IOException {
+        return new InvertedDocument(doc, new SimpleAnalyzer());
+    }
+
+    /**
+     * Adds the document to the group index; the task is completed when the
+     * document is committed.
+     */
+    public void addDocument(String indexPath, InvertedDocument doc,
+                            Hashtable task) throws IOException {
+        logger.debug(">>> Start of IndexWriters.addDocument()***");
+        Group group = getGroup(indexPath);
+        synchronized (group) {
+            if (group.writer == null) {
+                group.writer = new IndexWriter(getPath(indexPath),
+                                               new SimpleAnalyzer(), false);
+                group.writer.minMergeDocs = batch;
+                group.opened = System.currentTimeMillis();
+            }
+            group.writer.addDocument(doc);
+            group.tasks.add(task);
+            if (group.tasks.size() >= batch) {
+                commit(indexPath, group);
+            }
+        }
+        logger.debug("<<< End of IndexWriters.addDocument()***");
+    }
+
+    /**
+     * Commits the groups whose oldest pending document waited longer than
+     * the flush interval.
+     */
+    public void run() {
+        long now = System.currentTimeMillis();
+        Enumeration keys = groups.keys();
+        while (keys.hasMoreElements()) {
+            String indexPath = (String) keys.nextElement();
+            Group group = (Group) groups.get(indexPath);
+            synchronized (group) {
+                if ((group.writer != null) && (now - group.opened >= flush)) {
+                    commit(indexPath, group);
+                }
+            }
+        }
+    }
+
+    public void close() {
+        logger.debug(">>> Start of IndexWriters.close()***");
+        timer.cancel();
+        Enumeration keys = groups.keys();
+        while (keys.hasMoreElements()) {
+            String indexPath = (String) keys.nextElement();
+            Group group = (Group) groups.get(indexPath);
+            synchronized (group) {
+                if (group.writer != null) {
+                    commit(indexPath, group);
+                }
+            }
+        }
+        logger.debug("<<< End of IndexWriters.close()***");
+    }
+
+    private synchronized Group getGroup(String indexPath) {
+        Group group = (Group) groups.get(indexPath);
+        if (group == null) {
+            group = new Group();
+            groups.put(indexPath, group);
+        }
+        return group;
+    }
+
+    private void commit(String indexPath, Group group) {
+        logger.debug(">>> Start of IndexWriters.commit()***");
+        try {
+            group.writer.close();
+            logger.info("Committed " + group.tasks.size() +
+                        " files on the group " + indexPath);
+            removeCopies(indexPath, group);
+            control.completeTasks(group.tasks);
+        } catch (IOException e) {
+            logger.error(e);
+            retry(indexPath, group.tasks);
+        }
+        group.writer = null;
+        group.tasks.clear();
+        logger.debug("<<< End of IndexWriters.commit()***");
+    }
+
+    /**
+     * Queues the tasks of a failed commit to be parsed again once the flush
+     * interval has passed, and keeps them leased in DocumentIndex until
+     * then. Once the queue is closed they stay in DocumentIndex for the next
+     * start.
+     */
+    private void retry(String indexPath, Vector tasks) {
+        logger.debug(">>> Start of IndexWriters.retry()***");
+        int delay = (int) Math.max(1, flush / 1000);
+        logger.info("Retrying " + tasks.size() + " files on the group " +
+                    indexPath + " in " + delay + "s");
+        for (int i = 0; i < tasks.size(); i++) {
+            Hashtable task = (Hashtable) tasks.get(i);
+            control.retryTask(task, delay);
+            // A second later than the lease, which the database times
+            task.put("notBefore", new Long(System.currentTimeMillis() +
+                                           (delay + 1) * 1000L));
+            index.add(task);
+        }
+        logger.debug("<<< End of IndexWriters.retry()***");
+    }
+
+    private String getPath(String indexPath) {
+        return reppath + System.getProperty("file.separator") + "index" +
+                System.getProperty("file.separator") + indexPath;
+    }
+
+    /**
+     * Tells if the task may have an older copy in its group: documents
+     * indexed again, tasks read back from DocumentIndex, whose priority is
+     * lost, and tasks retried after a failure. Uploads and imports have none.
+     */
+    private static boolean mayHaveCopies(Hashtable task) {
+        int priority = TaskQueue.getPriority((String) task.get("priority"));
+        return (priority < 0) || (priority == TaskQueue.REINDEX) ||
+                task.containsKey("notBefore");
+    }
+
+    /**
+     * Deletes every copy of the committed documents but the last one added.
+     * Documents keep their order in the index, so the copy with the highest
+     * number is the one of this batch. The index is only opened when the
+     * batch may hold such documents, or to migrate the documents indexed
+     * before their path was a keyword.
+     */
+    private void removeCopies(String indexPath, Group group) {
+        logger.debug(">>> Start of IndexWriters.removeCopies()***");
+        HashSet ids = new HashSet();
+        for (int i = 0; i < group.tasks.size(); i++) {
+            Hashtable task = (Hashtable) group.tasks.get(i);
+            if (mayHaveCopies(task)) {
+                ids.add(task.get("id"));
+            }
+        }
+        if ((group.legacy == null) &&
+            new File(getPath(indexPath), MIGRATED).exists()) {
+            group.legacy = new HashSet();
+        }
+        // Scanned once, then only when a legacy document was indexed again
+        boolean scan = (group.legacy == null);
+        if (!scan && !group.legacy.isEmpty()) {
+            HashSet touched = new HashSet(ids);
+            touched.retainAll(group.legacy);
+            scan = !touched.isEmpty();
+        }
+        if (ids.isEmpty() && !scan) {
+            logger.debug("<<< End of IndexWriters.removeCopies()***");
+            return;
+        }
+        IndexReader reader = null;
+        try {
+            reader = IndexReader.open(getPath(indexPath));
+            int removed = 0;
+            Iterator it = ids.iterator();
+            while (it.hasNext()) {
+                String id = (String) it.next();
+                TermDocs docs = reader.termDocs(new Term("path", id));
+                try {
+                    int last = -1;
+                    while (docs.next()) {
+                        if (last >= 0) {
+                            reader.delete(last);
+                            removed++;
+                        }
+                        last = docs.doc();
+                    }
+                } finally {
+                    docs.close();
+                }
+            }
+            if (scan) {
+                removed += removeLegacy(reader, indexPath, group);
+            }
+            if (removed > 0) {
+                logger.info("Removed " + removed +
+                            " older copies from the group " + indexPath);
+            }
+        } catch (IOException e) {
+            logger.error(e);
+        } finally {
+            if (reader != null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+                    logger.error(e);
+                }
+            }
+        }
+        logger.debug("<<< End of IndexWriters.removeCopies()***");
+    }
+
+    /**
+     * Finds in one pass the documents whose path is only stored, as indexed
+     * before the path was a keyword, and deletes those with a newer copy.
+     * The others are kept in the group and queued to be indexed again, the
+     * first time they are found; once there are none left the index is
+     * marked as migrated.
+     * @return the number of documents deleted
+     */
+    private int removeLegacy(IndexReader reader, String indexPath,
+                             Group group) throws IOException {
+        logger.debug(">>> Start of IndexWriters.removeLegacy()***");
+        Hashtable legacy = new Hashtable();
+        int max = reader.maxDoc();
+        for (int i = 0; i < max; i++) {
+            if (reader.isDeleted(i)) {
+                continue;
+            }
+            String path = reader.document(i).get("path");
+            if ((path == null) || isIndexed(reader, path, i)) {
+                continue;
+            }
+            Vector docs = (Vector) legacy.get(path);
+            if (docs == null) {
+                docs = new Vector();
+                legacy.put(path, docs);
+            }
+            docs.add(new Integer(i));
+        }
+        int removed = 0;
+        HashSet queued = (group.legacy == null) ? new HashSet() : group.legacy;
+        group.legacy = new HashSet();
+        Enumeration paths = legacy.keys();
+        while (paths.hasMoreElements()) {
+            String path = (String) paths.nextElement();
+            Vector docs = (Vector) legacy.get(path);
+            TermDocs copies = reader.termDocs(new Term("path", path));
+            boolean newer;
+            try {
+                newer = copies.next();
+            } finally {
+                copies.close();
+            }
+            // Without a newer copy the last legacy one is kept
+            int keep = newer ? docs.size() : docs.size() - 1;
+            for (int i = 0; i < keep; i++) {
+                reader.delete(((Integer) docs.get(i)).intValue());
+                removed++;
+            }
+            if (!newer) {
+                group.legacy.add(path);
+                if (!queued.contains(path)) {
+                    reindex(indexPath, path);
+                }
+            }
+        }
+        if (group.legacy.isEmpty()) {
+            new File(getPath(indexPath), MIGRATED).createNewFile();
+        } else {
+            logger.info(group.legacy.size() + " documents of the group " +
+                        indexPath + " are indexed without a path keyword");
+        }
+        logger.debug("<<< End of IndexWriters.removeLegacy()***");
+        return removed;
+    }
+
+    /**
+     * Queues a legacy document to be indexed again on the group, so it gets
+     * a path keyword and its legacy copy is removed by the commit.
+     */
+    private void reindex(String indexPath, String id) {
+        String format = (String) control.getDocument(id).get("format");
+        if (format == null) {
+            logger.info("Document " + id + " of the group " + indexPath +
+                        " not found, not indexed again");
+            return;
+        }
+        Hashtable task = new Hashtable();
+        task.put("id", id);
+        task.put("format", format);
+        task.put("indexPath", indexPath);
+        task.put("priority", "reindex");
+        if (control.addIndexTask(task)) {
+            index.add(task);
+        }
+    }
+
+    /**
+     * Tells if the document is found by its path.
+     */
+    private static boolean isIndexed(IndexReader reader, String path, int doc)
+            throws IOException {
+        TermDocs docs = reader.termDocs(new Term("path", path));
+        try {
+            return docs.skipTo(doc) && (docs.doc() == doc);
+        } finally {
+            docs.close();
+        }
+    }
+
+    private class Group {
+        IndexWriter writer;
+        long opened;
+        Vector tasks = new Vector();
+        /** Paths only stored in the index, or null before the first scan */
+        HashSet legacy;
+    }
+}
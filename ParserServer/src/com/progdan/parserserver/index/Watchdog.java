@@ -0,0 +1,36 @@
+package com.progdan.parserserver.index;
+
+import java.util.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * Checks the deadline of the conversion run by every parser worker once a
+ * second. See IndexFiles.check() for what happens to expired conversions.
+ */
+public class Watchdog extends TimerTask {
+    private static Logger logger = Logger.getLogger(Watchdog.class.getName());
+    private Vector workers;
+    private Timer timer;
+    public Watchdog(Vector workers) {
+        logger.debug(">>> Start of Watchdog.Watchdog()***");
+        this.workers = workers;
+        timer = new Timer(true);
+        timer.schedule(this, 1000, 1000);
+        logger.debug("<<< End of Watchdog.Watchdog()***");
+    }
+
+    public void run() {
+        long now = System.currentTimeMillis();
+        Object[] list = workers.toArray();
+        for (int i = 0; i < list.length; i++) {
+            ((IndexFiles) list[i]).check(now);
+        }
+    }
+
+    public void close() {
+        logger.debug(">>> Start of Watchdog.close()***");
+        timer.cancel();
+        logger.debug("<<< End of Watchdog.close()***");
+    }
+}
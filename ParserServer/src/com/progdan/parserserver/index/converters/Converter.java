@@ -1,63 +1,222 @@
 package com.progdan.parserserver.index.converters;
 
 import java.util.Hashtable;
+import java.util.Properties;
+import java.util.Vector;
 import java.io.*;
 
 import com.progdan.logengine.*;
-import com.progdan.searchengine.index.IndexWriter;
-import com.progdan.searchengine.analysis.SimpleAnalyzer;
+import com.progdan.parserserver.index.ExtractionCache;
+import com.progdan.parserserver.index.IndexFiles;
+import com.progdan.parserserver.index.IndexWriters;
+import com.progdan.parserserver.util.CancellableReader;
+import com.progdan.parserserver.util.TeeReader;
 import com.progdan.searchengine.document.*;
+import com.progdan.searchengine.index.InvertedDocument;
 
 public abstract class Converter {
     private static Logger logger = Logger.getLogger(Converter.class.getName());
     protected static String reppath;
     protected static String cmdpath;
-    private IndexWriter writer;
+    /** Whether the text of streaming converters is kept in reppath/body */
+    protected static boolean bodyStore = true;
+    /** Whether the text of streaming converters is kept in reppath/cache */
+    private static boolean cacheStore = true;
+    private static ExtractionCache cache;
+    /** Metadata reported by the conversion run by the current thread */
+    private static ThreadLocal metadata = new ThreadLocal();
+    static {
+        Properties props = new Properties();
+        try {
+            props.load(Converter.class.getResourceAsStream("/" + "db.properties"));
+            bodyStore = Boolean.valueOf(props.getProperty("bodyStore", "true")).
+                        booleanValue();
+            cacheStore = Boolean.valueOf(props.getProperty("extractionCache",
+                    "true")).booleanValue();
+        } catch (IOException e) {
+            logger.error(e);
+        }
+    }
     public Converter(String reppath, String cmdpath) {
         logger.debug(">>> Start of Converter.Converter()***");
         this.reppath = reppath;
         this.cmdpath = cmdpath;
+        if (cacheStore && (cache == null)) {
+            cache = new ExtractionCache(reppath);
+        }
         logger.debug("<<< End of Converter.Converter()***");
     }
 
-    public boolean index(Hashtable task) {
+    /**
+     * Converts the file if needed, analyzes its text once and hands it to
+     * the writer of each group. The text is taken from reppath/body, then
+     * from the extraction cache, and only then converted. The tasks are
+     * completed by the writers once the document is committed.
+     * @param tasks the tasks of one document, one per group
+     * @param fields the fields stored with the document to show it in the
+     *   search results, see IndexController.getDocument()
+     * @return the tasks whose group received the document
+     */
+    public Vector index(Vector tasks, Hashtable fields, IndexWriters writers) {
         logger.debug(">>> Start of Converter.index()***");
-        boolean result = false;
-        String indexPath = (String) task.get("indexPath");
+        Vector result = new Vector();
+        Hashtable task = (Hashtable) tasks.get(0);
         String id = (String) task.get("id");
         String format = (String) task.get("format");
+        Reader text = null;
         try {
             File test = new File(reppath + System.getProperty("file.separator") +
                                  "body", id + ".txt");
-            if (!test.exists()) {
+            File source = new File(reppath, id + "." + format);
+            boolean streamed = false;
+            if (!test.exists() && (this instanceof StreamConverter)) {
+                if (cache != null) {
+                    text = cache.get(id, this, !source.exists());
+                }
+                if (text != null) {
+                    logger.info("Text of " + id + "." + format +
+                                " found in the extraction cache");
+                    text = new CancellableReader(text);
+                    streamed = true;
+                } else if (source.exists()) {
+                    Hashtable meta = new Hashtable();
+                    metadata.set(meta);
+                    try {
+                        text = ((StreamConverter)this).getText(source);
+                    } finally {
+                        metadata.set(null);
+                    }
+                    streamed = true;
+                    if (text != null) {
+                        text = new CancellableReader(text);
+                        if (bodyStore) {
+                            text = new TeeReader(text, test);
+                        }
+                        if (cache != null) {
+                            text = cache.put(text, id, this, meta);
+                        }
+                    }
+                }
+            } else if (!test.exists()) {
                 convertFile(id);
             }
-            if (test.exists()) {
-                writer = new IndexWriter(reppath +
-                                         System.getProperty("file.separator") +
-                                         "index" +
-                                         System.getProperty("file.separator") +
-                                         indexPath,
-                                         new SimpleAnalyzer(), false);
-                logger.info("Indexing file " + id + "." + format +
-                            " on the group " + indexPath);
+            if ((text == null) && !streamed && test.exists()) {
+                text = new InputStreamReader(new FileInputStream(test.
+                        getAbsolutePath()));
+            }
+            if (Thread.currentThread().isInterrupted()) {
+                throw new InterruptedIOException("Conversion of " + id + "." +
+                                                 format + " cancelled");
+            }
+            if (text != null) {
                 Document doc = new Document();
-                //We create a Document with two Fields, one wich contains
-                //the file path, and one the file's contents
-                InputStream is = new FileInputStream(test.getAbsolutePath());
-                doc.add(Field.UnIndexed("path", id));
-                doc.add(Field.Text("body", (Reader)new InputStreamReader(is)));
-                writer.addDocument(doc);
-                is.close();
-                writer.close();
-                result = true;
+                //We create a Document with the file id, the fields shown
+                //in the search results and the file's contents. The id is
+                //a keyword so the writers can remove older copies
+                doc.add(Field.Keyword("path", id));
+                addFields(doc, fields);
+                doc.add(Field.Text("body", text));
+                InvertedDocument inverted = writers.invert(doc);
+                text.close();
+                text = null;
+                if (streamed && (bodyStore || (cache != null))) {
+                    source.delete();
+                }
+                for (int i = 0; i < tasks.size(); i++) {
+                    Hashtable group = (Hashtable) tasks.get(i);
+                    String indexPath = (String) group.get("indexPath");
+                    logger.info("Indexing file " + id + "." + format +
+                                " on the group " + indexPath);
+                    try {
+                        writers.addDocument(indexPath, inverted, group);
+                        result.add(group);
+                    } catch (IOException e) {
+                        logger.error(e);
+                    }
+                }
             }
         } catch (IOException e) {
             logger.error(e);
+        } finally {
+            if (text != null) {
+                try {
+                    text.close();
+                } catch (IOException e) {
+                    // the conversion already failed
+                }
+            }
         }
         logger.debug("<<< End of Converter.index()***");
         return result;
     }
 
-    abstract public void convertFile(String id);
+    /**
+     * The name is tokenized so it can be searched by its words; the other
+     * fields are kept as they are.
+     */
+    private static void addFields(Document doc, Hashtable fields) {
+        String name = (String) fields.get("name");
+        if (name != null) {
+            doc.add(Field.Text("name", name));
+        }
+        String[] keywords = {"format", "language", "size", "date"};
+        for (int i = 0; i < keywords.length; i++) {
+            String value = (String) fields.get(keywords[i]);
+            if (value != null) {
+                doc.add(Field.Keyword(keywords[i], value));
+            }
+        }
+    }
+
+    /**
+     * Converts the file to reppath/body. Converters implementing
+     * StreamConverter do not need to override it.
+     */
+    public void convertFile(String id) {
+    }
+
+    /**
+     * Version of the text extracted by the converter. Converters increase it
+     * when they extract different text, so the documents in the extraction
+     * cache are converted again.
+     */
+    public int getVersion() {
+        return 1;
+    }
+
+    /**
+     * Stores a value with the text in the extraction cache, such as the
+     * page count. Called by StreamConverter.getText().
+     */
+    protected void setMetadata(String name, String value) {
+        Hashtable meta = (Hashtable) metadata.get();
+        if (meta != null) {
+            meta.put(name, value);
+        }
+    }
+
+    /**
+     * Removes the temporary files left by a cancelled conversion.
+     */
+    public void cleanup(String id) {
+        logger.debug(">>> Start of Converter.cleanup()***");
+        new File(reppath + System.getProperty("file.separator") + "body",
+                 id + ".txt.tmp").delete();
+        if (cache != null) {
+            cache.cleanup(id);
+        }
+        logger.debug("<<< End of Converter.cleanup()***");
+    }
+
+    /**
+     * Runs an external converter. Processes started by a parser worker are
+     * destroyed when the watchdog cancels the conversion.
+     */
+    protected Process exec(String command) throws IOException {
+        Process proc = Runtime.getRuntime().exec(command);
+        if (Thread.currentThread() instanceof IndexFiles) {
+            ((IndexFiles) Thread.currentThread()).watch(proc);
+        }
+        return proc;
+    }
 }
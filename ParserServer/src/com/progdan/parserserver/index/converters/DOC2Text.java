@@ -5,7 +5,7 @@ import java.io.*;
 import com.progdan.logengine.*;
 import com.progdan.doc2txt.WordExtractor;
 
-public class DOC2Text extends Converter {
+public class DOC2Text extends Converter implements StreamConverter {
     private static Logger logger = Logger.getLogger(DOC2Text.class.getName());
     public DOC2Text(String reppath, String cmdpath) {
         super(reppath, cmdpath);
@@ -13,28 +13,21 @@ public class DOC2Text extends Converter {
         logger.debug("<<< End of DOC2Text.DOC2Text()***");
     }
 
-    public void convertFile(String id) {
-        logger.debug(">>> Start of DOC2Text.convertFile()***");
+    public Reader getText(File source) throws IOException {
+        logger.debug(">>> Start of DOC2Text.getText()***");
+        String text = null;
+        FileInputStream is = new FileInputStream(source);
         try {
-            File tmp = new File(reppath, id + ".doc");
-            FileInputStream is = new FileInputStream(tmp);
             WordExtractor extractor = new WordExtractor();
-            String text = extractor.extractText(is);
-            tmp = new File(reppath + System.getProperty("file.separator") + "body", id + ".txt");
-            FileWriter out = new FileWriter(tmp);
-            out.write(text);
-            out.flush();
-            out.close();
-            is.close();
-            tmp = new File(reppath, id + ".doc");
-            tmp.delete();
-        } catch (FileNotFoundException e) {
-            logger.error(e);
+            text = extractor.extractText(is);
         } catch (IOException e) {
-            logger.error(e);
+            throw e;
         } catch (Exception e) {
             logger.error(e);
+        } finally {
+            is.close();
         }
-        logger.debug("<<< End of DOC2Text.convertFile()***");
+        logger.debug("<<< End of DOC2Text.getText()***");
+        return (text == null) ? null : new StringReader(text);
     }
 }
@@ -3,9 +3,11 @@ package com.progdan.parserserver.index.converters;
 import java.io.*;
 
 import com.progdan.logengine.*;
-import com.progdan.pdf2txt.ExtractText;
+import com.progdan.pdf2txt.pdmodel.PDDocument;
+import com.progdan.pdf2txt.util.PDFTextStripper;
+import com.progdan.parserserver.util.TextPipe;
 
-public class PDF2Text extends Converter {
+public class PDF2Text extends Converter implements StreamConverter {
     private static Logger logger = Logger.getLogger(PDF2Text.class.getName());
     public PDF2Text(String reppath, String cmdpath) {
         super(reppath, cmdpath);
@@ -13,34 +15,43 @@ public class PDF2Text extends Converter {
         logger.debug("<<< End of PDF2Text.PDF2Text()***");
     }
 
-    public void convertFile(String id) {
-        logger.debug(">>> Start of PDF2Text.convertFile()***");
+    /**
+     * The text is stripped page by page on a TextPipe while it is indexed.
+     */
+    public Reader getText(File source) throws IOException {
+        logger.debug(">>> Start of PDF2Text.getText()***");
+        final PDDocument document = PDDocument.load(source);
         try {
-            File source = new File(reppath, id + ".pdf");
-            File target = new File(reppath + System.getProperty("file.separator") + "body", id + ".txt");
-            ExtractText.main(new String[] {source.getAbsolutePath(),
-                             target.getAbsolutePath()});
-            String txt;
-            String body = new String();
-            BufferedReader is = new BufferedReader(new FileReader(
-                    target));
-            while (((txt = is.readLine()) != null) && (body.compareTo("") == 0)) {
-                body += txt;
+            if (document.isEncrypted()) {
+                document.decrypt("");
             }
-            is.close();
-            if (body.compareTo("") == 0) {
-                System.out.println("Arquivo vazio!!");
-                target.delete();
-            } else {
-                source.delete();
-            }
-        } catch (FileNotFoundException e) {
-            logger.error(e);
+            setMetadata("pages", String.valueOf(document.getPageCount()));
         } catch (IOException e) {
-            logger.error(e);
+            document.close();
+            throw e;
         } catch (Exception e) {
             logger.error(e);
+            document.close();
+            logger.debug("<<< End of PDF2Text.getText()***");
+            return null;
+        }
+        Reader text = new TextPipe("PDF2Text " + source.getName()) {
+            protected void write(Writer out) throws Exception {
+                new PDFTextStripper().writeText(document, out);
+            }
+
+            protected void release() {
+                try {
+                    document.close();
+                } catch (IOException e) {
+                    logger.error(e);
+                }
+            }
+        }.open();
+        logger.debug("<<< End of PDF2Text.getText()***");
+        if (text == null) {
+            logger.info("File " + source.getName() + " has no text");
         }
-        logger.debug("<<< End of PDF2Text.convertFile()***");
+        return text;
     }
 }
@@ -3,64 +3,68 @@ package com.progdan.parserserver.index.converters;
 import java.io.*;
 
 import com.progdan.logengine.*;
+import com.progdan.parserserver.extract.HTMLReader;
 import com.progdan.parserserver.util.StreamCatcher;
 
-public class PPT2Text extends Converter {
+public class PPT2Text extends Converter implements StreamConverter {
     private static Logger logger = Logger.getLogger(PPT2Text.class.getName());
     /** Path to external PPT-Converter */
     private static String PPT2HTML_CONVERTER;
-    /** Path to external HTML-Converter */
-    private static String HTML2TXT_CONVERTER;
     public PPT2Text(String reppath, String cmdpath) {
         super(reppath, cmdpath);
         logger.debug(">>> Start of PPT2Text.PPT2Text()***");
         PPT2HTML_CONVERTER = cmdpath + System.getProperty("file.separator") +
                              "PPT2HTML.exe";
-        HTML2TXT_CONVERTER = cmdpath + System.getProperty("file.separator") +
-                             "HTML2TXT.exe";
         logger.debug("<<< End of PPT2Text.PPT2Text()***");
     }
 
-    public void convertFile(String id) {
-        logger.debug(">>> Start of PPT2Text.convertFile()***");
+    /**
+     * The slides are still converted to HTML by PPT2HTML.exe; the HTML is
+     * read in-process.
+     */
+    public Reader getText(File source) throws IOException {
+        logger.debug(">>> Start of PPT2Text.getText()***");
+        StringWriter text = new StringWriter();
+        String name = source.getName();
+        File tmp = new File(source.getParentFile(),
+                            name.substring(0, name.lastIndexOf('.')) + ".htm");
         try {
-            File tmp = new File(reppath, id + ".ppt");
             String strFilename = "\"" + PPT2HTML_CONVERTER + "\" \"" +
-                                 tmp.getAbsolutePath() + "\"";
-            tmp = new File(reppath, id + ".htm");
+                                 source.getAbsolutePath() + "\"";
             FileOutputStream fos = new FileOutputStream(tmp.getAbsolutePath());
-            Process proc = Runtime.getRuntime().exec(strFilename);
+            Process proc = exec(strFilename);
             StreamCatcher outputCatcher = new StreamCatcher(proc.getInputStream(),
                     fos);
             outputCatcher.start();
             proc.waitFor();
+            outputCatcher.join();
             fos.flush();
             fos.close();
 
-            strFilename = "\"" + HTML2TXT_CONVERTER + "\" \"" +
-                          tmp.getAbsolutePath() + "\"";
-            tmp = new File(reppath + System.getProperty("file.separator") + "body", id + ".txt");
-            strFilename += " \"" + tmp.getAbsolutePath() + "\"";
-            tmp = new File(reppath, "output.txt");
-            fos = new FileOutputStream(tmp.getAbsolutePath());
-            proc = Runtime.getRuntime().exec(strFilename);
-            outputCatcher = new StreamCatcher(proc.getInputStream(), fos);
-            outputCatcher.start();
-            proc.waitFor();
-            fos.flush();
-            fos.close();
-            tmp.delete();
-            tmp = new File(reppath, id + ".htm");
-            tmp.delete();
-            tmp = new File(reppath, id + ".ppt");
-            tmp.delete();
-        } catch (FileNotFoundException e) {
-            logger.error(e);
-        } catch (IOException e) {
-            logger.error(e);
+            Reader html = HTMLReader.open(new FileInputStream(tmp));
+            char[] buf = new char[4096];
+            int n;
+            while ((n = html.read(buf)) > 0) {
+                text.write(buf, 0, n);
+            }
+            html.close();
         } catch (InterruptedException e) {
             logger.error(e);
+            logger.debug("<<< End of PPT2Text.getText()***");
+            return null;
+        } finally {
+            tmp.delete();
         }
-        logger.debug("<<< End of PPT2Text.convertFile()***");
+        logger.debug("<<< End of PPT2Text.getText()***");
+        if (text.getBuffer().toString().trim().length() == 0) {
+            logger.info("File " + source.getName() + " has no text");
+            return null;
+        }
+        return new StringReader(text.toString());
+    }
+
+    public void cleanup(String id) {
+        super.cleanup(id);
+        new File(reppath, id + ".htm").delete();
     }
 }
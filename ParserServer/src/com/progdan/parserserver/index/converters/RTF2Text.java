@@ -5,7 +5,7 @@ import java.io.*;
 import com.progdan.logengine.*;
 import com.progdan.rtf2txt.RTFConverter;
 
-public class RTF2Text extends Converter {
+public class RTF2Text extends Converter implements StreamConverter {
     private static Logger logger = Logger.getLogger(RTF2Text.class.getName());
     public RTF2Text(String reppath, String cmdpath) {
         super(reppath, cmdpath);
@@ -13,28 +13,23 @@ public class RTF2Text extends Converter {
         logger.debug("<<< End of RTF2Text.RTF2Text()***");
     }
 
-    public void convertFile(String id) {
-        logger.debug(">>> Start of RTF2Text.convertFile()***");
-        try{
-            RTFConverter extractor = new RTFConverter();
-            File tmp = new File(reppath, id + ".rtf");
-            FileInputStream is = new FileInputStream(tmp);
-            byte[] bytearray = new byte[(int) tmp.length()];
-            is.read(bytearray);
-            String text = extractor.convertToText(bytearray);
+    public Reader getText(File source) throws IOException {
+        logger.debug(">>> Start of RTF2Text.getText()***");
+        RTFConverter extractor = new RTFConverter();
+        byte[] bytearray = new byte[(int) source.length()];
+        DataInputStream is = new DataInputStream(new FileInputStream(source));
+        try {
+            is.readFully(bytearray);
+        } finally {
             is.close();
-            tmp = new File(reppath + System.getProperty("file.separator") + "body", id + ".txt");
-            FileWriter out = new FileWriter(tmp);
-            out.write(text);
-            out.flush();
-            out.close();
-            tmp = new File(reppath, id + ".rtf");
-            tmp.delete();
-        }catch(FileNotFoundException e){
-            logger.error(e);
-        }catch(IOException e){
+        }
+        String text = null;
+        try {
+            text = extractor.convertToText(bytearray);
+        } catch (IllegalArgumentException e) {
             logger.error(e);
         }
-        logger.debug("<<< End of RTF2Text.convertFile()***");
+        logger.debug("<<< End of RTF2Text.getText()***");
+        return (text == null) ? null : new StringReader(text);
     }
 }
@@ -0,0 +1,16 @@
+package com.progdan.parserserver.index.converters;
+
+import java.io.*;
+
+/**
+ * Converter that extracts the text of a file in-process. The text is read
+ * by the indexer directly, kept in the extraction cache and only copied to
+ * the body store when the bodyStore property is set.
+ */
+public interface StreamConverter {
+    /**
+     * @param source the file to convert
+     * @return the text of the file, or null when it has no text
+     */
+    public Reader getText(File source) throws IOException;
+}
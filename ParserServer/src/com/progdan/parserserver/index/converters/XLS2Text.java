@@ -5,8 +5,9 @@ import java.io.*;
 import com.progdan.logengine.*;
 import com.progdan.xls2txt.*;
 import com.progdan.xls2txt.read.biff.BiffException;
+import com.progdan.parserserver.util.TextPipe;
 
-public class XLS2Text extends Converter {
+public class XLS2Text extends Converter implements StreamConverter {
     private static Logger logger = Logger.getLogger(XLS2Text.class.getName());
     public XLS2Text(String reppath, String cmdpath) {
         super(reppath, cmdpath);
@@ -14,46 +15,52 @@ public class XLS2Text extends Converter {
         logger.debug("<<< End of XLS2Text.XLS2Text()***");
     }
 
-    public void convertFile(String id) {
-        logger.debug(">>> Start of XLS2Text.convertFile()***");
+    /**
+     * The cells are written sheet by sheet on a TextPipe while they are
+     * indexed.
+     */
+    public Reader getText(File source) throws IOException {
+        logger.debug(">>> Start of XLS2Text.getText()***");
+        final Workbook workbook;
         try {
-            File tmp = new File(reppath, id + ".xls");
-            String text = new String();
-            Workbook workbook = Workbook.getWorkbook(tmp);
-            for (int nSheet = 0; nSheet < workbook.getNumberOfSheets();
-                              nSheet++) {
-                Sheet sheet = workbook.getSheet(nSheet);
-                text += sheet.getName() + "\n";
-                Cell[] row = null;
-                for (int i = 0; i < sheet.getRows(); i++) {
-                    row = sheet.getRow(i);
-                    // Find the last non-blank entry in the row
-                    int nonblank = 0;
-                    for (int j = row.length - 1; j >= 0; j--) {
-                        if (row[j].getType() != CellType.EMPTY) {
-                            nonblank = j;
-                            break;
+            workbook = Workbook.getWorkbook(source);
+        } catch (BiffException e) {
+            logger.error(e);
+            logger.debug("<<< End of XLS2Text.getText()***");
+            return null;
+        }
+        Reader text = new TextPipe("XLS2Text " + source.getName()) {
+            protected void write(Writer out) throws Exception {
+                for (int nSheet = 0; nSheet < workbook.getNumberOfSheets();
+                                  nSheet++) {
+                    Sheet sheet = workbook.getSheet(nSheet);
+                    out.write(sheet.getName());
+                    out.write("\n");
+                    Cell[] row = null;
+                    for (int i = 0; i < sheet.getRows(); i++) {
+                        row = sheet.getRow(i);
+                        // Find the last non-blank entry in the row
+                        int nonblank = 0;
+                        for (int j = row.length - 1; j >= 0; j--) {
+                            if (row[j].getType() != CellType.EMPTY) {
+                                nonblank = j;
+                                break;
+                            }
                         }
+                        for (int j = 0; j < nonblank; j++) {
+                            out.write(row[j].getContents());
+                            out.write(" ");
+                        }
+                        out.write("\n");
                     }
-                    for (int j = 0; j < nonblank; j++) {
-                        text += row[j].getContents() + " ";
-                    }
-                    text += "\n";
                 }
             }
-            workbook.close();
-            tmp = new File(reppath + System.getProperty("file.separator") + "body", id + ".txt");
-            FileWriter out = new FileWriter(tmp);
-            out.write(text);
-            out.flush();
-            out.close();
-            tmp = new File(reppath, id + ".xls");
-            tmp.delete();
-        } catch (IOException e) {
-            logger.error(e);
-        } catch (BiffException e) {
-            logger.error(e);
-        }
-        logger.debug("<<< End of XLS2Text.convertFile()***");
+
+            protected void release() {
+                workbook.close();
+            }
+        }.open();
+        logger.debug("<<< End of XLS2Text.getText()***");
+        return text;
     }
 }
@@ -1,37 +1,216 @@
 package com.progdan.parserserver.server;
 
+import java.io.*;
 import java.sql.*;
 import java.util.*;
 
 import com.progdan.logengine.*;
 import com.progdan.parserserver.database.*;
 
+/**
+ * Database access of the Parser Server. The parser workers, the listener
+ * and the index writers call it concurrently, so every method takes its own
+ * connection from a bounded pool and runs statements prepared once per
+ * connection.
+ */
 public class IndexController {
     private static Logger logger = Logger.getLogger(IndexController.class.
             getName());
-    private DatabaseController bd;
-    private Connection conn;
+    private static final String DOCUMENT =
+            "SELECT DocumentName, DocumentFormat, LanguageID, DocumentSize, DocumentDate FROM Documents WHERE DocumentID=?";
+    private static final String FILE_PARSED =
+            "SELECT DocumentData FROM DocumentData WHERE DocumentID=? AND DocumentDataTypeID=1";
+    private static final String INDEX_TASKS =
+            "SELECT DocumentIndexID, Documents.DocumentID, DocumentGroup, DocumentFormat, DocumentIndexAttempts, "
+            + "GREATEST(0, UNIX_TIMESTAMP(DocumentIndexLease) - UNIX_TIMESTAMP()) AS DocumentIndexDelay "
+            + "FROM DocumentIndex NATURAL JOIN Documents ORDER BY DocumentIndexID";
+    /** Only a row free to lease; a leased row may be converting old data */
+    private static final String FIND_TASK =
+            "SELECT DocumentIndexID, DocumentIndexAttempts FROM DocumentIndex WHERE DocumentID=? AND DocumentGroup=? "
+            + "AND (DocumentIndexLease IS NULL OR DocumentIndexLease<=NOW())";
+    private static final String INSERT_TASK =
+            "INSERT INTO DocumentIndex (DocumentID, DocumentGroup) VALUES(?,?)";
+    private static final String LEASE_TASK =
+            "UPDATE DocumentIndex SET DocumentIndexLease=DATE_ADD(NOW(), INTERVAL ? SECOND), "
+            + "DocumentIndexAttempts=DocumentIndexAttempts+1 WHERE DocumentIndexID=? "
+            + "AND (DocumentIndexLease IS NULL OR DocumentIndexLease<=NOW())";
+    private static final String RETRY_TASK =
+            "UPDATE DocumentIndex SET DocumentIndexLease=DATE_ADD(NOW(), INTERVAL ? SECOND) WHERE DocumentIndexID=?";
+    private static final String DELETE_TASK =
+            "DELETE FROM DocumentIndex WHERE DocumentIndexID=?";
+    private static final String DELETE_GROUP_TASK =
+            "DELETE FROM DocumentIndex WHERE DocumentID=? AND DocumentGroup=?";
+    private static final String INSERT_DATA =
+            "INSERT INTO DocumentData (DocumentID, DocumentDataTypeID, DocumentData) VALUES(?,?,?)";
+    private static final String FIND_DATA =
+            "SELECT DocumentDataID, DocumentData FROM DocumentData WHERE DocumentID=? AND DocumentDataTypeID=?";
+    private static final String UPDATE_DATA =
+            "UPDATE DocumentData SET DocumentData=? WHERE DocumentDataID=?";
+    /** Most rows changed by one statement of completeTasks() */
+    private static final int CHUNK = 100;
+    private static final String MANUAL_PARSE =
+            "UPDATE DocumentData SET DocumentData='true' WHERE DocumentDataTypeID=1 AND DocumentData='false' AND DocumentID=?";
+    private static final String COUNT_FILES = "SELECT COUNT(*) FROM Documents";
+    private static final String COUNT_PARSED =
+            "SELECT COUNT(*) FROM DocumentData WHERE DocumentDataTypeID=1 AND DocumentData=?";
+    private static final String NO_PARSED_FILES =
+            "SELECT DocumentID FROM DocumentData WHERE DocumentDataTypeID=1 AND DocumentData='false'";
+    private static final String FIND_DATA_TYPE =
+            "SELECT DocumentDataTypeID FROM DocumentDataTypes WHERE DocumentDataTypeName=?";
+    private static final String INSERT_DATA_TYPE =
+            "INSERT INTO DocumentDataTypes (DocumentDataTypeName) VALUES(?)";
+    private ConnectionPool pool;
+    /** DocumentDataTypeID counting the timed out conversions of a file */
+    private String timeoutType;
+    private Statistics stats;
     public IndexController() {
         logger.debug(">>> Start of IndexController.IndexController()***");
-        bd = new MySQLController();
+        DatabaseController bd = new MySQLController();
         bd.testDriver();
-        conn = bd.getConnection();
+        int size = 8;
+        try {
+            Properties props = new Properties();
+            props.load(getClass().getResourceAsStream("/" + "db.properties"));
+            size = Integer.parseInt(props.getProperty("dbPool", "8"));
+        } catch (IOException e) {
+            logger.error(e);
+        }
+        pool = new ConnectionPool(bd, size);
+        upgradeTasks();
+        timeoutType = getDataType("ParseTimeouts");
+        stats = new Statistics(this);
         logger.debug("<<< End of IndexController.IndexController()***");
     }
 
+    /**
+     * Uses the pool as it is, without upgrading the tables or counting the
+     * files, for subclasses that keep the tasks elsewhere, as the tests do.
+     */
+    protected IndexController(ConnectionPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Closes the pooled connections.
+     */
+    public void close() {
+        logger.debug(">>> Start of IndexController.close()***");
+        pool.close();
+        logger.debug("<<< End of IndexController.close()***");
+    }
+
+    /**
+     * Adds the lease columns to a DocumentIndex table created by an older
+     * release, so the table can be used as the durable task queue.
+     */
+    private void upgradeTasks() {
+        logger.debug(">>> Start of IndexController.upgradeTasks()***");
+        PooledConnection pc = null;
+        try {
+            pc = pool.get();
+            Statement s = pc.createStatement();
+            try {
+                ResultSet rs = s.executeQuery(
+                        "SHOW COLUMNS FROM DocumentIndex LIKE 'DocumentIndexLease'");
+                boolean found = rs.next();
+                rs.close();
+                if (!found) {
+                    logger.info("Table DocumentIndex upgrade");
+                    s.executeUpdate("ALTER TABLE DocumentIndex "
+                                    + "ADD DocumentIndexLease DATETIME, "
+                                    + "ADD DocumentIndexAttempts INT UNSIGNED NOT NULL DEFAULT 0");
+                }
+            } finally {
+                s.close();
+            }
+        } catch (SQLException e) {
+            logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
+        logger.debug("<<< End of IndexController.upgradeTasks()***");
+    }
+
+    /**
+     * @return the DocumentDataTypeID of the named type, created if missing
+     */
+    private String getDataType(String name) {
+        logger.debug(">>> Start of IndexController.getDataType()***");
+        String result = null;
+        PooledConnection pc = null;
+        try {
+            pc = pool.get();
+            result = getString(pc, FIND_DATA_TYPE, name);
+            if (result == null) {
+                PreparedStatement ps = pc.prepare(INSERT_DATA_TYPE);
+                ps.setString(1, name);
+                ps.executeUpdate();
+                result = getString(pc, FIND_DATA_TYPE, name);
+            }
+        } catch (SQLException e) {
+            logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
+        logger.debug("<<< End of IndexController.getDataType()***");
+        return result;
+    }
+
+    public Statistics getStatistics() {
+        return stats;
+    }
+
+    /**
+     * Reads the fields of the document stored in the indexes to show the
+     * search results: name, format, language, size and date.
+     * @return the fields by name, empty if the document was not found
+     */
+    public Hashtable getDocument(String id) {
+        logger.debug(">>> Start of IndexController.getDocument()***");
+        Hashtable result = new Hashtable();
+        PooledConnection pc = null;
+        try {
+            pc = pool.get();
+            PreparedStatement ps = pc.prepare(DOCUMENT);
+            ps.setString(1, id);
+            ResultSet rs = ps.executeQuery();
+            try {
+                if (rs.next()) {
+                    put(result, "name", rs.getString("DocumentName"));
+                    put(result, "format", rs.getString("DocumentFormat"));
+                    put(result, "language", rs.getString("LanguageID"));
+                    put(result, "size", rs.getString("DocumentSize"));
+                    put(result, "date", rs.getString("DocumentDate"));
+                }
+            } finally {
+                rs.close();
+            }
+        } catch (SQLException e) {
+            logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
+        logger.debug("<<< End of IndexController.getDocument()***");
+        return result;
+    }
+
+    private static void put(Hashtable fields, String name, String value) {
+        if (value != null) {
+            fields.put(name, value);
+        }
+    }
+
     public String fileParsed(String id) {
         logger.debug(">>> Start of IndexController.getFile()***");
         String result = null;
+        PooledConnection pc = null;
         try {
-            String sql =
-                    "SELECT DocumentData FROM DocumentData WHERE DocumentID='" +
-                    id + "' AND DocumentDataTypeID=1";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            if (rs.next()) {
-                result = rs.getString("DocumentData");
-            }
+            pc = pool.get();
+            result = getString(pc, FILE_PARSED, id);
         } catch (SQLException e) {
             logger.error(e);
+        } finally {
+            pool.release(pc);
         }
         logger.debug("<<< End of IndexController.getFile()***");
         return result;
@@ -41,139 +220,484 @@ public class IndexController {
         logger.debug(">>> Start of IndexController.getIndexTasks()***");
         Hashtable task;
         LinkedList tasks = new LinkedList();
+        PooledConnection pc = null;
         try {
-            String sql = "SELECT Documents.DocumentID, DocumentGroup, DocumentFormat FROM DocumentIndex NATURAL JOIN Documents";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                task = new Hashtable();
-                task.put("indexPath", rs.getString("DocumentGroup"));
-                task.put("id", rs.getString("DocumentID"));
-                task.put("format", rs.getString("DocumentFormat"));
-                tasks.add(task);
+            pc = pool.get();
+            ResultSet rs = pc.prepare(INDEX_TASKS).executeQuery();
+            try {
+                long now = System.currentTimeMillis();
+                while (rs.next()) {
+                    task = new Hashtable();
+                    task.put("indexID", rs.getString("DocumentIndexID"));
+                    task.put("indexPath", rs.getString("DocumentGroup"));
+                    task.put("id", rs.getString("DocumentID"));
+                    task.put("format", rs.getString("DocumentFormat"));
+                    task.put("attempts",
+                             new Integer(rs.getInt("DocumentIndexAttempts")));
+                    task.put("notBefore", new Long(now +
+                            rs.getLong("DocumentIndexDelay") * 1000));
+                    tasks.add(task);
+                }
+            } finally {
+                rs.close();
             }
         } catch (SQLException e) {
             logger.error(e);
+        } finally {
+            pool.release(pc);
         }
         logger.debug("<<< End of IndexController.getIndexTasks()***");
         return tasks;
     }
 
-    public void noParseFile(String id) {
-        logger.debug(">>> Start of IndexController.addFile()***");
+    /**
+     * Binds a task received from a client to its DocumentIndex row, inserting
+     * the row when the client did not, so the task survives a restart. A row
+     * still leased, by a worker, a batch waiting for its commit or a retry
+     * backoff, is not reused: the document may have changed since it was
+     * read, as when EDMIS indexes it again after a rename, so a new row is
+     * inserted and the document is indexed once more.
+     * @return whether the task is stored in DocumentIndex
+     */
+    public boolean addIndexTask(Hashtable task) {
+        logger.debug(">>> Start of IndexController.addIndexTask()***");
+        String id = (String) task.get("id");
+        String docGroup = (String) task.get("indexPath");
+        boolean result = false;
+        PooledConnection pc = null;
         try {
-            String sql = "SELECT * FROM DocumentData WHERE DocumentID='" +
-                         id + "'";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            if (!rs.next()) {
-                sql = "INSERT INTO DocumentData (DocumentID, DocumentDataTypeID, DocumentData) VALUES('" +
-                      id + "',1,'false')";
-                bd.executeUpdate(conn, sql);
+            pc = pool.get();
+            result = findTask(pc, task);
+            if (!result) {
+                PreparedStatement ps = pc.prepare(INSERT_TASK);
+                ps.setString(1, id);
+                ps.setString(2, docGroup);
+                ps.executeUpdate();
+                result = findTask(pc, task);
             }
         } catch (SQLException e) {
             logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
+        logger.debug("<<< End of IndexController.addIndexTask()***");
+        return result;
+    }
+
+    /**
+     * Leases the task for the given number of seconds. Fails when another
+     * worker holds an unexpired lease or the task was already completed.
+     */
+    public boolean leaseTask(Hashtable task, int seconds) {
+        logger.debug(">>> Start of IndexController.leaseTask()***");
+        String indexID = (String) task.get("indexID");
+        if (indexID == null) {
+            logger.debug("<<< End of IndexController.leaseTask()***");
+            return true;
+        }
+        boolean result = false;
+        PooledConnection pc = null;
+        try {
+            pc = pool.get();
+            PreparedStatement ps = pc.prepare(LEASE_TASK);
+            ps.setInt(1, seconds);
+            ps.setString(2, indexID);
+            result = ps.executeUpdate() == 1;
+        } catch (SQLException e) {
+            logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
+        if (result) {
+            Integer attempts = (Integer) task.get("attempts");
+            task.put("attempts", new Integer((attempts == null) ? 1 :
+                    attempts.intValue() + 1));
+        }
+        logger.debug("<<< End of IndexController.leaseTask()***");
+        return result;
+    }
+
+    /**
+     * Keeps the task leased for the given number of seconds before it may
+     * be retried.
+     */
+    public void retryTask(Hashtable task, int seconds) {
+        logger.debug(">>> Start of IndexController.retryTask()***");
+        PooledConnection pc = null;
+        try {
+            pc = pool.get();
+            PreparedStatement ps = pc.prepare(RETRY_TASK);
+            ps.setInt(1, seconds);
+            ps.setString(2, (String) task.get("indexID"));
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
+        logger.debug("<<< End of IndexController.retryTask()***");
+    }
+
+    public void noParseFile(String id) {
+        logger.debug(">>> Start of IndexController.addFile()***");
+        if (addParsed(id, "false")) {
+            stats.addNoParsed(1);
         }
         logger.debug("<<< End of IndexController.addFile()***");
     }
 
-    public void parseFile(String id) {
-        logger.debug(">>> Start of IndexController.parseFile()***");
+    /**
+     * Counts a conversion of the file cancelled by the watchdog.
+     */
+    public void timeoutFile(String id) {
+        logger.debug(">>> Start of IndexController.timeoutFile()***");
+        PooledConnection pc = null;
         try {
-            String sql = "SELECT * FROM DocumentData WHERE DocumentID='" +
-                         id + "'";
-            ResultSet rs = bd.executeQuery(conn, sql);
-            if (!rs.next()) {
-                sql = "INSERT INTO DocumentData (DocumentID, DocumentDataTypeID, DocumentData) VALUES('" +
-                      id + "',1,'true')";
-                bd.executeUpdate(conn, sql);
+            pc = pool.get();
+            PreparedStatement ps = pc.prepare(FIND_DATA);
+            ps.setString(1, id);
+            ps.setString(2, timeoutType);
+            String dataID = null;
+            int n = 1;
+            ResultSet rs = ps.executeQuery();
+            try {
+                if (rs.next()) {
+                    dataID = rs.getString("DocumentDataID");
+                    n = Integer.parseInt(rs.getString("DocumentData")) + 1;
+                }
+            } finally {
+                rs.close();
             }
+            if (dataID != null) {
+                ps = pc.prepare(UPDATE_DATA);
+                ps.setString(1, String.valueOf(n));
+                ps.setString(2, dataID);
+            } else {
+                ps = pc.prepare(INSERT_DATA);
+                ps.setString(1, id);
+                ps.setString(2, timeoutType);
+                ps.setString(3, "1");
+            }
+            ps.executeUpdate();
         } catch (SQLException e) {
             logger.error(e);
+        } catch (NumberFormatException e) {
+            logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
+        logger.debug("<<< End of IndexController.timeoutFile()***");
+    }
+
+    public void parseFile(String id) {
+        logger.debug(">>> Start of IndexController.parseFile()***");
+        if (addParsed(id, "true")) {
+            stats.addParsed(1);
         }
         logger.debug("<<< End of IndexController.parseFile()***");
     }
 
     public void manualParseFile(String id) {
         logger.debug(">>> Start of IndexController.manualParseFile()***");
-        String sql = "UPDATE DocumentData SET DocumentData='true' WHERE DocumentDataTypeID=1 AND DocumentID='" +
-                     id + "'";
-        bd.executeUpdate(conn, sql);
+        int n = 0;
+        PooledConnection pc = null;
+        try {
+            pc = pool.get();
+            PreparedStatement ps = pc.prepare(MANUAL_PARSE);
+            ps.setString(1, id);
+            n = ps.executeUpdate();
+        } catch (SQLException e) {
+            logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
+        if (n > 0) {
+            stats.addParsed(n);
+            stats.addNoParsed(-n);
+        }
         logger.debug("<<< End of IndexController.manualParseFile()***");
     }
 
     public void completeTask(Hashtable task) {
         logger.debug(">>> Start of IndexController.completeTask()***");
-        String id = (String) task.get("id");
-        String docGroup = (String) task.get("indexPath");
-        String sql = "DELETE FROM DocumentIndex WHERE DocumentID='" +
-                     id + "' AND DocumentGroup='" + docGroup + "'";
-        bd.executeUpdate(conn, sql);
+        String indexID = (String) task.get("indexID");
+        PooledConnection pc = null;
+        try {
+            pc = pool.get();
+            PreparedStatement ps;
+            if (indexID != null) {
+                ps = pc.prepare(DELETE_TASK);
+                ps.setString(1, indexID);
+            } else {
+                ps = pc.prepare(DELETE_GROUP_TASK);
+                ps.setString(1, (String) task.get("id"));
+                ps.setString(2, (String) task.get("indexPath"));
+            }
+            ps.executeUpdate();
+        } catch (SQLException e) {
+            logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
         logger.debug("<<< End of IndexController.completeTask()***");
     }
 
-    public int countFiles() {
-        logger.debug(
-                ">>> Start of IndexController.countFiles()***");
-        int n = 0;
-        String sql = "SELECT COUNT(*) FROM Documents";
-        ResultSet rs = bd.executeQuery(conn, sql);
+    /**
+     * Completes the tasks of a committed batch and marks their files as
+     * parsed in one transaction, with a statement per CHUNK rows instead of
+     * three per task. Nothing is changed if it fails, so the tasks are
+     * parsed again once their lease expires.
+     */
+    public void completeTasks(Vector tasks) {
+        logger.debug(">>> Start of IndexController.completeTasks()***");
+        Vector indexIDs = new Vector();
+        Vector orphans = new Vector();
+        Vector ids = new Vector();
+        for (int i = 0; i < tasks.size(); i++) {
+            Hashtable task = (Hashtable) tasks.get(i);
+            String indexID = (String) task.get("indexID");
+            if (indexID != null) {
+                indexIDs.add(indexID);
+            } else {
+                orphans.add(task);
+            }
+            // A document queued twice in the batch is marked once
+            if (!ids.contains(task.get("id"))) {
+                ids.add(task.get("id"));
+            }
+        }
+        int added = 0;
+        PooledConnection pc = null;
         try {
-            while (rs.next()) {
-                n = rs.getInt("COUNT(*)");
+            pc = pool.get();
+            pc.setAutoCommit(false);
+            try {
+                for (int i = 0; i < indexIDs.size(); i += CHUNK) {
+                    List chunk = indexIDs.subList(i, Math.min(i + CHUNK,
+                            indexIDs.size()));
+                    update(pc, "DELETE FROM DocumentIndex WHERE DocumentIndexID IN (" +
+                           params(chunk.size(), "?") + ")", chunk);
+                }
+                for (int i = 0; i < orphans.size(); i++) {
+                    Hashtable task = (Hashtable) orphans.get(i);
+                    PreparedStatement ps = pc.prepare(DELETE_GROUP_TASK);
+                    ps.setString(1, (String) task.get("id"));
+                    ps.setString(2, (String) task.get("indexPath"));
+                    ps.executeUpdate();
+                }
+                for (int i = 0; i < ids.size(); i += CHUNK) {
+                    added += addParsed(pc, ids.subList(i, Math.min(i + CHUNK,
+                            ids.size())));
+                }
+                pc.commit();
+            } catch (SQLException e) {
+                pc.rollback();
+                added = 0;
+                throw e;
+            } finally {
+                pc.setAutoCommit(true);
             }
         } catch (SQLException e) {
             logger.error(e);
+        } finally {
+            pool.release(pc);
+        }
+        if (added > 0) {
+            stats.addParsed(added);
         }
+        logger.debug("<<< End of IndexController.completeTasks()***");
+    }
+
+    public int countFiles() {
+        logger.debug(">>> Start of IndexController.countFiles()***");
+        int n = count(COUNT_FILES, null);
         logger.debug("<<< End of IndexController.countFiles()***");
         return n;
     }
 
     public int countParsedFiles() {
         logger.debug(">>> Start of IndexController.countParsedFiles()***");
-        int n = 0;
-        String sql =
-                "SELECT COUNT(*) FROM DocumentData WHERE DocumentDataTypeID=1 AND DocumentData='true'";
-        ResultSet rs = bd.executeQuery(conn, sql);
+        int n = count(COUNT_PARSED, "true");
+        logger.debug("<<< End of IndexController.countParsedFiles()***");
+        return n;
+    }
+
+    public int countNoParsedFiles() {
+        logger.debug(">>> Start of IndexController.countNoParsedFiles()***");
+        int n = count(COUNT_PARSED, "false");
+        logger.debug("<<< End of IndexController.countNoParsedFiles()***");
+        return n;
+    }
+
+    public Vector getNoParsedFiles() {
+        logger.debug(">>> Start of IndexController.getNoParsedFiles()***");
+        Vector result = new Vector();
+        PooledConnection pc = null;
         try {
-            while (rs.next()) {
-                n = rs.getInt("COUNT(*)");
+            pc = pool.get();
+            ResultSet rs = pc.prepare(NO_PARSED_FILES).executeQuery();
+            try {
+                while (rs.next()) {
+                    result.add(rs.getString("DocumentID"));
+                }
+            } finally {
+                rs.close();
             }
         } catch (SQLException e) {
             logger.error(e);
+        } finally {
+            pool.release(pc);
         }
-        logger.debug("<<< End of IndexController.countParsedFiles()***");
-        return n;
+        logger.debug("<<< End of IndexController.getNoParsedFiles()***");
+        return result;
     }
 
-    public int countNoParsedFiles() {
-        logger.debug(">>> Start of IndexController.countParsedFiles()***");
-        int n = 0;
-        String sql =
-                "SELECT COUNT(*) FROM DocumentData WHERE DocumentDataTypeID=1 AND DocumentData='false'";
-        ResultSet rs = bd.executeQuery(conn, sql);
+    /**
+     * Records whether the file could be parsed, unless it already was.
+     * @return whether the row was added
+     */
+    private boolean addParsed(String id, String parsed) {
+        boolean added = false;
+        PooledConnection pc = null;
         try {
-            while (rs.next()) {
-                n = rs.getInt("COUNT(*)");
+            pc = pool.get();
+            if (getString(pc, FILE_PARSED, id) == null) {
+                PreparedStatement ps = pc.prepare(INSERT_DATA);
+                ps.setString(1, id);
+                ps.setInt(2, 1);
+                ps.setString(3, parsed);
+                added = ps.executeUpdate() > 0;
             }
         } catch (SQLException e) {
             logger.error(e);
+        } finally {
+            pool.release(pc);
         }
-        logger.debug("<<< End of IndexController.countParsedFiles()***");
-        return n;
+        return added;
     }
 
-    public Vector getNoParsedFiles() {
-        logger.debug(">>> Start of IndexController.getNoParsedFiles()***");
-        Vector result = new Vector();
-        String sql = "SELECT DocumentID FROM DocumentData DocumentData WHERE DocumentDataTypeID=1 AND DocumentData='false'";
+    /**
+     * Marks as parsed the files not marked yet. DocumentData has no unique
+     * key on the document and type, so the marked files are looked up first
+     * rather than relying on INSERT ... ON DUPLICATE KEY UPDATE.
+     * @return the number of files marked
+     */
+    private int addParsed(PooledConnection pc, List ids) throws SQLException {
+        Vector missing = new Vector(ids);
+        PreparedStatement ps = pc.prepareStatement(
+                "SELECT DocumentID FROM DocumentData WHERE DocumentDataTypeID=1 AND DocumentID IN (" +
+                params(ids.size(), "?") + ")");
         try {
-            ResultSet rs = bd.executeQuery(conn, sql);
-            while (rs.next()) {
-                result.add(rs.getString("DocumentID"));
+            for (int i = 0; i < ids.size(); i++) {
+                ps.setString(i + 1, (String) ids.get(i));
+            }
+            ResultSet rs = ps.executeQuery();
+            try {
+                while (rs.next()) {
+                    missing.remove(rs.getString(1));
+                }
+            } finally {
+                rs.close();
+            }
+        } finally {
+            ps.close();
+        }
+        if (missing.isEmpty()) {
+            return 0;
+        }
+        return update(pc, "INSERT INTO DocumentData (DocumentID, DocumentDataTypeID, DocumentData) VALUES " +
+                      params(missing.size(), "(?,1,'true')"), missing);
+    }
+
+    /**
+     * Runs a statement built for the given string parameters.
+     */
+    private int update(PooledConnection pc, String sql, List values) throws
+            SQLException {
+        PreparedStatement ps = pc.prepareStatement(sql);
+        try {
+            for (int i = 0; i < values.size(); i++) {
+                ps.setString(i + 1, (String) values.get(i));
+            }
+            return ps.executeUpdate();
+        } finally {
+            ps.close();
+        }
+    }
+
+    /**
+     * @return n copies of the item separated by commas
+     */
+    private static String params(int n, String item) {
+        StringBuffer sb = new StringBuffer();
+        for (int i = 0; i < n; i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(item);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Fills in the DocumentIndex row of the task.
+     * @return false when there is no row
+     */
+    private boolean findTask(PooledConnection pc, Hashtable task) throws
+            SQLException {
+        PreparedStatement ps = pc.prepare(FIND_TASK);
+        ps.setString(1, (String) task.get("id"));
+        ps.setString(2, (String) task.get("indexPath"));
+        ResultSet rs = ps.executeQuery();
+        try {
+            if (!rs.next()) {
+                return false;
+            }
+            task.put("indexID", rs.getString("DocumentIndexID"));
+            task.put("attempts", new Integer(rs.getInt("DocumentIndexAttempts")));
+            return true;
+        } finally {
+            rs.close();
+        }
+    }
+
+    /**
+     * @return the first column of the first row of the query, or null
+     */
+    private String getString(PooledConnection pc, String sql, String param) throws
+            SQLException {
+        PreparedStatement ps = pc.prepare(sql);
+        ps.setString(1, param);
+        ResultSet rs = ps.executeQuery();
+        try {
+            return rs.next() ? rs.getString(1) : null;
+        } finally {
+            rs.close();
+        }
+    }
+
+    private int count(String sql, String param) {
+        int n = 0;
+        PooledConnection pc = null;
+        try {
+            pc = pool.get();
+            PreparedStatement ps = pc.prepare(sql);
+            if (param != null) {
+                ps.setString(1, param);
+            }
+            ResultSet rs = ps.executeQuery();
+            try {
+                if (rs.next()) {
+                    n = rs.getInt(1);
+                }
+            } finally {
+                rs.close();
             }
         } catch (SQLException e) {
             logger.error(e);
+        } finally {
+            pool.release(pc);
         }
-        logger.debug("<<< End of IndexController.getNoParsedFiles()***");
-        return result;
+        return n;
     }
 }
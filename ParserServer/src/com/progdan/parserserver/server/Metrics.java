@@ -0,0 +1,133 @@
+package com.progdan.parserserver.server;
+
+import java.io.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * Per format counters of the parser workers: documents indexed, failed
+ * attempts, timeouts and a histogram of the conversion times. Counters only
+ * grow while the server runs, so the monitoring computes rates from them.
+ */
+public class Metrics {
+    private static Logger logger = Logger.getLogger(Metrics.class.getName());
+    /** Upper bounds of the histogram buckets, in milliseconds */
+    private static final long[] BUCKETS = {
+            100, 500, 1000, 5000, 10000, 30000, 60000, 300000};
+    private long started;
+    private TreeMap formats;
+    public Metrics() {
+        logger.debug(">>> Start of Metrics.Metrics()***");
+        started = System.currentTimeMillis();
+        formats = new TreeMap();
+        logger.debug("<<< End of Metrics.Metrics()***");
+    }
+
+    /**
+     * Records the time spent converting and indexing a file.
+     */
+    public synchronized void converted(String format, long millis) {
+        Counters c = get(format);
+        int i = 0;
+        while ((i < BUCKETS.length) && (millis > BUCKETS[i])) {
+            i++;
+        }
+        c.buckets[i]++;
+        c.conversions++;
+        c.millis += millis;
+    }
+
+    public synchronized void indexed(String format) {
+        get(format).indexed++;
+    }
+
+    public synchronized void failed(String format, boolean timedOut) {
+        Counters c = get(format);
+        c.failed++;
+        if (timedOut) {
+            c.timeouts++;
+        }
+    }
+
+    public synchronized long getIndexed() {
+        long n = 0;
+        Iterator it = formats.values().iterator();
+        while (it.hasNext()) {
+            n += ((Counters) it.next()).indexed;
+        }
+        return n;
+    }
+
+    public long getUptime() {
+        return System.currentTimeMillis() - started;
+    }
+
+    /**
+     * Writes the counters in the Prometheus text format.
+     */
+    public synchronized void write(PrintWriter out) {
+        out.println("# TYPE parser_indexed_total counter");
+        Iterator it = formats.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry e = (Map.Entry) it.next();
+            out.println("parser_indexed_total{format=\"" + e.getKey() + "\"} " +
+                        ((Counters) e.getValue()).indexed);
+        }
+        out.println("# TYPE parser_failed_total counter");
+        it = formats.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry e = (Map.Entry) it.next();
+            out.println("parser_failed_total{format=\"" + e.getKey() + "\"} " +
+                        ((Counters) e.getValue()).failed);
+        }
+        out.println("# TYPE parser_timeouts_total counter");
+        it = formats.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry e = (Map.Entry) it.next();
+            out.println("parser_timeouts_total{format=\"" + e.getKey() + "\"} " +
+                        ((Counters) e.getValue()).timeouts);
+        }
+        out.println("# TYPE parser_conversion_seconds histogram");
+        it = formats.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry e = (Map.Entry) it.next();
+            String format = (String) e.getKey();
+            Counters c = (Counters) e.getValue();
+            long n = 0;
+            for (int i = 0; i < BUCKETS.length; i++) {
+                n += c.buckets[i];
+                out.println("parser_conversion_seconds_bucket{format=\"" +
+                            format + "\",le=\"" + (BUCKETS[i] / 1000.0) +
+                            "\"} " + n);
+            }
+            out.println("parser_conversion_seconds_bucket{format=\"" + format +
+                        "\",le=\"+Inf\"} " + c.conversions);
+            out.println("parser_conversion_seconds_sum{format=\"" + format +
+                        "\"} " + (c.millis / 1000.0));
+            out.println("parser_conversion_seconds_count{format=\"" + format +
+                        "\"} " + c.conversions);
+        }
+    }
+
+    private Counters get(String format) {
+        if (format == null) {
+            format = "";
+        }
+        Counters c = (Counters) formats.get(format);
+        if (c == null) {
+            c = new Counters();
+            formats.put(format, c);
+        }
+        return c;
+    }
+
+    private static class Counters {
+        long indexed;
+        long failed;
+        long timeouts;
+        long conversions;
+        long millis;
+        long[] buckets = new long[BUCKETS.length + 1];
+    }
+}
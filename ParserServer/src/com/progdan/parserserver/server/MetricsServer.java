@@ -0,0 +1,132 @@
+package com.progdan.parserserver.server;
+
+import java.io.*;
+import java.net.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * Minimal HTTP endpoint for the monitoring, bound to the loopback interface.
+ * GET /metrics returns the server gauges and the Metrics counters in the
+ * Prometheus text format; GET /health answers 200 while the server has
+ * parser workers and 503 otherwise. Requests are served one at a time.
+ */
+public class MetricsServer extends Thread {
+    private static Logger logger = Logger.getLogger(MetricsServer.class.getName());
+    private static final String CHARSET = "ISO-8859-1";
+    private int port;
+    private Server server;
+    private ServerSocket socket;
+    public MetricsServer(int port, Server server) {
+        logger.debug(">>> Start of MetricsServer.MetricsServer()***");
+        this.port = port;
+        this.server = server;
+        setDaemon(true);
+        logger.debug("<<< End of MetricsServer.MetricsServer()***");
+    }
+
+    public void run() {
+        logger.debug(">>> Start of MetricsServer.run()***");
+        try {
+            socket = new ServerSocket(port, 10, InetAddress.getByName("127.0.0.1"));
+            logger.info("Metrics on http://127.0.0.1:" + port + "/metrics");
+            while (!socket.isClosed()) {
+                Socket client = socket.accept();
+                try {
+                    client.setSoTimeout(5000);
+                    serve(client);
+                } catch (IOException e) {
+                    logger.error(e);
+                } finally {
+                    client.close();
+                }
+            }
+        } catch (IOException e) {
+            if ((socket == null) || !socket.isClosed()) {
+                logger.error("Nao consegui ouvir a porta: " + port);
+                logger.error(e);
+            }
+        }
+        logger.debug("<<< End of MetricsServer.run()***");
+    }
+
+    public void close() {
+        logger.debug(">>> Start of MetricsServer.close()***");
+        try {
+            if (socket != null) {
+                socket.close();
+            }
+        } catch (IOException e) {
+            logger.error(e);
+        }
+        logger.debug("<<< End of MetricsServer.close()***");
+    }
+
+    private void serve(Socket client) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(client.
+                getInputStream(), CHARSET));
+        String request = in.readLine();
+        if (request == null) {
+            return;
+        }
+        // Skip the headers
+        String header;
+        while (((header = in.readLine()) != null) && (header.length() > 0)) {
+        }
+        String[] parts = request.split(" ");
+        String status;
+        StringWriter body = new StringWriter();
+        PrintWriter out = new PrintWriter(body);
+        if ((parts.length < 2) || !parts[0].equals("GET")) {
+            status = "405 Method Not Allowed";
+        } else if (parts[1].equals("/metrics")) {
+            status = "200 OK";
+            metrics(out);
+        } else if (parts[1].equals("/health")) {
+            if (server.getWorkers() > 0) {
+                status = "200 OK";
+                out.println("OK");
+            } else {
+                status = "503 Service Unavailable";
+                out.println("No parser workers");
+            }
+        } else {
+            status = "404 Not Found";
+        }
+        out.flush();
+        byte[] data = body.toString().getBytes(CHARSET);
+        OutputStream os = client.getOutputStream();
+        os.write(("HTTP/1.0 " + status + "\r\n" +
+                  "Content-Type: text/plain; version=0.0.4\r\n" +
+                  "Content-Length: " + data.length + "\r\n" +
+                  "Connection: close\r\n\r\n").getBytes(CHARSET));
+        os.write(data);
+        os.flush();
+    }
+
+    private void metrics(PrintWriter out) {
+        Metrics metrics = server.getMetrics();
+        Statistics stats = server.getControl().getStatistics();
+        long uptime = metrics.getUptime();
+        out.println("# TYPE parser_queue_depth gauge");
+        out.println("parser_queue_depth " + server.getQueueSize());
+        out.println("# TYPE parser_workers gauge");
+        out.println("parser_workers " + server.getWorkers());
+        out.println("# TYPE parser_active_workers gauge");
+        out.println("parser_active_workers " + server.getActiveWorkers());
+        out.println("# TYPE parser_connections gauge");
+        out.println("parser_connections " + server.getConnections());
+        out.println("# TYPE parser_files gauge");
+        out.println("parser_files " + stats.getFiles());
+        out.println("# TYPE parser_files_parsed gauge");
+        out.println("parser_files_parsed " + stats.getParsed());
+        out.println("# TYPE parser_files_not_parsed gauge");
+        out.println("parser_files_not_parsed " + stats.getNoParsed());
+        out.println("# TYPE parser_uptime_seconds gauge");
+        out.println("parser_uptime_seconds " + (uptime / 1000));
+        out.println("# TYPE parser_throughput_per_minute gauge");
+        out.println("parser_throughput_per_minute " +
+                    (uptime > 0 ? metrics.getIndexed() * 60000.0 / uptime : 0));
+        metrics.write(out);
+    }
+}
@@ -0,0 +1,27 @@
+package com.progdan.parserserver.server;
+
+import com.progdan.logengine.*;
+
+/**
+ * Runs the parser server without the Swing window, as a service. The server
+ * is stopped cleanly when the process is terminated.
+ */
+public class ParserDaemon {
+    private static Logger logger = Logger.getLogger(ParserDaemon.class.getName());
+
+    /**
+     * Application entry point.
+     *
+     * @param args String[]
+     */
+    public static void main(String[] args) {
+        final Server server = new Server();
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                logger.info("Stopping the parser server");
+                server.shutdown();
+            }
+        });
+        server.start();
+    }
+}
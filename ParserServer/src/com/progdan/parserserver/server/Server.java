@@ -1,72 +1,165 @@
 package com.progdan.parserserver.server;
 
 import java.io.*;
-import java.net.*;
 import java.util.*;
 
 import com.progdan.logengine.*;
+import com.progdan.parserserver.index.ConverterRegistry;
 import com.progdan.parserserver.index.IndexFiles;
-import com.progdan.parserserver.server.gui.FrameServer;
+import com.progdan.parserserver.index.IndexWriters;
+import com.progdan.parserserver.index.Watchdog;
 
 
 public class Server extends Thread {
     private static Logger logger = Logger.getLogger(Server.class.getName());
     private int port;
-    private Vector clients;
-    private LinkedList index;
-    private FrameServer gui;
-    private IndexFiles indexer;
+    private int workers;
+    private String reppath;
+    private TaskListener listener;
+    private int connections;
+    private TaskQueue index;
+    private Vector observers;
+    private Vector indexers;
+    private IndexWriters writers;
+    private ConverterRegistry converters;
+    private Watchdog watchdog;
     private IndexController control;
-    public Server(FrameServer gui) {
+    private Metrics metrics;
+    private MetricsServer metricsServer;
+    /** Milliseconds a conversion may run, also the wait for the workers */
+    private long timeout;
+    private boolean closed;
+    public Server() {
         logger.debug(">>> Start of Server.Server()***");
-        this.gui = gui;
-        indexer = null;
+        observers = new Vector();
+        indexers = new Vector();
+        metrics = new Metrics();
         control = new IndexController();
-        clients = new Vector();
-        index = control.getIndexTasks();
-        updateGUI();
+        Hashtable limits = new Hashtable();
+        Hashtable weights = new Hashtable();
+        workers = Runtime.getRuntime().availableProcessors();
+        reppath = "C:\\EDMIS";
+        String cmdpath = "";
+        int batch = 500;
+        long flush = 5000;
+        long reconcile = 300000;
+        int metricsPort = 4445;
+        timeout = 300000;
         try {
             Properties props = new Properties();
             props.load(getClass().getResourceAsStream("/" + "db.properties"));
             port = Integer.parseInt(props.getProperty("parsePort", "4444"));
+            workers = Integer.parseInt(props.getProperty("parseWorkers",
+                    String.valueOf(workers)));
+            reppath = props.getProperty("reppath", reppath);
+            cmdpath = props.getProperty("cmdpath", cmdpath);
+            batch = Integer.parseInt(props.getProperty("indexBatch", "500"));
+            flush = Long.parseLong(props.getProperty("indexFlush", "5")) * 1000;
+            reconcile = Long.parseLong(props.getProperty("statsReconcile",
+                    "300")) * 1000;
+            metricsPort = Integer.parseInt(props.getProperty("metricsPort",
+                    "4445"));
+            timeout = Long.parseLong(props.getProperty("parseTimeout", "300")) *
+                      1000;
+            Enumeration keys = props.propertyNames();
+            while (keys.hasMoreElements()) {
+                String key = (String) keys.nextElement();
+                if (key.startsWith("parseLimit.")) {
+                    limits.put(key.substring(11),
+                               Integer.valueOf(props.getProperty(key)));
+                } else if (key.startsWith("groupWeight.")) {
+                    weights.put(key.substring(12),
+                                Integer.valueOf(props.getProperty(key)));
+                }
+            }
         } catch (FileNotFoundException e) {
             logger.error(e);
         } catch (IOException e) {
             logger.error(e);
         }
+        LinkedList tasks = control.getIndexTasks();
+        for (int i = 0; i < tasks.size(); i++) {
+            setSize((Hashtable) tasks.get(i));
+        }
+        index = new TaskQueue(tasks, limits, weights);
+        listener = new TaskListener(port, this);
+        writers = new IndexWriters(reppath, batch, flush, control, index);
+        converters = new ConverterRegistry(reppath, cmdpath);
+        watchdog = new Watchdog(indexers);
+        control.getStatistics().schedule(reconcile);
+        if (metricsPort > 0) {
+            metricsServer = new MetricsServer(metricsPort, this);
+        }
         logger.debug("<<< End of Server.Server()***");
     }
 
+    /**
+     * Stops the server and exits.
+     */
     public void interrupt() {
         super.interrupt();
         logger.debug(">>> Start of Server.interrupt()***");
-        for (int i = 0; i < clients.size(); ) {
-            ((ThreadClient) clients.get(i)).interrupt();
-        }
+        shutdown();
         logger.debug("<<< End of Server.interrupt()***");
         System.exit(0);
     }
 
+    /**
+     * Stops the workers and the listener and closes the indexes. Also run by
+     * the shutdown hook of ParserDaemon, so it must not call System.exit().
+     * The indexes are closed once the workers returned, or after the
+     * conversion timeout when one of them does not.
+     */
+    public void shutdown() {
+        logger.debug(">>> Start of Server.shutdown()***");
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        index.close();
+        watchdog.close();
+        control.getStatistics().close();
+        Object[] list = indexers.toArray();
+        for (int i = 0; i < list.length; i++) {
+            ((IndexFiles) list[i]).interrupt();
+        }
+        long deadline = System.currentTimeMillis() + timeout;
+        for (int i = 0; i < list.length; i++) {
+            long wait = deadline - System.currentTimeMillis();
+            try {
+                if (wait > 0) {
+                    ((IndexFiles) list[i]).join(wait);
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+            if (((IndexFiles) list[i]).isAlive()) {
+                logger.warn("A worker is still converting, closing the indexes");
+                break;
+            }
+        }
+        writers.close();
+        listener.close();
+        control.close();
+        if (metricsServer != null) {
+            metricsServer.close();
+        }
+        logger.debug("<<< End of Server.shutdown()***");
+    }
+
     public void run() {
         logger.debug(">>> Start of Server.run()***");
-        ServerSocket sSocket = null;
-        Socket cSocket = null;
         try {
-            sSocket = new ServerSocket(port);
-            while (true) {
-                if ((indexer == null) && (index.size() != 0)) {
-                    indexer = new IndexFiles(index, control, this);
-                    indexer.start();
-                }
-                cSocket = sSocket.accept();
-                logger.info("Connection accepted: " +
-                            cSocket.getInetAddress() +
-                            ":" + cSocket.getPort());
-                ThreadClient tc = new ThreadClient(cSocket, this);
-                clients.add(tc);
-                tc.start();
-                updateGUI();
+            logger.info("Starting " + workers + " parser workers");
+            for (int i = 0; i < workers; i++) {
+                addIndexer();
+            }
+            if (metricsServer != null) {
+                metricsServer.start();
             }
+            listener.listen();
         } catch (IOException e) {
             logger.error("Nao consegui ouvir a porta: " + port);
             logger.error(e);
@@ -80,34 +173,129 @@ public class Server extends Thread {
         return control;
     }
 
-    public void removeClient(ThreadClient tc) {
-        logger.debug(">>> Start of Server.removeClient()***");
-        clients.removeElement(tc);
-        if ((indexer == null) && (index.size() != 0)) {
-            indexer = new IndexFiles(index, control, this);
-            indexer.start();
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public int getQueueSize() {
+        return index.size();
+    }
+
+    public int getWorkers() {
+        return indexers.size();
+    }
+
+    /**
+     * @return the number of workers running a conversion
+     */
+    public int getActiveWorkers() {
+        Object[] list = indexers.toArray();
+        int n = 0;
+        for (int i = 0; i < list.length; i++) {
+            if (((IndexFiles) list[i]).isBusy()) {
+                n++;
+            }
         }
+        return n;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * Adds an observer, such as the server window, and shows it the
+     * current counters.
+     */
+    public void addObserver(ServerObserver observer) {
+        logger.debug(">>> Start of Server.addObserver()***");
+        observers.add(observer);
         updateGUI();
-        logger.debug("<<< End of Server.removeClient()***");
+        logger.debug("<<< End of Server.addObserver()***");
+    }
+
+    /**
+     * Shows the number of open client connections. Called by the listener
+     * on every connect and disconnect, so it does not query the database.
+     */
+    public void setConnections(int n) {
+        logger.debug(">>> Start of Server.setConnections()***");
+        connections = n;
+        Object[] list = observers.toArray();
+        for (int i = 0; i < list.length; i++) {
+            ((ServerObserver) list[i]).connections(n);
+        }
+        logger.debug("<<< End of Server.setConnections()***");
     }
 
-    public void addIndex(Hashtable request) {
+    /**
+     * Stores and queues the tasks of a document, one per group. They are
+     * queued together so a worker finds them all and indexes the document
+     * on every group at once. A task that could not be stored is not queued.
+     * @return whether every task was stored
+     */
+    public boolean addIndex(Vector requests) {
         logger.debug(">>> Start of Server.addIndex()***");
-        index.add(request);
+        Vector stored = new Vector();
+        for (int i = 0; i < requests.size(); i++) {
+            Hashtable task = (Hashtable) requests.get(i);
+            if (control.addIndexTask(task)) {
+                setSize(task);
+                stored.add(task);
+            }
+        }
+        index.addAll(stored);
+        if (!stored.isEmpty()) {
+            // The tasks of a request are on the same document
+            String id = (String) ((Hashtable) stored.get(0)).get("id");
+            if (control.fileParsed(id) == null) {
+                control.getStatistics().addFile(id);
+            }
+        }
         logger.debug("<<< End of Server.addIndex()***");
+        return stored.size() == requests.size();
     }
 
-    public void removeIndexer() {
+    /**
+     * Stores the size of the file to convert in the task, as the queue
+     * serves the smallest files first. Files already converted count as 0.
+     */
+    private void setSize(Hashtable task) {
+        File source = new File(reppath, task.get("id") + "." +
+                               task.get("format"));
+        task.put("size", new Long(source.length()));
+    }
+
+    /**
+     * Starts a parser worker, at startup or in place of a worker abandoned
+     * by the watchdog.
+     */
+    public void addIndexer() {
+        logger.debug(">>> Start of Server.addIndexer()***");
+        IndexFiles indexer = new IndexFiles(index, writers, converters,
+                                            control, this);
+        indexers.add(indexer);
+        indexer.start();
+        logger.debug("<<< End of Server.addIndexer()***");
+    }
+
+    public void removeIndexer(IndexFiles indexer) {
         logger.debug(">>> Start of Server.removeIndexer()***");
-        indexer = null;
+        indexers.removeElement(indexer);
         updateGUI();
         logger.debug("<<< End of Server.removeIndexer()***");
     }
 
     public void updateGUI() {
         logger.debug(">>> Start of Server.updateGUI()***");
-        gui.files(control.countFiles(), control.countParsedFiles(), control.countNoParsedFiles());
-        gui.connections(clients.size());
+        Statistics stats = control.getStatistics();
+        Object[] list = observers.toArray();
+        for (int i = 0; i < list.length; i++) {
+            ServerObserver observer = (ServerObserver) list[i];
+            observer.files(stats.getFiles(), stats.getParsed(),
+                           stats.getNoParsed());
+            observer.connections(connections);
+        }
         logger.debug("<<< End of Server.updateGUI()***");
     }
 }
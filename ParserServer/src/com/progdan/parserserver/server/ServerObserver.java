@@ -0,0 +1,11 @@
+package com.progdan.parserserver.server;
+
+/**
+ * Receives the counters shown by the server window. The server runs without
+ * observers when started as a daemon.
+ */
+public interface ServerObserver {
+    public void files(int n, int p, int np);
+
+    public void connections(int n);
+}
@@ -0,0 +1,108 @@
+package com.progdan.parserserver.server;
+
+import java.util.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * In-memory file counters shown by the GUI. They are seeded with the
+ * COUNT(*) queries of IndexController, kept up to date as files are
+ * submitted and marked parsed or not parsed, and reconciled with the
+ * database every statsReconcile seconds.
+ */
+public class Statistics extends TimerTask {
+    private static Logger logger = Logger.getLogger(Statistics.class.getName());
+    private IndexController control;
+    private Timer timer;
+    private int files;
+    private int parsed;
+    private int noParsed;
+    /** Files counted since the last reconciliation */
+    private HashSet added;
+    public Statistics(IndexController control) {
+        logger.debug(">>> Start of Statistics.Statistics()***");
+        this.control = control;
+        added = new HashSet();
+        run();
+        logger.debug("<<< End of Statistics.Statistics()***");
+    }
+
+    /**
+     * Starts the periodic reconciliation.
+     * @param period milliseconds between reconciliations
+     */
+    public void schedule(long period) {
+        logger.debug(">>> Start of Statistics.schedule()***");
+        timer = new Timer(true);
+        timer.schedule(this, period, period);
+        logger.debug("<<< End of Statistics.schedule()***");
+    }
+
+    public void close() {
+        if (timer != null) {
+            timer.cancel();
+        }
+    }
+
+    /**
+     * Reloads the counters from the database. The queries run without the
+     * lock, so the counters are corrected by their difference with the
+     * values they had when the queries started, keeping the files counted
+     * meanwhile. A file counted by both is corrected by the next run.
+     */
+    public void run() {
+        logger.debug(">>> Start of Statistics.run()***");
+        int n0;
+        int p0;
+        int np0;
+        synchronized (this) {
+            n0 = files;
+            p0 = parsed;
+            np0 = noParsed;
+        }
+        int n = control.countFiles();
+        int p = control.countParsedFiles();
+        int np = control.countNoParsedFiles();
+        synchronized (this) {
+            if ((n != n0) || (p != p0) || (np != np0)) {
+                logger.info("Reconciled counters: files " + n0 + " -> " + n +
+                            ", parsed " + p0 + " -> " + p +
+                            ", not parsed " + np0 + " -> " + np);
+            }
+            files += n - n0;
+            added.clear();
+            parsed += p - p0;
+            noParsed += np - np0;
+        }
+        logger.debug("<<< End of Statistics.run()***");
+    }
+
+    public synchronized int getFiles() {
+        return files;
+    }
+
+    public synchronized int getParsed() {
+        return parsed;
+    }
+
+    public synchronized int getNoParsed() {
+        return noParsed;
+    }
+
+    /**
+     * Counts a new file, once until the next reconciliation.
+     */
+    synchronized void addFile(String id) {
+        if (added.add(id)) {
+            files++;
+        }
+    }
+
+    synchronized void addParsed(int n) {
+        parsed += n;
+    }
+
+    synchronized void addNoParsed(int n) {
+        noParsed += n;
+    }
+}
@@ -0,0 +1,385 @@
+package com.progdan.parserserver.server;
+
+import java.io.*;
+import java.net.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.util.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * Listens for parse tasks on a single thread with a Selector.
+ *
+ * Clients are greeted with a banner line and then send tasks as "id: ",
+ * "format: " and "indexPath: " lines; a "groups: " line with space separated
+ * groups replaces indexPath to index the document on several groups, and an
+ * optional "priority: " line gives the priority of the task in the queue
+ * (interactive, import or reindex, see TaskQueue). A blank line ends a task,
+ * which is queued and acknowledged with "OK id groups" or "ERROR id reason",
+ * so a client can pipeline any number of tasks on one connection. A task
+ * still open when the client closes the connection is queued without
+ * acknowledgement, as older clients send one task per connection.
+ *
+ * The tasks are stored on the database by a single submitter thread, in
+ * the order they were read, so the selector never waits for the database;
+ * the submitter hands the acknowledgements back to the selector. The
+ * protocol is read and written as UTF-8.
+ */
+public class TaskListener {
+    private static Logger logger = Logger.getLogger(TaskListener.class.getName());
+    public static final String CHARSET = "UTF-8";
+    /** Longest line accepted from a client */
+    private static final int MAX_LINE = 8192;
+    private int port;
+    private Server server;
+    private Selector selector;
+    private int connections;
+    private boolean closed;
+    private Submitter submitter = new Submitter();
+    /** Acknowledgements written by the submitter, as {Connection, String} */
+    private LinkedList acks = new LinkedList();
+    public TaskListener(int port, Server server) {
+        logger.debug(">>> Start of TaskListener.TaskListener()***");
+        this.port = port;
+        this.server = server;
+        logger.debug("<<< End of TaskListener.TaskListener()***");
+    }
+
+    /**
+     * Serves the clients until close() is called.
+     */
+    public void listen() throws IOException {
+        logger.debug(">>> Start of TaskListener.listen()***");
+        selector = Selector.open();
+        ServerSocketChannel channel = ServerSocketChannel.open();
+        channel.configureBlocking(false);
+        channel.socket().bind(new InetSocketAddress(port));
+        channel.register(selector, SelectionKey.OP_ACCEPT);
+        logger.info("Listening on port " + port);
+        submitter.start();
+        while (!closed) {
+            selector.select();
+            sendAcks();
+            Iterator it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = (SelectionKey) it.next();
+                it.remove();
+                try {
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(channel);
+                        continue;
+                    }
+                    Connection conn = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        conn.read();
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        conn.write();
+                    }
+                } catch (IOException e) {
+                    logger.error(e);
+                    disconnect(key);
+                }
+            }
+        }
+        Iterator it = selector.keys().iterator();
+        while (it.hasNext()) {
+            ((SelectionKey) it.next()).channel().close();
+        }
+        selector.close();
+        logger.debug("<<< End of TaskListener.listen()***");
+    }
+
+    public void close() {
+        logger.debug(">>> Start of TaskListener.close()***");
+        closed = true;
+        submitter.close();
+        if (selector != null) {
+            selector.wakeup();
+        }
+        logger.debug("<<< End of TaskListener.close()***");
+    }
+
+    private void accept(ServerSocketChannel channel) throws IOException {
+        SocketChannel client = channel.accept();
+        if (client == null) {
+            return;
+        }
+        Socket socket = client.socket();
+        logger.info("Connection accepted: " + socket.getInetAddress() + ":" +
+                    socket.getPort());
+        client.configureBlocking(false);
+        SelectionKey key = client.register(selector, SelectionKey.OP_READ);
+        Connection conn = new Connection(key);
+        key.attach(conn);
+        conn.send("ProgDan Codename Avalon - Index Server running on: " +
+                  socket.getLocalAddress() + ":" + socket.getLocalPort() +
+                  " connection accepted.");
+        server.setConnections(++connections);
+    }
+
+    /**
+     * Queues the acknowledgements of the tasks stored by the submitter.
+     */
+    private void sendAcks() {
+        Object[] list;
+        synchronized (acks) {
+            list = acks.toArray();
+            acks.clear();
+        }
+        for (int i = 0; i < list.length; i++) {
+            Object[] ack = (Object[]) list[i];
+            Connection conn = (Connection) ack[0];
+            try {
+                conn.acked((String) ack[1]);
+            } catch (IOException e) {
+                logger.error(e);
+                disconnect(conn.key);
+            } catch (CancelledKeyException e) {
+                // The client left before the acknowledgement
+            }
+        }
+    }
+
+    private void disconnect(SelectionKey key) {
+        if (!key.isValid()) {
+            return;
+        }
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException e) {
+            logger.error(e);
+        }
+        logger.info("Client disconected...");
+        server.setConnections(--connections);
+    }
+
+    /**
+     * State of a client connection: the line being read, the task being
+     * built and the acknowledgements not yet written.
+     */
+    private class Connection {
+        private SelectionKey key;
+        private ByteBuffer in = ByteBuffer.allocate(4096);
+        private ByteArrayOutputStream line = new ByteArrayOutputStream();
+        private Hashtable request = new Hashtable();
+        private LinkedList out = new LinkedList();
+        private boolean closing;
+        /** Tasks handed to the submitter whose acknowledgement is not back */
+        private int submitted;
+        Connection(SelectionKey key) {
+            this.key = key;
+        }
+
+        void read() throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            int n;
+            while ((n = channel.read(in)) > 0) {
+                in.flip();
+                while (in.hasRemaining()) {
+                    byte c = in.get();
+                    if (c == '\n') {
+                        line(line.toString(CHARSET));
+                        line.reset();
+                    } else if (c != '\r') {
+                        if (line.size() >= MAX_LINE) {
+                            throw new IOException("Line too long from " +
+                                                  channel.socket().getInetAddress());
+                        }
+                        line.write(c);
+                    }
+                }
+                in.clear();
+            }
+            if (n < 0) {
+                // End of the requests: queue an unterminated task and close
+                // once the acknowledgements are written
+                if (line.size() > 0) {
+                    line(line.toString(CHARSET));
+                }
+                if (!request.isEmpty()) {
+                    submit(false);
+                }
+                closing = true;
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                if (out.isEmpty() && (submitted == 0)) {
+                    disconnect(key);
+                }
+            }
+        }
+
+        void write() throws IOException {
+            SocketChannel channel = (SocketChannel) key.channel();
+            while (!out.isEmpty()) {
+                ByteBuffer buf = (ByteBuffer) out.getFirst();
+                channel.write(buf);
+                if (buf.hasRemaining()) {
+                    return;
+                }
+                out.removeFirst();
+            }
+            if (closing) {
+                if (submitted == 0) {
+                    disconnect(key);
+                } else {
+                    key.interestOps(0);
+                }
+            } else {
+                key.interestOps(SelectionKey.OP_READ);
+            }
+        }
+
+        void send(String msg) throws IOException {
+            out.add(ByteBuffer.wrap((msg + "\r\n").getBytes(CHARSET)));
+            key.interestOps(key.interestOps() | SelectionKey.OP_WRITE);
+        }
+
+        /**
+         * Sends the acknowledgement of a task handed to the submitter, or
+         * null for a task without acknowledgement.
+         */
+        void acked(String msg) throws IOException {
+            submitted--;
+            if (msg != null) {
+                send(msg);
+            } else if (closing && (submitted == 0) && out.isEmpty()) {
+                disconnect(key);
+            }
+        }
+
+        private void line(String msg) throws IOException {
+            if (msg.startsWith("id: ")) {
+                request.put("id", msg.substring(4));
+            } else if (msg.startsWith("format: ")) {
+                request.put("format", msg.substring(8));
+            } else if (msg.startsWith("indexPath: ")) {
+                request.put("indexPath", msg.substring(11));
+            } else if (msg.startsWith("groups: ")) {
+                request.put("groups", msg.substring(8));
+            } else if (msg.startsWith("priority: ")) {
+                request.put("priority", msg.substring(10));
+            } else if (msg.length() == 0) {
+                submit(true);
+            }
+        }
+
+        /**
+         * Queues the task on each of its groups.
+         */
+        private void submit(boolean ack) throws IOException {
+            String id = (String) request.get("id");
+            String format = (String) request.get("format");
+            String groups = (String) request.remove("groups");
+            String priority = (String) request.remove("priority");
+            if (groups == null) {
+                groups = (String) request.get("indexPath");
+            }
+            if (request.isEmpty() && (groups == null)) {
+                return;
+            }
+            request = new Hashtable();
+            // Errors are answered through the submitter as well, to keep
+            // the acknowledgements in the order of the tasks
+            if ((id == null) || (format == null) || (groups == null)) {
+                submitter.add(this, null, ack ? "ERROR " + id +
+                              " incomplete task" : null);
+                return;
+            }
+            if ((priority != null) && (TaskQueue.getPriority(priority) < 0)) {
+                submitter.add(this, null, ack ? "ERROR " + id +
+                              " unknown priority " + priority : null);
+                return;
+            }
+            Vector tasks = new Vector();
+            StringTokenizer st = new StringTokenizer(groups);
+            while (st.hasMoreTokens()) {
+                Hashtable task = new Hashtable();
+                task.put("id", id);
+                task.put("format", format);
+                task.put("indexPath", st.nextToken());
+                if (priority != null) {
+                    task.put("priority", priority);
+                }
+                tasks.add(task);
+            }
+            submitter.add(this, tasks, ack ? "OK " + id + " " + groups : null);
+        }
+    }
+
+    /**
+     * Stores and queues the tasks read by the selector, one at a time, and
+     * posts their acknowledgements back to it.
+     */
+    private class Submitter extends Thread {
+        /** Tasks to store, as {Connection, Vector of tasks, ack} */
+        private LinkedList jobs = new LinkedList();
+        private boolean stopped;
+        Submitter() {
+            super("TaskListener submitter");
+            setDaemon(true);
+        }
+
+        /**
+         * Called by the selector thread.
+         * @param tasks the tasks to store, or null to only acknowledge
+         * @param ack the acknowledgement, or null to send none
+         */
+        void add(Connection conn, Vector tasks, String ack) {
+            conn.submitted++;
+            synchronized (jobs) {
+                jobs.add(new Object[] {conn, tasks, ack});
+                jobs.notify();
+            }
+        }
+
+        void close() {
+            synchronized (jobs) {
+                stopped = true;
+                jobs.notify();
+            }
+        }
+
+        public void run() {
+            while (true) {
+                Object[] job;
+                synchronized (jobs) {
+                    while (jobs.isEmpty() && !stopped) {
+                        try {
+                            jobs.wait();
+                        } catch (InterruptedException e) {
+                            return;
+                        }
+                    }
+                    if (jobs.isEmpty()) {
+                        return;
+                    }
+                    job = (Object[]) jobs.removeFirst();
+                }
+                String ack = (String) job[2];
+                if (job[1] != null) {
+                    Vector tasks = (Vector) job[1];
+                    boolean stored = false;
+                    try {
+                        stored = server.addIndex(tasks);
+                    } catch (RuntimeException e) {
+                        logger.error(e);
+                    }
+                    if (!stored && (ack != null)) {
+                        // The client keeps the task, as it was not acked
+                        ack = "ERROR " + ((Hashtable) tasks.get(0)).get("id") +
+                              " not stored";
+                    }
+                }
+                synchronized (acks) {
+                    acks.add(new Object[] {job[0], ack});
+                }
+                selector.wakeup();
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.progdan.parserserver.server;
+
+import java.util.*;
+
+import com.progdan.logengine.*;
+
+/**
+ * Queue of parse tasks shared by the IndexFiles workers.
+ *
+ * Tasks are served by priority: interactive uploads, then folder imports,
+ * then documents indexed again on another group; tasks without a priority
+ * count as imports. Within a priority the document groups share the workers
+ * by start-time fair queuing, each group getting a share proportional to its
+ * weight (1 unless configured), so a bulk import into one group does not hold
+ * back the other groups. Within a group the smallest files go first.
+ *
+ * A task is only handed out when no other worker holds a task of the same
+ * document group or of the same document, and when its format is below the
+ * configured concurrency limit. Tasks carrying a "notBefore" time (retry
+ * backoff) are held back until then.
+ */
+public class TaskQueue {
+    private static Logger logger = Logger.getLogger(TaskQueue.class.getName());
+    public static final int INTERACTIVE = 0;
+    public static final int IMPORT = 1;
+    public static final int REINDEX = 2;
+    /** Names of the priorities in the task protocol */
+    private static final String[] PRIORITIES = {"interactive", "import",
+                                               "reindex"};
+    /** Orders the tasks of a group by file size, then by arrival */
+    private static final Comparator BY_SIZE = new Comparator() {
+        public int compare(Object a, Object b) {
+            long sa = value((Hashtable) a, "size");
+            long sb = value((Hashtable) b, "size");
+            if (sa != sb) {
+                return (sa < sb) ? -1 : 1;
+            }
+            return compareSequence((Hashtable) a, (Hashtable) b);
+        }
+    };
+    /** Orders the held back tasks by due time, then by arrival */
+    private static final Comparator BY_TIME = new Comparator() {
+        public int compare(Object a, Object b) {
+            long ta = value((Hashtable) a, "notBefore");
+            long tb = value((Hashtable) b, "notBefore");
+            if (ta != tb) {
+                return (ta < tb) ? -1 : 1;
+            }
+            return compareSequence((Hashtable) a, (Hashtable) b);
+        }
+    };
+    private Hashtable limits;
+    private Hashtable weights;
+    private Hashtable groups;
+    /** Queued tasks of each document, to find the tasks of its other groups */
+    private Hashtable documents;
+    private TreeSet delayed;
+    private Hashtable running;
+    private HashSet busyGroups;
+    private HashSet busyDocuments;
+    /** Start tag of the last task handed out */
+    private double vtime;
+    private long sequence;
+    private int queued;
+    private boolean closed;
+    public TaskQueue(LinkedList tasks, Hashtable limits, Hashtable weights) {
+        logger.debug(">>> Start of TaskQueue.TaskQueue()***");
+        this.limits = limits;
+        this.weights = weights;
+        groups = new Hashtable();
+        documents = new Hashtable();
+        delayed = new TreeSet(BY_TIME);
+        running = new Hashtable();
+        busyGroups = new HashSet();
+        busyDocuments = new HashSet();
+        closed = false;
+        addAll(tasks);
+        logger.debug("<<< End of TaskQueue.TaskQueue()***");
+    }
+
+    /**
+     * @return the priority named in the task protocol, or -1
+     */
+    public static int getPriority(String name) {
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            if (PRIORITIES[i].equalsIgnoreCase(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public synchronized void add(Hashtable task) {
+        logger.debug(">>> Start of TaskQueue.add()***");
+        task.put("sequence", new Long(sequence++));
+        if (value(task, "notBefore") > System.currentTimeMillis()) {
+            delayed.add(task);
+        } else {
+            enqueue(task);
+        }
+        notifyAll();
+        logger.debug("<<< End of TaskQueue.add()***");
+    }
+
+    public synchronized void addAll(Collection tasks) {
+        logger.debug(">>> Start of TaskQueue.addAll()***");
+        Iterator it = tasks.iterator();
+        while (it.hasNext()) {
+            add((Hashtable) it.next());
+        }
+        logger.debug("<<< End of TaskQueue.addAll()***");
+    }
+
+    /**
+     * Blocks until a task can be processed and marks it as running.
+     * @return the task, or null when the queue was closed
+     */
+    public synchronized Hashtable take() throws InterruptedException {
+        logger.debug(">>> Start of TaskQueue.take()***");
+        Hashtable task = null;
+        while (!closed) {
+            long delay = promote();
+            if ((task = next()) != null) {
+                break;
+            }
+            if (delay > 0) {
+                wait(delay);
+            } else {
+                wait();
+            }
+        }
+        if (task != null) {
+            start(task);
+        }
+        logger.debug("<<< End of TaskQueue.take()***");
+        return task;
+    }
+
+    /**
+     * Takes the tasks of the same document on other groups that can be
+     * processed now and marks them as running, so the document is converted
+     * and analyzed once for all of its groups. Each must be released as well.
+     * @param task a task returned by take()
+     */
+    public synchronized Vector takeSiblings(Hashtable task) {
+        logger.debug(">>> Start of TaskQueue.takeSiblings()***");
+        Vector siblings = new Vector();
+        Vector queued = (Vector) documents.get(task.get("id"));
+        if (queued != null) {
+            Object[] list = queued.toArray();
+            for (int i = 0; i < list.length; i++) {
+                Hashtable sibling = (Hashtable) list[i];
+                Group group = (Group) groups.get(sibling.get("indexPath"));
+                if (!busyGroups.contains(group.name)) {
+                    dequeue(group, sibling);
+                    start(sibling);
+                    siblings.add(sibling);
+                }
+            }
+        }
+        logger.debug("<<< End of TaskQueue.takeSiblings()***");
+        return siblings;
+    }
+
+    public synchronized void release(Hashtable task) {
+        logger.debug(">>> Start of TaskQueue.release()***");
+        busyDocuments.remove(task.get("id"));
+        if (task.remove("abandoned") == null) {
+            String format = (String) task.get("format");
+            busyGroups.remove(task.get("indexPath"));
+            running.put(format, new Integer(running(format) - 1));
+        }
+        notifyAll();
+        logger.debug("<<< End of TaskQueue.release()***");
+    }
+
+    /**
+     * Frees the group and the format slot of a task whose worker was
+     * abandoned, so other workers go on, but keeps its document busy until
+     * the task is released, once that worker has returned.
+     */
+    public synchronized void abandon(Hashtable task) {
+        logger.debug(">>> Start of TaskQueue.abandon()***");
+        String format = (String) task.get("format");
+        busyGroups.remove(task.get("indexPath"));
+        running.put(format, new Integer(running(format) - 1));
+        task.put("abandoned", Boolean.TRUE);
+        notifyAll();
+        logger.debug("<<< End of TaskQueue.abandon()***");
+    }
+
+    /**
+     * Releases the task and queues it again to be taken after the delay.
+     */
+    public synchronized void retry(Hashtable task, long delay) {
+        logger.debug(">>> Start of TaskQueue.retry()***");
+        task.put("notBefore", new Long(System.currentTimeMillis() + delay));
+        delayed.add(task);
+        release(task);
+        logger.debug("<<< End of TaskQueue.retry()***");
+    }
+
+    public synchronized void close() {
+        logger.debug(">>> Start of TaskQueue.close()***");
+        closed = true;
+        notifyAll();
+        logger.debug("<<< End of TaskQueue.close()***");
+    }
+
+    public synchronized int size() {
+        return queued + delayed.size();
+    }
+
+    /**
+     * Queues the held back tasks that are due.
+     * @return milliseconds until the next held back task is due, or 0
+     */
+    private long promote() {
+        long now = System.currentTimeMillis();
+        while (!delayed.isEmpty()) {
+            Hashtable task = (Hashtable) delayed.first();
+            long wait = value(task, "notBefore") - now;
+            if (wait > 0) {
+                return wait;
+            }
+            delayed.remove(task);
+            enqueue(task);
+        }
+        return 0;
+    }
+
+    /**
+     * Picks the next task: the highest priority first, then the group with
+     * the earliest start tag, then the smallest file that can run.
+     */
+    private Hashtable next() {
+        for (int p = 0; p < PRIORITIES.length; p++) {
+            Vector ready = new Vector();
+            Iterator it = groups.values().iterator();
+            while (it.hasNext()) {
+                Group group = (Group) it.next();
+                if (!group.tasks[p].isEmpty() &&
+                    !busyGroups.contains(group.name)) {
+                    ready.add(group);
+                }
+            }
+            Collections.sort(ready);
+            for (int i = 0; i < ready.size(); i++) {
+                Group group = (Group) ready.get(i);
+                Iterator tasks = group.tasks[p].iterator();
+                while (tasks.hasNext()) {
+                    Hashtable task = (Hashtable) tasks.next();
+                    String format = (String) task.get("format");
+                    Integer limit = (Integer) limits.get(format);
+                    if (busyDocuments.contains(task.get("id")) ||
+                        ((limit != null) &&
+                         (running(format) >= limit.intValue()))) {
+                        continue;
+                    }
+                    dequeue(group, task);
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    private void enqueue(Hashtable task) {
+        String name = (String) task.get("indexPath");
+        Group group = (Group) groups.get(name);
+        if (group == null) {
+            group = new Group(name);
+            groups.put(name, group);
+        }
+        if (group.isEmpty()) {
+            // An idle group does not get credit for the time it was idle
+            group.start = Math.max(group.start, vtime);
+        }
+        group.tasks[priority(task)].add(task);
+        Vector tasks = (Vector) documents.get(task.get("id"));
+        if (tasks == null) {
+            tasks = new Vector();
+            documents.put(task.get("id"), tasks);
+        }
+        tasks.add(task);
+        queued++;
+    }
+
+    private void dequeue(Group group, Hashtable task) {
+        group.tasks[priority(task)].remove(task);
+        Vector tasks = (Vector) documents.get(task.get("id"));
+        tasks.remove(task);
+        if (tasks.isEmpty()) {
+            documents.remove(task.get("id"));
+        }
+        queued--;
+        vtime = group.start;
+        group.start += 1.0 / group.weight;
+    }
+
+    private void start(Hashtable task) {
+        String format = (String) task.get("format");
+        busyGroups.add(task.get("indexPath"));
+        busyDocuments.add(task.get("id"));
+        running.put(format, new Integer(running(format) + 1));
+    }
+
+    private int priority(Hashtable task) {
+        int priority = getPriority((String) task.get("priority"));
+        return (priority < 0) ? IMPORT : priority;
+    }
+
+    private int running(String format) {
+        Integer n = (Integer) running.get(format);
+        return (n == null) ? 0 : n.intValue();
+    }
+
+    private static long value(Hashtable task, String key) {
+        Long value = (Long) task.get(key);
+        return (value == null) ? 0 : value.longValue();
+    }
+
+    private static int compareSequence(Hashtable a, Hashtable b) {
+        long qa = value(a, "sequence");
+        long qb = value(b, "sequence");
+        return (qa < qb) ? -1 : (qa > qb) ? 1 : 0;
+    }
+
+    /**
+     * Queued tasks of a document group, one set per priority.
+     */
+    private class Group implements Comparable {
+        String name;
+        double weight;
+        /** Start tag of the next task of the group */
+        double start;
+        TreeSet[] tasks = new TreeSet[PRIORITIES.length];
+        Group(String name) {
+            this.name = name;
+            Integer w = (Integer) weights.get(name);
+            weight = ((w == null) || (w.intValue() <= 0)) ? 1 : w.intValue();
+            for (int i = 0; i < tasks.length; i++) {
+                tasks[i] = new TreeSet(BY_SIZE);
+            }
+        }
+
+        boolean isEmpty() {
+            for (int i = 0; i < tasks.length; i++) {
+                if (!tasks[i].isEmpty()) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        public int compareTo(Object o) {
+            Group other = (Group) o;
+            return (start < other.start) ? -1 : (start > other.start) ? 1 :
+                    name.compareTo(other.name);
+        }
+    }
+}
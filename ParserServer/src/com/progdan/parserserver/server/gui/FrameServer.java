@@ -14,10 +14,11 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
 import com.progdan.parserserver.server.Server;
+import com.progdan.parserserver.server.ServerObserver;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
 
-public class FrameServer extends JFrame {
+public class FrameServer extends JFrame implements ServerObserver {
     Server server;
     JPanel contentPane;
     JLabel statusBar = new JLabel();
@@ -165,7 +166,8 @@ public class FrameServer extends JFrame {
         GregorianCalendar now = new GregorianCalendar();
         if (now.before(new GregorianCalendar(2005, 12, 31))) {
             jButtonStop.setEnabled(true);
-            server = new Server(this);
+            server = new Server();
+            server.addObserver(this);
             server.start();
 //        System.out.println(System.getProperty("sun.boot.class.path"));
             statusBar.setText("Server is running...");
@@ -0,0 +1,35 @@
+package com.progdan.parserserver.util;
+
+import java.io.*;
+
+/**
+ * CancellableReader fails with an InterruptedIOException once the reading
+ * thread is interrupted, so a conversion cancelled while its text is being
+ * indexed stops instead of reaching the index.
+ */
+public class CancellableReader extends FilterReader {
+
+    /**
+     * Constructor.
+     * @param in Reader with the text
+     */
+    public CancellableReader(Reader in) {
+        super(in);
+    }
+
+    public int read() throws IOException {
+        check();
+        return in.read();
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        check();
+        return in.read(cbuf, off, len);
+    }
+
+    private void check() throws IOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Conversion cancelled");
+        }
+    }
+}
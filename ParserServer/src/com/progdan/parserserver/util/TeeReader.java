@@ -0,0 +1,93 @@
+package com.progdan.parserserver.util;
+
+import java.io.*;
+
+/**
+ * TeeReader copies every character read from a reader to a file. The file
+ * is written under a temporary name and only renamed to its final name
+ * when the reader is closed, after the rest of the text was copied.
+ */
+public class TeeReader extends FilterReader {
+
+    /** Member variables */
+    private File m_target = null;
+    private File m_tmp = null;
+    private Writer m_ow = null;
+
+    /**
+     * Constructor.
+     * @param in Reader with the text
+     * @param target File to write the text to
+     */
+    public TeeReader(Reader in, File target) throws IOException {
+        this(in, target, new File(target.getParentFile(),
+                                  target.getName() + ".tmp"), null);
+    }
+
+    /**
+     * Constructor for files in another encoding or format.
+     * @param in Reader with the text
+     * @param target File to write the text to
+     * @param tmp File written until the reader is closed
+     * @param out Writer on tmp, or null for a plain text writer
+     */
+    public TeeReader(Reader in, File target, File tmp, Writer out) throws
+            IOException {
+        super(in);
+        m_target = target;
+        m_tmp = tmp;
+        m_ow = (out != null) ? out : new BufferedWriter(new FileWriter(m_tmp));
+    }
+
+    public int read() throws IOException {
+        int c = in.read();
+        if ((c != -1) && (m_ow != null)) {
+            m_ow.write(c);
+        }
+        return c;
+    }
+
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        int n = in.read(cbuf, off, len);
+        if ((n > 0) && (m_ow != null)) {
+            m_ow.write(cbuf, off, n);
+        }
+        return n;
+    }
+
+    public long skip(long n) throws IOException {
+        char[] buf = new char[(int) Math.min(n, 8192)];
+        int r = read(buf, 0, buf.length);
+        return (r == -1) ? 0 : r;
+    }
+
+    public boolean markSupported() {
+        return false;
+    }
+
+    /**
+     * Copies the text not read yet, closes the reader and moves the file to
+     * its final name.
+     */
+    public void close() throws IOException {
+        if (m_ow == null) {
+            return;
+        }
+        try {
+            char[] buf = new char[8192];
+            while (read(buf, 0, buf.length) != -1) {
+            }
+            m_ow.close();
+            m_ow = null;
+            m_target.delete();
+            m_tmp.renameTo(m_target);
+        } finally {
+            if (m_ow != null) {
+                m_ow.close();
+                m_ow = null;
+                m_tmp.delete();
+            }
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.progdan.parserserver.util;
+
+import java.io.*;
+
+/**
+ * TextPipe runs the extraction of a text on its own thread and hands the
+ * text to the reader through a pipe, so it is indexed while it is
+ * extracted instead of being built in memory first. A failure of the
+ * extraction is thrown by the reader when it reaches the end of the text.
+ * Closing the reader stops the extraction at its next write.
+ */
+public abstract class TextPipe extends Thread {
+
+    /** Member variables */
+    private PipedReader m_in = new PipedReader();
+    private PipedWriter m_out = null;
+    private Exception m_error = null;
+
+    /**
+     * Constructor.
+     * @param name Name of the thread
+     */
+    protected TextPipe(String name) {
+        super(name);
+        setDaemon(true);
+    }
+
+    /**
+     * Writes the text. Runs on the thread of the pipe.
+     * @param out Writer on the pipe
+     */
+    protected abstract void write(Writer out) throws Exception;
+
+    /**
+     * Frees the source of the text once it is written or the extraction
+     * failed. Runs on the thread of the pipe.
+     */
+    protected void release() {
+    }
+
+    /**
+     * Starts the extraction and waits for its first character of text.
+     * @return Reader with the text, or null when there is no text
+     */
+    public Reader open() throws IOException {
+        m_out = new PipedWriter(m_in);
+        start();
+        PushbackReader text = new PushbackReader(new Result(), 1);
+        int c;
+        try {
+            while (((c = text.read()) >= 0) && Character.isWhitespace((char) c)) {
+                // blank text is no text
+            }
+        } catch (IOException e) {
+            text.close();
+            throw e;
+        }
+        if (c < 0) {
+            text.close();
+            return null;
+        }
+        text.unread(c);
+        return text;
+    }
+
+    public void run() {
+        Writer out = new BufferedWriter(m_out);
+        try {
+            write(out);
+            out.flush();
+        } catch (Exception e) {
+            setError(e);
+        } finally {
+            try {
+                m_out.close();
+            } catch (IOException e) {
+                // the reader was closed
+            }
+            release();
+        }
+    }
+
+    private synchronized void setError(Exception e) {
+        m_error = e;
+    }
+
+    private synchronized IOException getError() {
+        if ((m_error == null) || (m_error instanceof IOException)) {
+            return (IOException) m_error;
+        }
+        return new IOException(m_error.toString());
+    }
+
+    /**
+     * Reading end of the pipe, failing with the error of the extraction.
+     */
+    private class Result extends Reader {
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            int n = m_in.read(cbuf, off, len);
+            if (n < 0) {
+                IOException e = getError();
+                if (e != null) {
+                    throw e;
+                }
+            }
+            return n;
+        }
+
+        public void close() throws IOException {
+            m_in.close();
+        }
+    }
+}
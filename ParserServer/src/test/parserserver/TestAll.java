@@ -0,0 +1,23 @@
+package test.parserserver;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Holds all the test cases of the Parser Server.
+ */
+public class TestAll extends TestCase {
+    public TestAll(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        TestSuite suite = new TestSuite();
+        suite.addTest(test.parserserver.server.TestTaskQueue.suite());
+        suite.addTest(test.parserserver.util.TestTextPipe.suite());
+        suite.addTest(test.parserserver.util.TestCancellableReader.suite());
+        suite.addTest(test.parserserver.index.TestIndexWriters.suite());
+        return suite;
+    }
+}
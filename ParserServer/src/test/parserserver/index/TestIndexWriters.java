@@ -0,0 +1,220 @@
+package test.parserserver.index;
+
+import java.io.*;
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.progdan.parserserver.index.IndexWriters;
+import com.progdan.parserserver.server.IndexController;
+import com.progdan.parserserver.server.TaskQueue;
+import com.progdan.searchengine.analysis.SimpleAnalyzer;
+import com.progdan.searchengine.document.Document;
+import com.progdan.searchengine.document.Field;
+import com.progdan.searchengine.index.IndexReader;
+import com.progdan.searchengine.index.IndexWriter;
+import com.progdan.searchengine.index.Term;
+import com.progdan.searchengine.index.TermDocs;
+
+/**
+ * Tests the commits of the group index writers, the retry of a failed
+ * commit and the removal of the older copies of the documents, on indexes
+ * in a temporary directory and without a database.
+ */
+public class TestIndexWriters extends TestCase {
+    /** Never reached, the tests commit by batch size or close() */
+    private static final long FLUSH = 3600000;
+    private File reppath;
+    private Controller control;
+    private TaskQueue queue;
+    private IndexWriters writers;
+    public TestIndexWriters(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestIndexWriters.class);
+    }
+
+    protected void setUp() throws IOException {
+        reppath = File.createTempFile("TestIndexWriters", "");
+        reppath.delete();
+        control = new Controller();
+        queue = new TaskQueue(new LinkedList(), new Hashtable(), new Hashtable());
+    }
+
+    protected void tearDown() {
+        if (writers != null) {
+            writers.close();
+        }
+        delete(reppath);
+    }
+
+    public void testCommitOnBatch() throws IOException {
+        createIndex("1", new Document[0]);
+        writers = new IndexWriters(reppath.getPath(), 2, FLUSH, control, queue);
+        add("1", "10", "one", "import");
+        assertEquals(0, control.completed.size());
+        add("1", "11", "two", "import");
+        assertEquals(2, control.completed.size());
+        assertEquals(2, countDocs("1"));
+    }
+
+    public void testCommitOnClose() throws IOException {
+        createIndex("1", new Document[0]);
+        writers = new IndexWriters(reppath.getPath(), 10, FLUSH, control, queue);
+        add("1", "10", "one", "interactive");
+        assertEquals(0, countDocs("1"));
+        writers.close();
+        assertEquals(1, control.completed.size());
+        assertEquals(1, countDocs("1"));
+    }
+
+    public void testRetryFailedCommit() throws IOException {
+        createIndex("1", new Document[0]);
+        writers = new IndexWriters(reppath.getPath(), 10, FLUSH, control, queue);
+        add("1", "10", "one", "import");
+        // The batch can no longer be written
+        delete(new File(getPath("1")));
+        writers.close();
+        assertEquals(0, control.completed.size());
+        assertEquals(1, control.retried.size());
+        assertEquals(1, queue.size());
+    }
+
+    public void testRemoveCopies() throws IOException {
+        createIndex("1", new Document[0]);
+        writers = new IndexWriters(reppath.getPath(), 1, FLUSH, control, queue);
+        add("1", "10", "old", "import");
+        add("1", "11", "other", "import");
+        add("1", "10", "new", "reindex");
+        assertEquals(2, countDocs("1"));
+        assertEquals("new", findName("1", "10"));
+    }
+
+    public void testMigrateLegacy() throws IOException, InterruptedException {
+        Document legacy = new Document();
+        legacy.add(Field.UnIndexed("path", "7"));
+        legacy.add(Field.Keyword("name", "legacy"));
+        createIndex("2", new Document[] {legacy, newDocument("8", "current")});
+        writers = new IndexWriters(reppath.getPath(), 10, FLUSH, control, queue);
+        // Queued again by the migration thread
+        for (int i = 0; (i < 50) && (queue.size() == 0); i++) {
+            Thread.sleep(100);
+        }
+        assertEquals(1, control.added.size());
+        Hashtable task = (Hashtable) control.added.get(0);
+        assertEquals("7", task.get("id"));
+        assertEquals("reindex", task.get("priority"));
+        assertFalse(new File(getPath("2"), "path.keyword").exists());
+        add("2", "7", "indexed", "reindex");
+        writers.close();
+        assertEquals(2, countDocs("2"));
+        assertEquals("indexed", findName("2", "7"));
+        assertTrue("marked as migrated",
+                   new File(getPath("2"), "path.keyword").exists());
+    }
+
+    private void add(String indexPath, String id, String name,
+                     String priority) throws IOException {
+        Hashtable task = new Hashtable();
+        task.put("id", id);
+        task.put("format", "txt");
+        task.put("indexPath", indexPath);
+        task.put("priority", priority);
+        writers.addDocument(indexPath, writers.invert(newDocument(id, name)),
+                            task);
+    }
+
+    private static Document newDocument(String id, String name) {
+        Document doc = new Document();
+        doc.add(Field.Keyword("path", id));
+        doc.add(Field.Keyword("name", name));
+        return doc;
+    }
+
+    private void createIndex(String indexPath, Document[] docs) throws
+            IOException {
+        new File(getPath(indexPath)).mkdirs();
+        IndexWriter writer = new IndexWriter(getPath(indexPath),
+                                             new SimpleAnalyzer(), true);
+        for (int i = 0; i < docs.length; i++) {
+            writer.addDocument(docs[i]);
+        }
+        writer.close();
+    }
+
+    private int countDocs(String indexPath) throws IOException {
+        IndexReader reader = IndexReader.open(getPath(indexPath));
+        try {
+            return reader.numDocs();
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return the name of the only document with the path
+     */
+    private String findName(String indexPath, String id) throws IOException {
+        IndexReader reader = IndexReader.open(getPath(indexPath));
+        try {
+            TermDocs docs = reader.termDocs(new Term("path", id));
+            try {
+                assertTrue("document " + id + " not found", docs.next());
+                String name = reader.document(docs.doc()).get("name");
+                assertFalse("older copy of " + id + " left", docs.next());
+                return name;
+            } finally {
+                docs.close();
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private String getPath(String indexPath) {
+        return new File(new File(reppath, "index"), indexPath).getPath();
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        for (int i = 0; (files != null) && (i < files.length); i++) {
+            delete(files[i]);
+        }
+        file.delete();
+    }
+
+    /**
+     * Records the calls the writers make on the database.
+     */
+    private static class Controller extends IndexController {
+        Vector completed = new Vector();
+        Vector retried = new Vector();
+        Vector added = new Vector();
+        Controller() {
+            super(null);
+        }
+
+        public void completeTasks(Vector tasks) {
+            completed.addAll(tasks);
+        }
+
+        public void retryTask(Hashtable task, int seconds) {
+            retried.add(task);
+        }
+
+        public boolean addIndexTask(Hashtable task) {
+            added.add(task);
+            return true;
+        }
+
+        public Hashtable getDocument(String id) {
+            Hashtable doc = new Hashtable();
+            doc.put("format", "txt");
+            return doc;
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package test.parserserver.server;
+
+import java.util.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.progdan.parserserver.server.TaskQueue;
+
+/**
+ * Tests the order in which the TaskQueue hands out the tasks and the
+ * documents, groups and formats it keeps busy.
+ */
+public class TestTaskQueue extends TestCase {
+    /** Milliseconds a take() is given before the queue counts as empty */
+    private static final long WAIT = 300;
+    private Hashtable limits;
+    private Hashtable weights;
+    public TestTaskQueue(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestTaskQueue.class);
+    }
+
+    protected void setUp() {
+        limits = new Hashtable();
+        weights = new Hashtable();
+    }
+
+    public void testPriorityOrder() throws InterruptedException {
+        TaskQueue queue = newQueue();
+        queue.add(task("1", "10", "reindex", 1));
+        queue.add(task("2", "11", "import", 1));
+        queue.add(task("3", "12", "interactive", 1));
+        queue.add(task("4", "13", null, 0));
+        assertEquals("3", takeAndRelease(queue).get("id"));
+        // Tasks without a priority count as imports
+        assertEquals("2", takeAndRelease(queue).get("id"));
+        assertEquals("4", takeAndRelease(queue).get("id"));
+        assertEquals("1", takeAndRelease(queue).get("id"));
+        assertEquals(0, queue.size());
+    }
+
+    public void testSmallestFirst() throws InterruptedException {
+        TaskQueue queue = newQueue();
+        queue.add(task("1", "10", "import", 300));
+        queue.add(task("2", "10", "import", 100));
+        queue.add(task("3", "10", "import", 200));
+        assertEquals("2", takeAndRelease(queue).get("id"));
+        assertEquals("3", takeAndRelease(queue).get("id"));
+        assertEquals("1", takeAndRelease(queue).get("id"));
+    }
+
+    public void testFairShare() throws InterruptedException {
+        TaskQueue queue = newQueue();
+        for (int i = 0; i < 4; i++) {
+            queue.add(task("a" + i, "A", "import", i));
+        }
+        queue.add(task("b0", "B", "import", 0));
+        queue.add(task("b1", "B", "import", 1));
+        assertEquals("A B A B A A ", takeGroups(queue, 6));
+    }
+
+    public void testWeightedShare() throws InterruptedException {
+        weights.put("A", new Integer(2));
+        TaskQueue queue = newQueue();
+        for (int i = 0; i < 6; i++) {
+            queue.add(task("a" + i, "A", "import", i));
+            queue.add(task("b" + i, "B", "import", i));
+        }
+        assertEquals("A B A A B A ", takeGroups(queue, 6));
+    }
+
+    public void testBusyGroup() throws InterruptedException {
+        TaskQueue queue = newQueue();
+        queue.add(task("1", "10", "import", 1));
+        queue.add(task("2", "10", "import", 2));
+        Hashtable first = queue.take();
+        assertNull("group busy", poll(queue));
+        queue.release(first);
+        assertEquals("2", poll(queue).get("id"));
+    }
+
+    public void testBusyDocument() throws InterruptedException {
+        TaskQueue queue = newQueue();
+        queue.add(task("1", "10", "import", 1));
+        queue.add(task("1", "11", "import", 1));
+        Hashtable first = queue.take();
+        assertNull("document busy", poll(queue));
+        Vector siblings = queue.takeSiblings(first);
+        assertEquals(1, siblings.size());
+        assertEquals("11", ((Hashtable) siblings.get(0)).get("indexPath"));
+        assertEquals(0, queue.size());
+    }
+
+    public void testFormatLimit() throws InterruptedException {
+        limits.put("pdf", new Integer(1));
+        TaskQueue queue = newQueue();
+        queue.add(task("1", "10", "import", 1));
+        queue.add(task("2", "11", "import", 1));
+        Hashtable first = queue.take();
+        assertNull("format at its limit", poll(queue));
+        queue.release(first);
+        assertEquals("2", poll(queue).get("id"));
+    }
+
+    public void testRetryPromotion() throws InterruptedException {
+        TaskQueue queue = newQueue();
+        queue.add(task("1", "10", "import", 1));
+        Hashtable task = queue.take();
+        queue.retry(task, 2 * WAIT);
+        assertEquals(1, queue.size());
+        assertNull("held back", poll(queue));
+        Thread.sleep(2 * WAIT);
+        assertEquals("1", poll(queue).get("id"));
+    }
+
+    public void testAbandonAndRelease() throws InterruptedException {
+        limits.put("pdf", new Integer(1));
+        TaskQueue queue = newQueue();
+        queue.add(task("1", "10", "import", 1));
+        Hashtable stuck = queue.take();
+        queue.add(task("2", "10", "import", 2));
+        queue.add(task("1", "11", "import", 1));
+        queue.abandon(stuck);
+        // The group and the format are free, the document is not
+        Hashtable next = poll(queue);
+        assertEquals("2", next.get("id"));
+        queue.release(next);
+        assertNull("document busy", poll(queue));
+        queue.release(stuck);
+        assertEquals("11", poll(queue).get("indexPath"));
+    }
+
+    public void testClose() throws InterruptedException {
+        TaskQueue queue = newQueue();
+        queue.close();
+        assertNull(queue.take());
+    }
+
+    private TaskQueue newQueue() {
+        return new TaskQueue(new LinkedList(), limits, weights);
+    }
+
+    private static Hashtable task(String id, String indexPath, String priority,
+                                  long size) {
+        Hashtable task = new Hashtable();
+        task.put("id", id);
+        task.put("format", "pdf");
+        task.put("indexPath", indexPath);
+        if (priority != null) {
+            task.put("priority", priority);
+        }
+        task.put("size", new Long(size));
+        return task;
+    }
+
+    private static Hashtable takeAndRelease(TaskQueue queue) throws
+            InterruptedException {
+        Hashtable task = poll(queue);
+        assertNotNull("no task", task);
+        queue.release(task);
+        return task;
+    }
+
+    /**
+     * @return the groups of the next tasks, each released once taken
+     */
+    private static String takeGroups(TaskQueue queue, int n) throws
+            InterruptedException {
+        StringBuffer order = new StringBuffer();
+        for (int i = 0; i < n; i++) {
+            order.append(takeAndRelease(queue).get("indexPath") + " ");
+        }
+        return order.toString();
+    }
+
+    /**
+     * @return the next task, or null when none is handed out in time
+     */
+    private static Hashtable poll(final TaskQueue queue) throws
+            InterruptedException {
+        final Hashtable[] taken = new Hashtable[1];
+        Thread taker = new Thread() {
+            public void run() {
+                try {
+                    taken[0] = queue.take();
+                } catch (InterruptedException e) {
+                    // nothing to take
+                }
+            }
+        };
+        taker.start();
+        taker.join(WAIT);
+        taker.interrupt();
+        taker.join();
+        return taken[0];
+    }
+}
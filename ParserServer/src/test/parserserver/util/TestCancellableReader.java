@@ -0,0 +1,50 @@
+package test.parserserver.util;
+
+import java.io.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.progdan.parserserver.util.CancellableReader;
+
+/**
+ * Tests that a CancellableReader stops reading once its thread is
+ * interrupted.
+ */
+public class TestCancellableReader extends TestCase {
+    public TestCancellableReader(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestCancellableReader.class);
+    }
+
+    public void testRead() throws IOException {
+        Reader in = new CancellableReader(new StringReader("text"));
+        char[] buffer = new char[8];
+        assertEquals('t', in.read());
+        assertEquals(3, in.read(buffer, 0, buffer.length));
+        assertEquals(-1, in.read());
+    }
+
+    public void testCancel() throws IOException {
+        Reader in = new CancellableReader(new StringReader("text"));
+        assertEquals('t', in.read());
+        Thread.currentThread().interrupt();
+        try {
+            in.read();
+            fail("read after the interrupt");
+        } catch (InterruptedIOException e) {
+            // cancelled
+        } finally {
+            Thread.interrupted();
+        }
+        try {
+            in.read(new char[8], 0, 8);
+        } catch (InterruptedIOException e) {
+            fail("read failed once the interrupt was cleared");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package test.parserserver.util;
+
+import java.io.*;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import com.progdan.parserserver.util.TextPipe;
+
+/**
+ * Tests the text handed by a TextPipe, the errors of its extraction and
+ * the end of the extraction when the reader is closed.
+ */
+public class TestTextPipe extends TestCase {
+    public TestTextPipe(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestTextPipe.class);
+    }
+
+    public void testText() throws IOException, InterruptedException {
+        Pipe pipe = new Pipe(" \n hello world", null);
+        Reader text = pipe.open();
+        assertNotNull(text);
+        assertEquals("hello world", readAll(text));
+        text.close();
+        pipe.join(1000);
+        assertTrue("released", pipe.released);
+    }
+
+    public void testBlankText() throws IOException, InterruptedException {
+        Pipe pipe = new Pipe(" \r\n\t ", null);
+        assertNull(pipe.open());
+        pipe.join(1000);
+        assertTrue("released", pipe.released);
+    }
+
+    public void testErrorAtTheEnd() throws IOException {
+        Reader text = new Pipe("partial", new Exception("bad page")).open();
+        try {
+            readAll(text);
+            fail("the error of the extraction was not thrown");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().indexOf("bad page") >= 0);
+        } finally {
+            text.close();
+        }
+    }
+
+    public void testErrorBeforeText() {
+        try {
+            new Pipe("", new IOException("no text")).open();
+            fail("the error of the extraction was not thrown");
+        } catch (IOException e) {
+            assertEquals("no text", e.getMessage());
+        }
+    }
+
+    public void testCloseStopsExtraction() throws IOException,
+            InterruptedException {
+        Pipe pipe = new Pipe(null, null);
+        Reader text = pipe.open();
+        assertEquals('x', text.read());
+        text.close();
+        pipe.join(5000);
+        assertFalse("extraction still running", pipe.isAlive());
+        assertTrue("released", pipe.released);
+    }
+
+    private static String readAll(Reader in) throws IOException {
+        StringBuffer text = new StringBuffer();
+        char[] buffer = new char[256];
+        int n;
+        while ((n = in.read(buffer)) >= 0) {
+            text.append(buffer, 0, n);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Writes the text and then fails with the error, if any; without a text
+     * it writes until the pipe is closed.
+     */
+    private static class Pipe extends TextPipe {
+        private String text;
+        private Exception error;
+        volatile boolean released;
+        Pipe(String text, Exception error) {
+            super("TestTextPipe");
+            this.text = text;
+            this.error = error;
+        }
+
+        protected void write(Writer out) throws Exception {
+            if (text == null) {
+                while (true) {
+                    out.write("xxxxxxxxxxxxxxxx");
+                }
+            }
+            out.write(text);
+            if (error != null) {
+                out.flush();
+                throw error;
+            }
+        }
+
+        protected void release() {
+            released = true;
+        }
+    }
+}
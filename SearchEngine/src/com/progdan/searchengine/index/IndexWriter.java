@@ -311,6 +311,21 @@ public class IndexWriter {
     }
   }
 
+  /**
+   * Adds a document inverted beforehand, so a document added to several
+   * indexes is only analyzed once.  The document is not analyzed again, so
+   * the analyzer, similarity and {@link #maxFieldLength} it was inverted
+   * with apply.
+   */
+  public void addDocument(InvertedDocument doc) throws IOException {
+    String segmentName = newSegmentName();
+    doc.copyTo(ramDirectory, segmentName);
+    synchronized (this) {
+      segmentInfos.addElement(new SegmentInfo(segmentName, 1, ramDirectory));
+      maybeMergeSegments();
+    }
+  }
+
   final int getSegmentsCounter(){
     return segmentInfos.counter;
   }
@@ -0,0 +1,81 @@
+package com.progdan.searchengine.index;
+
+/**
+ * Copyright 2004 The Apache Software Foundation
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+import java.io.IOException;
+
+import com.progdan.searchengine.store.Directory;
+import com.progdan.searchengine.store.RAMDirectory;
+import com.progdan.searchengine.store.InputStream;
+import com.progdan.searchengine.store.OutputStream;
+import com.progdan.searchengine.search.Similarity;
+import com.progdan.searchengine.document.Document;
+import com.progdan.searchengine.analysis.Analyzer;
+
+/**
+ * A document analyzed once into a single document segment held in memory.
+ * It can be added to any number of indexes with
+ * {@link IndexWriter#addDocument(InvertedDocument)}, which copies the
+ * segment instead of analyzing the document again.
+ *
+ * <p>Fields read from a <code>Reader</code> are consumed when the document
+ * is inverted.
+ */
+public final class InvertedDocument {
+  private static final String SEGMENT = "_0";
+
+  private RAMDirectory directory = new RAMDirectory();
+
+  /**
+   * Inverts the document with the default similarity and field length.
+   */
+  public InvertedDocument(Document doc, Analyzer analyzer) throws IOException {
+    this(doc, analyzer, Similarity.getDefault(),
+         IndexWriter.DEFAULT_MAX_FIELD_LENGTH);
+  }
+
+  /**
+   * Inverts the document. The similarity and field length should match
+   * those of the writers the document is added to.
+   */
+  public InvertedDocument(Document doc, Analyzer analyzer,
+                          Similarity similarity, int maxFieldLength)
+          throws IOException {
+    DocumentWriter dw =
+      new DocumentWriter(directory, analyzer, similarity, maxFieldLength);
+    dw.addDocument(SEGMENT, doc);
+  }
+
+  /** Copies the segment files to <code>dir</code> under another name. */
+  final void copyTo(Directory dir, String segment) throws IOException {
+    String[] files = directory.list();
+    for (int i = 0; i < files.length; i++) {
+      InputStream is = directory.openFile(files[i]);
+      OutputStream os =
+        dir.createFile(segment + files[i].substring(SEGMENT.length()));
+      try {
+        int len = (int) is.length();
+        byte[] buf = new byte[len];
+        is.readBytes(buf, 0, len);
+        os.writeBytes(buf, len);
+      } finally {
+        is.close();
+        os.close();
+      }
+    }
+  }
+}